@@ -19,6 +19,7 @@ package apc;
 import enumeration.Action;
 import enumeration.DecompilerType;
 import java.io.File;
+import java.util.List;
 import library.Constants;
 import model.ArgumentPackage;
 
@@ -57,15 +58,22 @@ public class AndroidProjectCreator {
         ArgumentParser argumentParser = new ArgumentParser();
         //Instantiate the ArgumentManager for later use
         ArgumentManager argumentManager = new ArgumentManager();
-        //Show the version information
-        argumentManager.showVersion();
         //Set the action, if there is an error, the Action.ERROR value is provided. This is all handled within the setArguments function
         ArgumentPackage argumentPackage = argumentParser.setArguments(args);
         //If incorrect or unknown parameters are provided, APC provides feedback to the user and then terminates.
         if (argumentPackage.getAction() == Action.ERROR) {
-            handleAction(argumentManager, args);
+            //Show the version information
+            argumentManager.showVersion();
+            //A mistyped option is reported by itself, as the positional arguments might be correct
+            List<String> unknownOptions = ArgumentParser.getUnknownOptions(args);
+            if (!unknownOptions.isEmpty()) {
+                System.out.println("[+]The following option(s) are not known to AndroidProjectCreator: " + String.join(", ", unknownOptions) + "\n");
+                argumentManager.showUsage();
+                System.exit(1);
+            }
+            handleAction(argumentManager, ArgumentParser.getPositionalArguments(args));
         }
-        //Executes the action based on the return value of the setArguments function
+        //Executes the action based on the return value of the setArguments function, which shows the version information first
         argumentManager.execute(argumentPackage);
     }
 
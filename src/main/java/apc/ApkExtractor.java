@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts entries that do not need to be decoded (such as the native
+ * libraries, the assets and the DEX files) directly from the APK. The entries
+ * are located using the central directory of the archive, meaning only the
+ * requested entries are read.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class ApkExtractor {
+
+    /**
+     * The APK to extract the entries from
+     */
+    private final File apk;
+
+    /**
+     * Creates an extractor for the given APK
+     *
+     * @param apk the APK to extract the entries from
+     */
+    public ApkExtractor(File apk) {
+        this.apk = apk;
+    }
+
+    /**
+     * Extracts all entries that reside in one of the given folders within the
+     * APK, such as "lib/" or "assets/". The folder structure within the APK is
+     * kept in the destination.
+     *
+     * @param destination the folder to extract the entries to
+     * @param folders the folders within the APK to extract, each ending with a
+     * slash
+     * @return the amount of extracted entries
+     * @throws IOException if the APK cannot be read or if an entry cannot be
+     * written
+     */
+    public int extractFolders(File destination, String... folders) throws IOException {
+        int count = 0;
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                for (String folder : folders) {
+                    if (entry.getName().startsWith(folder)) {
+                        extractEntry(zipFile, entry, destination);
+                        count++;
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Extracts all DEX files (classes.dex, classes2.dex, etc) that reside in
+     * the root of the APK
+     *
+     * @param destination the folder to extract the DEX files to
+     * @return the amount of extracted DEX files
+     * @throws IOException if the APK cannot be read or if an entry cannot be
+     * written
+     */
+    public int extractDexFiles(File destination) throws IOException {
+        int count = 0;
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().matches("classes[0-9]*\\.dex")) {
+                    extractEntry(zipFile, entry, destination);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Streams a single entry from the archive to the destination folder
+     *
+     * @param zipFile the archive to read from
+     * @param entry the entry to extract
+     * @param destination the folder to extract the entry to
+     * @throws IOException if the entry would be written outside of the
+     * destination, if the entry cannot be written, or if the extraction has
+     * been interrupted
+     */
+    private void extractEntry(ZipFile zipFile, ZipEntry entry, File destination) throws IOException {
+        //The extraction is stopped if the decompilation failed in the meantime
+        if (Thread.currentThread().isInterrupted()) {
+            throw new IOException("The extraction from " + apk.getAbsolutePath() + " was interrupted!");
+        }
+        Path root = destination.toPath().toAbsolutePath().normalize();
+        Path target = root.resolve(entry.getName()).normalize();
+        //Entries with names such as "../../file" are not extracted, as they would be written outside of the destination
+        if (!target.startsWith(root)) {
+            throw new IOException("The entry \"" + entry.getName() + "\" in " + apk.getAbsolutePath() + " points outside of the destination folder!");
+        }
+        if (entry.isDirectory()) {
+            Files.createDirectories(target);
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            Files.copy(input, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
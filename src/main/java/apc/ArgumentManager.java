@@ -17,15 +17,25 @@
 package apc;
 
 import command.Assembler;
+import command.BundleExporter;
 import command.CompactInstaller;
 import command.Installer;
 import command.Decompiler;
+import command.IndexBuilder;
+import command.Searcher;
+import command.SymbolExtractor;
+import command.Triager;
 import command.Updater;
+import command.Verifier;
 import enumeration.DecompilerType;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import library.Constants;
+import library.Tools;
 import model.ArgumentPackage;
+import model.LibraryLease;
+import model.Workspace;
 
 /**
  * Handles everything regarding the flow of the AndroidProjectCreator, based on
@@ -45,6 +55,8 @@ public class ArgumentManager {
      * @param arguments the provided arguments
      */
     public void execute(ArgumentPackage arguments) {
+        //The workspace of the decompilation, which is null for the other actions
+        Workspace workspace = null;
         try {
             /**
              * Since there was no error, the remaining options for the enum are
@@ -54,13 +66,21 @@ public class ArgumentManager {
              * the exception handling usability and maintainability and provides
              * more information to the user.
              */
+            //Open the machine readable progress stream, if it is requested
+            if (arguments.hasOption("progress")) {
+                ProgressReporter.open(arguments.getOption("progress"));
+            }
+            //Show the version information, which is written to the standard error if the progress stream uses the standard output
+            showVersion();
+            String action = arguments.getAction().toString().toLowerCase();
+            ProgressReporter.startStage("job", action);
             switch (arguments.getAction()) {
                 case INSTALL:
                     /**
                      * Clone the repositories, build the projects and save them
                      * in the Constants.LIBRARY_FOLDER_NAME folder
                      */
-                    Installer installer = new Installer();
+                    Installer installer = new Installer(arguments);
                     installer.install();
                     //Usage is shown after the installation has successfully been completed
                     showUsage();
@@ -73,25 +93,97 @@ public class ArgumentManager {
                      * download the files, resulting in a compacter installation
                      * in both disk space and time.
                      */
-                    CompactInstaller compactInstaller = new CompactInstaller();
+                    CompactInstaller compactInstaller = new CompactInstaller(arguments);
                     compactInstaller.install();
                     break;
                 case UPDATE:
                     /**
                      * Updating the library is done by pulling the repository
                      * from the selected branch, rebuilding the tool and
-                     * replacing it in the correct library folder.
+                     * replacing it in the correct library folder. Only the
+                     * tools of which the repository has changed are updated.
                      */
-                    Updater updater = new Updater();
+                    Updater updater = new Updater(arguments);
                     updater.update();
                     break;
                 case DECOMPILE:
-                    //Decompile the APK into the parts required for the assembler
-                    Decompiler decompiler = new Decompiler(arguments);
-                    decompiler.decompile();
-                    //Assemble the taken manifest and source files together with the Android Studio project
-                    Assembler assembler = new Assembler(arguments.getOutputLocation());
-                    assembler.assemble();
+                    //Install the required tools the first time they are requested, if they are missing and this is enabled
+                    if (arguments.isOptionEnabled("install-missing")) {
+                        new Installer(arguments).installMissing(Tools.getNames(Tools.getSelection(Arrays.asList(arguments.getDecompilerType().toString().toLowerCase()))));
+                    }
+                    //Hold a lease on the active library generation, so that an update cannot remove it during the decompilation
+                    LibraryLease lease = new GenerationManager().acquireLease();
+                    try {
+                        //Select the scratch space before any temporary file is written, based on the size of the APK
+                        ScratchManager scratchManager = new ScratchManager();
+                        workspace = new Workspace(scratchManager.selectScratchRoot(arguments.getApk(), arguments.getOption("scratch")));
+                        //Decompile the APK into the parts required for the assembler
+                        Decompiler decompiler = new Decompiler(arguments, workspace);
+                        decompiler.decompile();
+                        //Assemble the taken manifest and source files together with the Android Studio project
+                        Assembler assembler = new Assembler(arguments, workspace);
+                        //If the classes of the application itself are decompiled first, these are written to the output folder while all classes are decompiled
+                        if (decompiler.isPrioritized()) {
+                            assembler.assemblePriority();
+                            decompiler.awaitRemaining();
+                        }
+                        assembler.assemble();
+                    } finally {
+                        lease.close();
+                    }
+                    break;
+                case EXPORT_BUNDLES:
+                    /**
+                     * Exports the repositories of all tools as Git bundles,
+                     * which can be used as a mirror to install or update
+                     * AndroidProjectCreator without internet access.
+                     */
+                    BundleExporter bundleExporter = new BundleExporter(arguments);
+                    bundleExporter.export();
+                    break;
+                case VERIFY:
+                    /**
+                     * Compares the files in the library with the sizes (fast)
+                     * or checksums (full) that were recorded during the
+                     * installation.
+                     */
+                    Verifier verifier = new Verifier(arguments);
+                    verifier.verify();
+                    break;
+                case BUILD_INDEX:
+                    /**
+                     * Fingerprints the classes of a corpus of library JARs,
+                     * which is used to skip the (renamed) classes of known
+                     * libraries during the decompilation.
+                     */
+                    IndexBuilder indexBuilder = new IndexBuilder(arguments);
+                    indexBuilder.build();
+                    break;
+                case TRIAGE:
+                    /**
+                     * Reads the binary manifest and the headers of the DEX
+                     * files of one or more APKs, without decoding or
+                     * decompiling them.
+                     */
+                    Triager triager = new Triager(arguments);
+                    triager.triage();
+                    break;
+                case EXTRACT:
+                    /**
+                     * Extracts the strings, types and method signatures from
+                     * the DEX files of one or more APKs, without decompiling
+                     * them.
+                     */
+                    SymbolExtractor symbolExtractor = new SymbolExtractor(arguments);
+                    symbolExtractor.extract();
+                    break;
+                case SEARCH:
+                    /**
+                     * Searches the indices of decompiled projects for class
+                     * names, method calls, string literals and identifiers.
+                     */
+                    Searcher searcher = new Searcher(arguments);
+                    searcher.search();
                     break;
                 default:
                     //Something went wrong since this case shouldnt be reachable, show the usage and exit
@@ -99,25 +191,34 @@ public class ArgumentManager {
                     System.exit(1);
                     break;
             }
+            ProgressReporter.endStage("job", action, null);
+            ProgressReporter.close();
         } catch (Exception ex) {
-            cleanOnError(arguments.getOutputLocation());
+            cleanOnError(arguments.getOutputLocation(), workspace);
             showError(ex);
+            ProgressReporter.reportError(ex.getMessage());
+            ProgressReporter.close();
             System.exit(1);
         }
     }
 
     /**
-     * If an error occurs, the output location and the temp folder within the
-     * library need to be cleaned. This method does exactly that.
+     * If an error occurs, the output location and the workspace of the job
+     * need to be cleaned. This method does exactly that.
+     *
+     * @param outputLocation the output location, or null if there is none
+     * @param workspace the workspace of the job, or null if there is none
      */
-    private void cleanOnError(File outputLocation) {
+    private void cleanOnError(File outputLocation, Workspace workspace) {
         try {
             FileManager fileManager = new FileManager();
             //If something goes wrong during the installation or update, the outputLocation variable is equal to null
             if (outputLocation != null) {
                 fileManager.delete(outputLocation);
             }
-            fileManager.delete(new File(Constants.TEMP_LIBRARY_FOLDER));
+            if (workspace != null) {
+                fileManager.delete(new File(workspace.getFolder()));
+            }
         } catch (IOException ex) {
             System.out.println("[+]Something went wrong during the removal of " + outputLocation.getAbsolutePath());
         }
@@ -129,7 +230,7 @@ public class ArgumentManager {
     public void showUsage() {
         StringBuilder usage = new StringBuilder();
         usage.append("[+]AndroidProjectCreator has multiple modes, all of which are explained below, together with the required parameters.\n");
-        usage.append("\t-install\n");
+        usage.append("\t-install [decompilers]\n");
         usage.append("\t\tThis option requires an internet connection as it clones multiple repositories from Git.\n");
         usage.append("\t\tAfter the repositories have been downloaded, the projects will be compiled. \n");
         usage.append("\t\tThen, the compiled repositories are saved in a folder named \"Library\" in the folder where the JAR resides.\n");
@@ -138,11 +239,42 @@ public class ArgumentManager {
         for (DecompilerType decompilerType : DecompilerType.values()) {
             usage.append("\t\t\t" + decompilerType + "\n");
         }
-        usage.append("\t-compactInstall\n");
+        usage.append("\t\tOptionally, only the given decompilers (i.e. \"-install jadx cfr\") are installed, together with APKTool, Dex2Jar and the Android Studio project template.\n");
+        usage.append("\t-compactInstall [decompilers]\n");
         usage.append("\t\tDownloads precompiled instances of the tools that are listed at \"-install\" from a repository that is mainted by me.\n");
-        usage.append("\t\tThis is faster than installing it yourself, but the the \"-update\" will not work. Tools will also be a bit older.\n");
+        usage.append("\t\tThis is faster than installing it yourself, but the tools will be a bit older. An \"-update\" builds the installed tools from their own repositories.\n");
+        usage.append("\t\tOnly the latest commit of each repository is cloned, unless \"--depth=[n]\" is used to clone more history (0 clones all history).\n");
         usage.append("\t-update\n");
         usage.append("\t\tUpdating the library folder is equal to reinstalling the library using the -install function.\n");
+        usage.append("\t\tOnly the tools of which the repository has changed since the installation are rebuilt, unless \"--force\" is used.\n");
+        usage.append("\t\tUse \"--depth=[n]\" to fetch the latest n commits of each shallow cloned repository, or 0 to fetch all history.\n");
+        usage.append("\t\tThe updated library is built next to the active one and only replaces it once it has been verified. Running decompilations keep using\n");
+        usage.append("\t\tthe previous library, which is removed once it is no longer in use.\n");
+        usage.append("\t\tFor both \"-install\" and \"-update\", \"--artifact-cache=/path/to/folder\" (or the APC_ARTIFACT_CACHE environment variable) can be used to\n");
+        usage.append("\t\treuse the builds of a local or shared folder. Tools that are built from a commit that is not yet in the cache are added to it.\n");
+        usage.append("\t-exportBundles /path/to/folder\n");
+        usage.append("\t\tExports the repositories of all tools, including the one for the compact installation, as Git bundles in the given folder.\n");
+        usage.append("\t\tThis folder can be used as a mirror with \"--mirror=/path/to/folder\" for \"-install\", \"-compactInstall\" and \"-update\",\n");
+        usage.append("\t\twhich then do not require an internet connection. A mirror can also contain (bare) clones of the repositories.\n");
+        usage.append("\t-verify [fast|full]\n");
+        usage.append("\t\tVerifies the library against the manifest that is written during \"-install\" and \"-update\".\n");
+        usage.append("\t\tThe fast mode (default) checks the presence and size of each file, the full mode compares the SHA-256 checksum of each file.\n");
+        usage.append("\t-buildIndex /path/to/corpus /path/to/index\n");
+        usage.append("\t\tFingerprints the classes of all library JARs in the corpus folder, and writes them to the given index file.\n");
+        usage.append("\t\tThe fingerprints remain the same when an obfuscator renames the classes. If a JAR has a \"-sources.jar\" next to it,\n");
+        usage.append("\t\tits sources are used for the recognized classes. Use the index with \"--index=/path/to/index\" when decompiling.\n");
+        usage.append("\t-triage /path/to/apk-or-folder /path/to/output.jsonl\n");
+        usage.append("\t\tReads the package, version, SDK levels, permissions, components and DEX file headers of the APK (or of all APKs in the folder)\n");
+        usage.append("\t\tdirectly from the APK, and writes them as one JSON object per line. The APKs are triaged in parallel, using --threads=amount threads\n");
+        usage.append("\t\t(default: the amount of cores). Use --hash to include the SHA-256 hash of each APK.\n");
+        usage.append("\t-extract /path/to/apk-or-folder /path/to/output/folder\n");
+        usage.append("\t\tWrites all strings (S), types (T) and method signatures (M) of the DEX files of the APK (or of all APKs in the folder)\n");
+        usage.append("\t\tto a GZIP compressed file per APK in the output folder, one symbol per line. The DEX files are processed in parallel,\n");
+        usage.append("\t\tusing --threads=amount threads (default: the amount of cores).\n");
+        usage.append("\t-search /path/to/index-or-folder query\n");
+        usage.append("\t\tSearches the index of a project (or all indices in the folder) that is written when decompiling with \"--search-index\".\n");
+        usage.append("\t\tPrints the kind, term and file of each match. The search is case insensitive, and a query that ends with * matches all\n");
+        usage.append("\t\tterms that start with it. Use --kind=class|call|string|identifier to search one kind of term, and --limit=amount (default: 1000).\n");
         usage.append("\t-decompile\n");
         usage.append("\t\tUsing this function, more parameters are required.\n");
         usage.append("\t\tThe name of the decompiler needs to be specified, using one of the following embedded decompilers:\n");
@@ -154,7 +286,46 @@ public class ArgumentManager {
         } else {
             usage.append("\t\t\tjava -jar ./AndroidProjectCreator.jar -decompile FERNFLOWER /path/to/the.apk /output/path/\n");
         }
-        usage.append("\t\tNote that one should provide the path to the JEB3 folder as a fifth argument if JEB3 is chosen to decompile the code.\n ");
+        usage.append("\t\tNote that one should provide the path to the JEB3 folder as a fifth argument if JEB3 is chosen to decompile the code.\n");
+        usage.append("\t\tThe following optional arguments can be placed anywhere. Each can also be set with an environment variable named APC_[OPTION].\n");
+        usage.append("\t\tOptions that are not listed in this usage text are rejected, so that a typo does not run a job with the default values.\n");
+        usage.append("\t\t\t--scratch=/path/to/folder\n");
+        usage.append("\t\t\t\tThe folder in which temporary files are stored (i.e. \"/dev/shm\"). If it lacks the space for the APK, the library folder is used.\n");
+        usage.append("\t\t\t--dedup-store=/path/to/folder\n");
+        usage.append("\t\t\t\tStores identical output files only once in the given folder, and hard links them into each output folder.\n");
+        usage.append("\t\t\t--install-missing\n");
+        usage.append("\t\t\t\tInstalls the chosen decompiler (and the other required tools) into the library if it is not installed yet.\n");
+        usage.append("\t\t\t--jobs=amount\n");
+        usage.append("\t\t\t\tThe amount of decompilations that run on this machine at the same time (default: 1). The cores and memory are divided over them.\n");
+        usage.append("\t\t\t--threads=amount\n");
+        usage.append("\t\t\t\tThe amount of threads JADX uses (default: the amount of cores divided by the amount of jobs).\n");
+        usage.append("\t\t\t--memory=amount\n");
+        usage.append("\t\t\t\tThe maximum heap size of the decompiler and APKTool in megabytes, or in gigabytes with a \"g\" suffix (default: 75% of the physical memory divided by the amount of jobs).\n");
+        usage.append("\t\t\t--include=com.example,org.example\n");
+        usage.append("\t\t\t\tOnly decompiles the classes in the given packages (and their subpackages).\n");
+        usage.append("\t\t\t--exclude=com.example.ads\n");
+        usage.append("\t\t\t\tDoes not decompile the classes in the given packages. If a class matches both filters, the most specific package decides.\n");
+        usage.append("\t\t\t--skip-libraries\n");
+        usage.append("\t\t\t\tDoes not decompile well-known libraries, such as androidx, kotlin, com.google and okhttp3. The package of the application and its components are always decompiled. Use --include to keep one of the libraries.\n");
+        usage.append("\t\t\t\tThe classes that are not decompiled due to --include, --exclude, --skip-libraries or --index are passed to Fernflower and CFR as a library, so that\n");
+        usage.append("\t\t\t\tthe types and overrides they provide are resolved. JADX, JD-CMD and Procyon cannot use them, which might reduce the quality of the other classes.\n");
+        usage.append("\t\t\t--index=/path/to/index\n");
+        usage.append("\t\t\t\tDoes not decompile classes that match a known library in the given index (see \"-buildIndex\"). These are listed in " + Constants.KNOWN_CLASSES_FILE_NAME + ".\n");
+        usage.append("\t\t\t\tThe package of the application and its components are always decompiled, as a small class might match a library class by its structure.\n");
+        usage.append("\t\t\t--progress=stdout|file:/path/to/file|tcp:host:port\n");
+        usage.append("\t\t\t\tWrites machine readable progress events of any action (one JSON object per line) with the stages, files, bytes, classes per second and the estimated remaining time.\n");
+        usage.append("\t\t\t\tIf the events are written to stdout, all other output is written to stderr.\n");
+        usage.append("\t\t\t--profile=full|code-only|resources-only|no-smali\n");
+        usage.append("\t\t\t\tOnly places the given parts of the APK in the project (default: full), and skips the stages that produce the other parts. Code-only keeps the manifest and the Java sources, resources-only keeps the manifest, resources, assets and native libraries.\n");
+        usage.append("\t\t\t--priority\n");
+        usage.append("\t\t\t\tDecompiles the classes in the package of the application first, and writes them to the output folder while all classes are decompiled. The early copies are then replaced by the complete decompilation.\n");
+        usage.append("\t\t\t--in-process\n");
+        usage.append("\t\t\t\tRuns Dex2Jar and Fernflower within this process, which writes the Java files directly into the project. The memory of this process is used, meaning --memory does not apply to them (use the -Xmx flag of Java instead).\n");
+        usage.append("\t\t\t--search-index[=/path/to/corpus/index]\n");
+        usage.append("\t\t\t\tIndexes the class names, method calls, string literals and identifiers of the Java files while these are copied into the project,\n");
+        usage.append("\t\t\t\tand writes the index to " + Constants.SEARCH_INDEX_FILE_NAME + ". If a folder is given, the index is also added to that corpus-level index (see \"-search\").\n");
+        usage.append("\t\t\t--deobf\n");
+        usage.append("\t\t\t\tRenames obfuscated names when decompiling with JADX, Fernflower or CFR. The name lengths that JADX accepts can be set with --deobf-min=3 and --deobf-max=64.\n");
         System.out.println(usage.toString());
     }
 
@@ -20,6 +20,11 @@ import enumeration.Action;
 import enumeration.DecompilerType;
 import java.io.File;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import model.ArgumentPackage;
 
 /**
@@ -29,6 +34,17 @@ import model.ArgumentPackage;
  */
 public class ArgumentParser {
 
+    /**
+     * The names of all optional arguments, without the leading dashes. Any
+     * other option is rejected, as a typo would otherwise silently run a
+     * (possibly long) job with the default values.
+     */
+    private static final Set<String> OPTIONS = new HashSet<>(Arrays.asList(
+            "artifact-cache", "dedup-store", "deobf", "deobf-max", "deobf-min", "depth", "exclude",
+            "force", "hash", "in-process", "include", "index", "install-missing", "jobs", "kind",
+            "limit", "memory", "mirror", "priority", "profile", "progress", "scratch", "search-index",
+            "skip-libraries", "threads"));
+
     /**
      * Extracts the arguments from the provided String array and saves them into
      * their respective fields in this class
@@ -43,15 +59,90 @@ public class ArgumentParser {
      * Possible decompilers: JDCmd (uses JD-Core, also used in JD-GUI), JADX,
      * Fernflower, CFR, ProCyon and JEB3
      *
+     * Optional arguments start with two dashes and can be placed anywhere,
+     * i.e. <code>--scratch=/dev/shm</code>. These are stored in the returned
+     * package, and are not counted as one of the arguments above. Options
+     * that are not known result in Action.ERROR.
+     *
      * @param args the string array containing the user defined input
      * @return if all variables were set, the requested action is returned as an
      * enum value. If one or more variables were not set successfully, the
      * enum's value equals Action.ERROR.
      */
     public ArgumentPackage setArguments(String[] args) {
+        if (!getUnknownOptions(args).isEmpty()) {
+            return new ArgumentPackage(Action.ERROR);
+        }
+        ArgumentPackage argumentPackage = parseAction(getPositionalArguments(args));
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            //Options without a value are flags, which are enabled by providing them
+            int separator = arg.indexOf('=');
+            if (separator == -1) {
+                argumentPackage.setOption(arg.substring(2), "true");
+            } else {
+                argumentPackage.setOption(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        return argumentPackage;
+    }
+
+    /**
+     * Removes all optional arguments (those starting with two dashes) from the
+     * given arguments
+     *
+     * @param args the string array containing the user defined input
+     * @return the arguments without the optional arguments, in the same order
+     */
+    public static String[] getPositionalArguments(String[] args) {
+        List<String> positionalArguments = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positionalArguments.add(arg);
+            }
+        }
+        return positionalArguments.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the optional arguments (those starting with two dashes) of which
+     * the name is not known
+     *
+     * @param args the string array containing the user defined input
+     * @return the unknown optional arguments, in the same order, without
+     * their values
+     */
+    public static List<String> getUnknownOptions(String[] args) {
+        List<String> unknownOptions = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            int separator = arg.indexOf('=');
+            String name = separator == -1 ? arg.substring(2) : arg.substring(2, separator);
+            if (!OPTIONS.contains(name.toLowerCase())) {
+                unknownOptions.add("--" + name);
+            }
+        }
+        return unknownOptions;
+    }
+
+    /**
+     * Determines the requested action based on the positional arguments
+     *
+     * @param args the positional arguments
+     * @return the argument package for the requested action, or an argument
+     * package with Action.ERROR if the arguments are not valid
+     */
+    private ArgumentPackage parseAction(String[] args) {
         //Check if the amount of provided arguments equals one, which is also equal to the installation command. Note that both strings are converted to a lowercase variant.
         if (args.length == 1 && "-install".toLowerCase().equals(args[0].toLowerCase())) {
             return new ArgumentPackage(Action.INSTALL);
+            //Check if only the given decompilers should be installed
+        } else if (args.length > 1 && "-install".toLowerCase().equals(args[0].toLowerCase())) {
+            return parseToolSelection(Action.INSTALL, args);
             //Check if the update command is provided (if it is not the installation command).
         } else if (args.length == 1 && "-update".toLowerCase().equals(args[0].toLowerCase())) {
             return new ArgumentPackage(Action.UPDATE);
@@ -61,11 +152,56 @@ public class ArgumentParser {
             //Check if the compact install argument is provided
         } else if (args.length == 1 && "-compactInstall".toLowerCase().equals(args[0].toLowerCase())) {
             return new ArgumentPackage(Action.COMPACT_INSTALL);
+        } else if (args.length > 1 && "-compactInstall".toLowerCase().equals(args[0].toLowerCase())) {
+            return parseToolSelection(Action.COMPACT_INSTALL, args);
+            //Check if the bundles should be exported, for which the output folder is required
+        } else if (args.length == 2 && "-exportBundles".toLowerCase().equals(args[0].toLowerCase())) {
+            return new ArgumentPackage(Action.EXPORT_BUNDLES, Arrays.asList(args[1]));
+            //Check if the library should be verified, optionally followed by the mode (fast or full)
+        } else if (args.length == 1 && "-verify".toLowerCase().equals(args[0].toLowerCase())) {
+            return new ArgumentPackage(Action.VERIFY, Arrays.asList("fast"));
+        } else if (args.length == 2 && "-verify".toLowerCase().equals(args[0].toLowerCase())
+                && ("fast".equals(args[1].toLowerCase()) || "full".equals(args[1].toLowerCase()))) {
+            return new ArgumentPackage(Action.VERIFY, Arrays.asList(args[1].toLowerCase()));
+            //Check if a fingerprint index should be built from a corpus of library JARs
+        } else if (args.length == 3 && "-buildIndex".toLowerCase().equals(args[0].toLowerCase())) {
+            return new ArgumentPackage(Action.BUILD_INDEX, Arrays.asList(args[1], args[2]));
+            //Check if an APK (or a folder with APKs) should be triaged, for which the output file is required
+        } else if (args.length == 3 && "-triage".toLowerCase().equals(args[0].toLowerCase())) {
+            return new ArgumentPackage(Action.TRIAGE, Arrays.asList(args[1], args[2]));
+            //Check if the symbols of an APK (or a folder with APKs) should be extracted, for which the output folder is required
+        } else if (args.length == 3 && "-extract".toLowerCase().equals(args[0].toLowerCase())) {
+            return new ArgumentPackage(Action.EXTRACT, Arrays.asList(args[1], args[2]));
+            //Check if a search index (or a folder with indices) should be searched, for which the query is required
+        } else if (args.length == 3 && "-search".toLowerCase().equals(args[0].toLowerCase())) {
+            return new ArgumentPackage(Action.SEARCH, Arrays.asList(args[1], args[2]));
         }
         //Return error if something went wrong
         return new ArgumentPackage(Action.ERROR);
     }
 
+    /**
+     * Obtain an argument package for an installation of the decompilers that
+     * are given after the action, i.e. <code>-install jadx cfr</code>
+     *
+     * @param action the installation action
+     * @param args the arguments that the user provided
+     * @return the argument package with the names of the selected tools (in
+     * lower case) as parameters, or an argument package with Action.ERROR if
+     * one of the names is not a known tool
+     */
+    private ArgumentPackage parseToolSelection(Action action, String[] args) {
+        List<String> toolNames = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            try {
+                toolNames.add(DecompilerType.valueOf(args[i].toUpperCase()).toString().toLowerCase());
+            } catch (IllegalArgumentException ex) {
+                return new ArgumentPackage(Action.ERROR);
+            }
+        }
+        return new ArgumentPackage(action, toolNames);
+    }
+
     /**
      * Obtain an argument package to decompile a given APK with a given
      * decompiler. If JEB3 isn't chosen as the decompiler, requesting the JEB3
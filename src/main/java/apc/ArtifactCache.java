@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import model.Repository;
+import model.Tool;
+
+/**
+ * A cache of the installed builds of the tools, which can reside in a local
+ * folder or on a shared (network) file system. Each entry is keyed by the
+ * name of the tool and the commit of its repository, since the same commit
+ * results in the same build on every machine. The URL of the repository is
+ * not part of the key, as it differs if the repository is cloned from a
+ * mirror instead of the upstream repository. An entry contains the files
+ * as they are placed in the library folder of the tool.
+ *
+ * Entries are written to a temporary folder within the cache first, which is
+ * then renamed. This way, multiple machines can fill the same cache at the
+ * same time without reading a partially written entry.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class ArtifactCache {
+
+    /**
+     * The root folder of the cache
+     */
+    private final File cacheFolder;
+
+    /**
+     * The file manager that is used within this class
+     */
+    private final FileManager fileManager;
+
+    /**
+     * The keys of the tools that have been computed so far, since computing a
+     * key requires the repository to be opened
+     */
+    private final Map<Tool, String> keys;
+
+    /**
+     * Creates a cache in the given folder, which is created if it does not
+     * exist yet
+     *
+     * @param cacheFolder the root folder of the cache
+     */
+    public ArtifactCache(File cacheFolder) {
+        this.cacheFolder = cacheFolder;
+        fileManager = new FileManager();
+        keys = new ConcurrentHashMap<>();
+        cacheFolder.mkdirs();
+    }
+
+    /**
+     * Checks if the build of the given tool is present in the cache. If the
+     * commit of the repository cannot be determined, the tool is treated as
+     * not being cached.
+     *
+     * @param tool the tool to check
+     * @return true if the build is present in the cache, false if not
+     */
+    public boolean contains(Tool tool) {
+        try {
+            return getEntry(tool).isDirectory();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies the cached build of the given tool into the given library folder
+     *
+     * @param tool the tool to restore
+     * @param libraryFolder the library folder of the tool
+     * @throws IOException if the entry cannot be read, or if the files cannot
+     * be copied
+     */
+    public void restore(Tool tool, File libraryFolder) throws IOException {
+        fileManager.copyFolder(getEntry(tool), libraryFolder);
+    }
+
+    /**
+     * Stores the content of the library folder of the given tool in the
+     * cache. If another machine stored the same entry in the meantime, the
+     * existing entry is kept. Empty library folders are not stored.
+     *
+     * @param tool the tool to store
+     * @param libraryFolder the library folder of the tool
+     * @throws IOException if the entry cannot be written
+     */
+    public void store(Tool tool, File libraryFolder) throws IOException {
+        File entry = getEntry(tool);
+        //An empty library folder indicates a failed build, which should not be cached
+        if (entry.isDirectory() || !libraryFolder.isDirectory() || libraryFolder.list().length == 0) {
+            return;
+        }
+        File temporaryEntry = new File(cacheFolder, entry.getName() + "." + UUID.randomUUID().toString() + ".tmp");
+        try {
+            fileManager.copyFolder(libraryFolder, temporaryEntry);
+            Files.move(temporaryEntry.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            if (!entry.isDirectory()) {
+                throw new IOException("The build of " + tool.getRepository().getName() + " cannot be stored in the artifact cache (" + cacheFolder.getAbsolutePath() + ")!");
+            }
+            //The entry was stored by another machine in the meantime
+        } finally {
+            if (temporaryEntry.exists()) {
+                fileManager.delete(temporaryEntry);
+            }
+        }
+    }
+
+    /**
+     * Gets the folder of the cache entry of the given tool, which is named
+     * after the SHA-256 hash of the name of the tool and the commit of its
+     * repository
+     *
+     * @param tool the tool to get the entry for
+     * @return the folder of the entry, which does not need to exist
+     * @throws IOException if the commit of the repository cannot be determined
+     */
+    private File getEntry(Tool tool) throws IOException {
+        String key = keys.get(tool);
+        if (key == null) {
+            Repository repository = tool.getRepository();
+            key = fileManager.hash(repository.getName().toLowerCase() + "|" + repository.getHeadCommit());
+            keys.put(tool, key);
+        }
+        return new File(cacheFolder, key);
+    }
+}
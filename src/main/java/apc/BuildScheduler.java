@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import library.Constants;
+import model.Command;
+import model.ProjectInfo;
+import model.Tool;
+
+/**
+ * Builds multiple tools at the same time, within the budget of the available
+ * processors and memory of this machine. The processors are divided over the
+ * concurrent builds, and each build is instructed to use its share of them.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class BuildScheduler {
+
+    /**
+     * The amount of tools that are built at the same time
+     */
+    private final int concurrentBuilds;
+
+    /**
+     * The amount of threads that each build may use
+     */
+    private final int threadsPerBuild;
+
+    /**
+     * Creates a scheduler for the given amount of builds, based on the amount
+     * of available processors and physical memory
+     *
+     * @param buildCount the amount of tools that need to be built
+     */
+    public BuildScheduler(int buildCount) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int memoryBudget = (int) Math.max(1, Constants.getPhysicalMemory() / Constants.BUILD_MEMORY_ESTIMATE);
+        concurrentBuilds = Math.max(1, Math.min(buildCount, Math.min(processors, memoryBudget)));
+        threadsPerBuild = Math.max(1, processors / concurrentBuilds);
+    }
+
+    /**
+     * Builds the given tools, of which at most the computed amount at the same
+     * time. If one or more builds cannot be started or fail, the others are
+     * built regardless, after which all failures are reported at once.
+     *
+     * @param tools the tools to build
+     * @throws IOException if one or more builds could not be started, or
+     * finished with a non-zero exit code
+     */
+    public void build(List<Tool> tools) throws IOException {
+        System.out.println("[+]Building " + concurrentBuilds + " tool(s) at the same time, using " + threadsPerBuild + " thread(s) per build");
+        ExecutorService executorService = Executors.newFixedThreadPool(concurrentBuilds);
+        Map<Tool, Future<?>> builds = new LinkedHashMap<>();
+        for (Tool tool : tools) {
+            builds.put(tool, executorService.submit(() -> {
+                String name = tool.getRepository().getName();
+                System.out.println("[+]Starting to build " + name);
+                ProgressReporter.startStage("build", name);
+                int exitCode = getParallelBuildCommand(tool.getProjectInfo()).execute();
+                if (exitCode != 0) {
+                    ProgressReporter.failStage("build", name, exitCode);
+                    throw new IOException(name + " (exit code " + exitCode + ")");
+                }
+                ProgressReporter.endStage("build", name, null);
+                System.out.println("[+]Finished building " + name);
+                return null;
+            }));
+        }
+        executorService.shutdown();
+        List<String> failedTools = new ArrayList<>();
+        for (Map.Entry<Tool, Future<?>> build : builds.entrySet()) {
+            try {
+                build.getValue().get();
+            } catch (ExecutionException ex) {
+                //A build that finished with a non-zero exit code contains the exit code in its message
+                failedTools.add(ex.getCause() instanceof IOException ? ex.getCause().getMessage() : build.getKey().getRepository().getName());
+            } catch (InterruptedException ex) {
+                executorService.shutdownNow();
+                throw new IOException("The building of the tools was interrupted!");
+            }
+        }
+        if (failedTools.size() > 0) {
+            throw new IOException("Something went wrong when building " + String.join(", ", failedTools));
+        }
+    }
+
+    /**
+     * Creates the build command of the given project, including the options
+     * for its build system to use the assigned amount of threads
+     *
+     * @param projectInfo the project to build
+     * @return the build command
+     */
+    private Command getParallelBuildCommand(ProjectInfo projectInfo) {
+        Command buildCommand = projectInfo.getBuildCommand();
+        String command = buildCommand.getCommand();
+        switch (projectInfo.getBuildSystem()) {
+            case MAVEN:
+                //-T sets the amount of threads that are used to build the modules
+                command += " -T " + threadsPerBuild;
+                break;
+            case GRADLE:
+                /**
+                 * --parallel builds independent projects at the same time, at
+                 * most using the amount of workers that --max-workers specifies.
+                 *
+                 * The daemon is shared with the other Gradle builds that use
+                 * the same version, and stops shortly after the builds are
+                 * done instead of remaining idle.
+                 */
+                command += " --parallel --max-workers=" + threadsPerBuild + " -Dorg.gradle.daemon.idletimeout=" + Constants.GRADLE_DAEMON_IDLE_TIMEOUT;
+                break;
+        }
+        return new Command(command, buildCommand.getWorkingDirectory());
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import model.LibraryFile;
+import model.LibraryManifest;
+
+/**
+ * Records and verifies the size and SHA-256 hash of the files of the tools in
+ * the library. Files are hashed in parallel, using one thread per available
+ * processor.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class ChecksumVerifier {
+
+    /**
+     * The file manager that is used within this class
+     */
+    private final FileManager fileManager;
+
+    /**
+     * Records and verifies the size and SHA-256 hash of the files of the tools
+     * in the library
+     */
+    public ChecksumVerifier() {
+        fileManager = new FileManager();
+    }
+
+    /**
+     * Records the size and hash of all files within the given library folder
+     * of a tool. Git metadata is skipped.
+     *
+     * @param libraryFolder the library folder of a tool
+     * @return the files, sorted by their relative path
+     * @throws IOException if one or more files cannot be hashed
+     */
+    public List<LibraryFile> record(File libraryFolder) throws IOException {
+        List<File> files = new ArrayList<>();
+        collectFiles(libraryFolder, files);
+        List<LibraryFile> libraryFiles = new ArrayList<>();
+        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<String>> hashes = new ArrayList<>();
+            for (File file : files) {
+                hashes.add(executorService.submit(() -> fileManager.hash(file)));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                libraryFiles.add(new LibraryFile(getRelativePath(libraryFolder, file), file.length(), hashes.get(i).get()));
+            }
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause().getMessage());
+        } catch (InterruptedException ex) {
+            throw new IOException("The hashing of the files in " + libraryFolder.getAbsolutePath() + " was interrupted!");
+        } finally {
+            executorService.shutdownNow();
+        }
+        Collections.sort(libraryFiles, Comparator.comparing(LibraryFile::getPath));
+        return libraryFiles;
+    }
+
+    /**
+     * Verifies the recorded files of the given tools. A fast verification
+     * only checks if each file exists and has the recorded size, whereas a
+     * full verification also compares the hash of each file.
+     *
+     * @param manifest the manifest of the library
+     * @param libraryRoot the folder in which the library folders of the tools
+     * reside
+     * @param toolNames the names of the tools to verify
+     * @param full true to compare the hashes of the files, false to only
+     * compare their sizes
+     * @return a description of each mismatch, which is empty if the
+     * installation is intact
+     * @throws IOException if the verification was interrupted
+     */
+    public List<String> verify(LibraryManifest manifest, File libraryRoot, List<String> toolNames, boolean full) throws IOException {
+        List<String> mismatches = new ArrayList<>();
+        List<File> filesToHash = new ArrayList<>();
+        List<String> expectedHashes = new ArrayList<>();
+        for (String toolName : toolNames) {
+            File libraryFolder = new File(libraryRoot, toolName);
+            List<LibraryFile> libraryFiles = manifest.getFiles(toolName);
+            if (libraryFiles.isEmpty()) {
+                mismatches.add(toolName + ": no files are recorded in the library manifest");
+                continue;
+            }
+            String entryPoint = manifest.getEntryPoint(toolName);
+            if (entryPoint != null && !new File(libraryFolder, entryPoint).isFile()) {
+                mismatches.add(toolName + ": the entry point (" + entryPoint + ") is missing");
+            }
+            for (LibraryFile libraryFile : libraryFiles) {
+                File file = new File(libraryFolder, libraryFile.getPath());
+                if (!file.isFile()) {
+                    mismatches.add(toolName + ": " + libraryFile.getPath() + " is missing");
+                } else if (file.length() != libraryFile.getSize()) {
+                    mismatches.add(toolName + ": " + libraryFile.getPath() + " has a different size");
+                } else if (full) {
+                    filesToHash.add(file);
+                    expectedHashes.add(libraryFile.getHash());
+                }
+            }
+        }
+        if (filesToHash.isEmpty()) {
+            return mismatches;
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<String>> hashes = new ArrayList<>();
+            for (File file : filesToHash) {
+                hashes.add(executorService.submit(() -> fileManager.hash(file)));
+            }
+            for (int i = 0; i < filesToHash.size(); i++) {
+                try {
+                    if (!hashes.get(i).get().equals(expectedHashes.get(i))) {
+                        mismatches.add(getRelativePath(libraryRoot, filesToHash.get(i)) + " has a different checksum");
+                    }
+                } catch (ExecutionException ex) {
+                    mismatches.add(getRelativePath(libraryRoot, filesToHash.get(i)) + " cannot be read");
+                }
+            }
+        } catch (InterruptedException ex) {
+            throw new IOException("The verification of the library was interrupted!");
+        } finally {
+            executorService.shutdownNow();
+        }
+        return mismatches;
+    }
+
+    /**
+     * Checks that the entry point of each of the given tools is present,
+     * which only requires the manifest to be read. Tools that are not listed
+     * in the manifest (i.e. after a compact installation) are not checked.
+     *
+     * @param manifest the manifest of the library
+     * @param libraryRoot the folder in which the library folders of the tools
+     * reside
+     * @param toolNames the names of the tools to check
+     * @return a description of each missing entry point, which is empty if
+     * all entry points are present
+     */
+    public List<String> verifyEntryPoints(LibraryManifest manifest, File libraryRoot, List<String> toolNames) {
+        List<String> mismatches = new ArrayList<>();
+        for (String toolName : toolNames) {
+            String entryPoint = manifest.getEntryPoint(toolName);
+            if (entryPoint != null && !new File(new File(libraryRoot, toolName), entryPoint).isFile()) {
+                mismatches.add(toolName + ": the entry point (" + entryPoint + ") is missing");
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Adds all files within the given folder (and its sub folders) to the
+     * given list, except for Git metadata
+     *
+     * @param folder the folder to walk through
+     * @param files the list to add the files to
+     */
+    private void collectFiles(File folder, List<File> files) {
+        File[] children = folder.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                if (!child.getName().equals(".git")) {
+                    collectFiles(child, files);
+                }
+            } else {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * Gets the path of the given file relative to the given folder, using
+     * forward slashes as separators on every platform
+     *
+     * @param folder the folder that contains the file
+     * @param file the file
+     * @return the relative path of the file
+     */
+    private String getRelativePath(File folder, File file) {
+        return folder.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+}
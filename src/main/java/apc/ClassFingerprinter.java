@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import library.Constants;
+
+/**
+ * Computes a structural fingerprint of a compiled class, which remains the
+ * same if the class, its members and the classes it refers to are renamed
+ * (i.e. by an obfuscator). The fingerprint is based on the access flags, the
+ * field types and method signatures (in which all non-platform classes are
+ * replaced by a placeholder), the string constants and the platform members
+ * the class refers to. The byte code itself is not used, since the output of
+ * dex2jar differs from the output of the Java compiler.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class ClassFingerprinter {
+
+    /**
+     * The access flags that are part of the fingerprint (public, private,
+     * protected, static, final, interface, abstract and enum)
+     */
+    private static final int ACCESS_MASK = 0x0001 | 0x0002 | 0x0004 | 0x0008 | 0x0010 | 0x0200 | 0x0400 | 0x4000;
+
+    /**
+     * The placeholder of a non-platform class in a type descriptor
+     */
+    private static final String PLACEHOLDER = "L?;";
+
+    /**
+     * Computes the fingerprint of the given class
+     *
+     * @param classBytes the content of the class file
+     * @return the fingerprint, or 0 if the class has too few features to be
+     * identified reliably
+     * @throws IOException if the class file is malformed
+     */
+    public long fingerprint(byte[] classBytes) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(classBytes));
+        if (input.readInt() != 0xCAFEBABE) {
+            throw new IOException("The given file is not a class file!");
+        }
+        //The minor and major version differ between compilers, and are therefore ignored
+        input.readInt();
+        Object[] constantPool = readConstantPool(input);
+        List<String> features = new ArrayList<>();
+        features.add("class:" + (input.readUnsignedShort() & ACCESS_MASK));
+        //The name of the class itself is not part of the fingerprint
+        input.readUnsignedShort();
+        int superClass = input.readUnsignedShort();
+        features.add("super:" + (superClass == 0 ? "" : normalizeClass(getClassName(constantPool, superClass))));
+        int interfaceCount = input.readUnsignedShort();
+        TreeSet<String> interfaces = new TreeSet<>();
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(normalizeClass(getClassName(constantPool, input.readUnsignedShort())));
+        }
+        features.add("interfaces:" + interfaces);
+        List<String> members = new ArrayList<>();
+        members.addAll(readMembers(input, constantPool, "field:"));
+        members.addAll(readMembers(input, constantPool, "method:"));
+        //The order of the members may be changed by an obfuscator or dex2jar
+        Collections.sort(members);
+        features.addAll(members);
+        TreeSet<String> references = getReferences(constantPool);
+        features.addAll(references);
+        if (members.size() + references.size() < Constants.FINGERPRINT_MIN_FEATURES) {
+            return 0;
+        }
+        return hash(features);
+    }
+
+    /**
+     * Reads the constant pool of a class file. Each entry is stored at its
+     * index as a String (for UTF-8 entries), an int array with the referenced
+     * indices (for class, string, member and name and type entries), or null
+     * (for all other entries).
+     *
+     * @param input the class file, positioned at the constant pool count
+     * @return the entries of the constant pool
+     * @throws IOException if the constant pool is malformed
+     */
+    private Object[] readConstantPool(DataInputStream input) throws IOException {
+        int count = input.readUnsignedShort();
+        Object[] constantPool = new Object[count];
+        for (int i = 1; i < count; i++) {
+            int tag = input.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    constantPool[i] = input.readUTF();
+                    break;
+                case 3:
+                case 4:
+                    input.readInt();
+                    break;
+                case 5:
+                case 6:
+                    //Long and double entries take up two indices
+                    input.readLong();
+                    i++;
+                    break;
+                case 7:
+                case 8:
+                    constantPool[i] = new int[]{tag, input.readUnsignedShort()};
+                    break;
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                    constantPool[i] = new int[]{tag, input.readUnsignedShort(), input.readUnsignedShort()};
+                    break;
+                case 15:
+                    input.readUnsignedByte();
+                    input.readUnsignedShort();
+                    break;
+                case 16:
+                case 19:
+                case 20:
+                    input.readUnsignedShort();
+                    break;
+                case 17:
+                case 18:
+                    input.readInt();
+                    break;
+                default:
+                    throw new IOException("The constant pool contains an unknown tag (" + tag + ")!");
+            }
+        }
+        return constantPool;
+    }
+
+    /**
+     * Reads the fields or methods of a class file, and creates a feature for
+     * each of them. The name of a member is only kept for constructors and
+     * static initializers, since other names can be renamed.
+     *
+     * @param input the class file, positioned at the member count
+     * @param constantPool the constant pool of the class file
+     * @param prefix the prefix of the features
+     * @return the features of the members
+     * @throws IOException if the members are malformed
+     */
+    private List<String> readMembers(DataInputStream input, Object[] constantPool, String prefix) throws IOException {
+        int count = input.readUnsignedShort();
+        List<String> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int access = input.readUnsignedShort() & ACCESS_MASK;
+            String name = getUtf8(constantPool, input.readUnsignedShort());
+            String descriptor = normalizeDescriptor(getUtf8(constantPool, input.readUnsignedShort()));
+            if (!name.startsWith("<")) {
+                name = "";
+            }
+            members.add(prefix + access + name + descriptor);
+            //The attributes (such as the byte code) are skipped
+            int attributeCount = input.readUnsignedShort();
+            for (int j = 0; j < attributeCount; j++) {
+                input.readUnsignedShort();
+                int length = input.readInt();
+                if (input.skipBytes(length) != length) {
+                    throw new IOException("An attribute of the class file is truncated!");
+                }
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Collects the string constants and the referenced members of platform
+     * classes, which are not renamed by an obfuscator
+     *
+     * @param constantPool the constant pool of the class file
+     * @return the sorted references
+     * @throws IOException if the constant pool is malformed
+     */
+    private TreeSet<String> getReferences(Object[] constantPool) throws IOException {
+        TreeSet<String> references = new TreeSet<>();
+        for (Object entry : constantPool) {
+            if (!(entry instanceof int[])) {
+                continue;
+            }
+            int[] reference = (int[]) entry;
+            if (reference[0] == 8) {
+                references.add("string:" + getUtf8(constantPool, reference[1]));
+            } else if (reference[0] >= 9 && reference[0] <= 11) {
+                String owner = getClassName(constantPool, reference[1]);
+                if (isPlatformClass(owner)) {
+                    int[] nameAndType = (int[]) constantPool[reference[2]];
+                    references.add("member:" + owner + "." + getUtf8(constantPool, nameAndType[1]) + normalizeDescriptor(getUtf8(constantPool, nameAndType[2])));
+                }
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Gets the name of the class at the given index of the constant pool
+     *
+     * @param constantPool the constant pool
+     * @param index the index of the class entry
+     * @return the internal name of the class (i.e. "java/lang/Object")
+     * @throws IOException if the index does not point to a class entry
+     */
+    private String getClassName(Object[] constantPool, int index) throws IOException {
+        if (index <= 0 || index >= constantPool.length || !(constantPool[index] instanceof int[]) || ((int[]) constantPool[index])[0] != 7) {
+            throw new IOException("The class file refers to an invalid class entry!");
+        }
+        return getUtf8(constantPool, ((int[]) constantPool[index])[1]);
+    }
+
+    /**
+     * Gets the UTF-8 string at the given index of the constant pool
+     *
+     * @param constantPool the constant pool
+     * @param index the index of the UTF-8 entry
+     * @return the string
+     * @throws IOException if the index does not point to a UTF-8 entry
+     */
+    private String getUtf8(Object[] constantPool, int index) throws IOException {
+        if (index <= 0 || index >= constantPool.length || !(constantPool[index] instanceof String)) {
+            throw new IOException("The class file refers to an invalid string entry!");
+        }
+        return (String) constantPool[index];
+    }
+
+    /**
+     * Replaces the given class name by a placeholder, unless it is a platform
+     * class
+     *
+     * @param className the internal name of the class
+     * @return the class name, or the placeholder
+     */
+    private String normalizeClass(String className) {
+        return isPlatformClass(className) ? className : "?";
+    }
+
+    /**
+     * Replaces all non-platform classes in the given type or method
+     * descriptor by a placeholder
+     *
+     * @param descriptor the descriptor
+     * @return the normalized descriptor
+     */
+    private String normalizeDescriptor(String descriptor) {
+        StringBuilder normalized = new StringBuilder();
+        int index = 0;
+        while (index < descriptor.length()) {
+            char character = descriptor.charAt(index);
+            if (character == 'L') {
+                int end = descriptor.indexOf(';', index);
+                if (end == -1) {
+                    normalized.append(descriptor.substring(index));
+                    break;
+                }
+                String className = descriptor.substring(index + 1, end);
+                normalized.append(isPlatformClass(className) ? "L" + className + ";" : PLACEHOLDER);
+                index = end + 1;
+            } else {
+                normalized.append(character);
+                index++;
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Checks if the given class belongs to the platform (the Java or Android
+     * runtime), which is not renamed by an obfuscator
+     *
+     * @param className the internal name of the class
+     * @return true if the class is a platform class, false if not
+     */
+    private boolean isPlatformClass(String className) {
+        //The support library is bundled with (and renamed within) the application, even though it resides in the android package
+        if (className.startsWith("android/support/")) {
+            return false;
+        }
+        return className.startsWith("java/") || className.startsWith("javax/") || className.startsWith("android/") || className.startsWith("dalvik/");
+    }
+
+    /**
+     * Hashes the given features into a 64-bit fingerprint
+     *
+     * @param features the features of the class
+     * @return the first 8 bytes of the SHA-256 hash of the features
+     * @throws IOException if SHA-256 is not available
+     */
+    private long hash(List<String> features) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String feature : features) {
+                digest.update(feature.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            long fingerprint = ByteBuffer.wrap(digest.digest()).getLong();
+            //A fingerprint of 0 indicates a class that cannot be identified
+            return fingerprint == 0 ? 1 : fingerprint;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("The SHA-256 algorithm is not available!");
+        }
+    }
+}
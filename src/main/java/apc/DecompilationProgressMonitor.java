@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import library.Constants;
+import model.DexFile;
+import model.PackageFilter;
+
+/**
+ * Reports the progress of an external decompiler to the progress stream. As
+ * the decompilers do not report their progress themselves, the Java files in
+ * their output folder are counted periodically and compared to the amount of
+ * top level classes in the decompiled DEX files that pass the package filter
+ * and are not part of a known library. Inner classes are not counted, since
+ * these are written in the same Java file as their outer class.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class DecompilationProgressMonitor implements Closeable {
+
+    /**
+     * The name of the stage to which the events belong
+     */
+    private final String stage;
+
+    /**
+     * The name of the decompiler, which is used as the target of the events
+     */
+    private final String decompilerName;
+
+    /**
+     * The folder in which the decompiler writes the Java files
+     */
+    private final File sourcesFolder;
+
+    /**
+     * The amount of top level classes in the APK, or -1 if it is unknown
+     */
+    private final long classCount;
+
+    /**
+     * The service that periodically counts the decompiled classes
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Starts monitoring the given sources folder
+     *
+     * @param stage the name of the stage to which the events belong (i.e.
+     * "decompile" or "decompile-priority")
+     * @param decompilerName the name of the decompiler
+     * @param dexFiles the DEX files that are decompiled
+     * @param sourcesFolder the folder in which the decompiler writes the Java
+     * files
+     * @param packageFilter the filter that decides which classes are
+     * decompiled
+     * @param knownClasses the internal names of the classes that are part of
+     * a known library, which are not decompiled
+     */
+    public DecompilationProgressMonitor(String stage, String decompilerName, Collection<File> dexFiles, File sourcesFolder, PackageFilter packageFilter, Collection<String> knownClasses) {
+        this.stage = stage;
+        this.decompilerName = decompilerName;
+        this.sourcesFolder = sourcesFolder;
+        this.classCount = countClasses(dexFiles, packageFilter, knownClasses);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "decompilation-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::report, Constants.PROGRESS_INTERVAL, Constants.PROGRESS_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the monitoring, and reports the final amount of decompiled
+     * classes
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(Constants.PROGRESS_INTERVAL, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+    }
+
+    /**
+     * Reports the amount of decompiled classes to the progress stream
+     */
+    private void report() {
+        ProgressReporter.reportProgress(stage, decompilerName, "classes", countJavaFiles(), classCount);
+    }
+
+    /**
+     * Counts the Java files in the sources folder
+     *
+     * @return the amount of Java files
+     */
+    private long countJavaFiles() {
+        if (!sourcesFolder.isDirectory()) {
+            return 0;
+        }
+        try (Stream<Path> paths = Files.walk(sourcesFolder.toPath())) {
+            return paths.filter(path -> path.toString().endsWith(".java")).count();
+        } catch (IOException | RuntimeException ex) {
+            //The decompiler might remove or rename files while they are counted
+            return 0;
+        }
+    }
+
+    /**
+     * Counts the top level classes in the given DEX files
+     *
+     * @param dexFiles the DEX files
+     * @param packageFilter the filter that decides which classes are
+     * decompiled
+     * @param knownClasses the internal names of the classes that are part of
+     * a known library
+     * @return the amount of top level classes, or -1 if a DEX file cannot be
+     * read
+     */
+    private long countClasses(Collection<File> dexFiles, PackageFilter packageFilter, Collection<String> knownClasses) {
+        long count = 0;
+        try {
+            for (File dexFile : dexFiles) {
+                for (String descriptor : new DexFile(dexFile).getClassDescriptors()) {
+                    if (!descriptor.contains("$") && packageFilter.acceptsDescriptor(descriptor) && !knownClasses.contains(descriptor.substring(1, descriptor.length() - 1))) {
+                        count++;
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            return -1;
+        }
+        return count;
+    }
+}
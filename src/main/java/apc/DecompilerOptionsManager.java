@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import enumeration.DecompilerType;
+import library.Constants;
+import model.ArgumentPackage;
+import model.DecompilerOptions;
+
+/**
+ * Determines the options of the decompilers, based on the available cores and
+ * memory of this machine, and the amount of decompilation jobs that run on it
+ * at the same time. Each of the options can be overridden by the user.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class DecompilerOptionsManager {
+
+    /**
+     * The arguments that were provided by the user
+     */
+    private final ArgumentPackage argumentPackage;
+
+    /**
+     * Creates a manager that determines the decompiler options for the given
+     * arguments
+     *
+     * @param argumentPackage the arguments that were provided by the user
+     */
+    public DecompilerOptionsManager(ArgumentPackage argumentPackage) {
+        this.argumentPackage = argumentPackage;
+    }
+
+    /**
+     * Gets the options for the given decompiler. The cores and memory of this
+     * machine are divided over the amount of concurrent jobs (set with
+     * "--jobs"), unless the amount of threads or memory is set explicitly with
+     * "--threads" or "--memory".
+     *
+     * @param decompilerType the decompiler to get the options for
+     * @return the options of the decompiler
+     * @throws IllegalArgumentException if one of the provided options has an
+     * invalid value
+     */
+    public DecompilerOptions getOptions(DecompilerType decompilerType) {
+        int jobs = Math.max(1, argumentPackage.getIntOption("jobs", 1));
+        int threads = 1;
+        //Only JADX decompiles multiple classes at the same time, the other decompilers are single threaded
+        if (decompilerType == DecompilerType.JADX) {
+            threads = argumentPackage.getIntOption("threads", Math.max(1, Runtime.getRuntime().availableProcessors() / jobs));
+            if (threads < 1) {
+                throw new IllegalArgumentException("The amount of threads should be at least 1, but is " + threads + "!");
+            }
+        }
+        int memory = getMemory(jobs);
+        int deobfuscationMinLength = argumentPackage.getIntOption("deobf-min", Constants.DEFAULT_DEOBFUSCATION_MIN_LENGTH);
+        int deobfuscationMaxLength = argumentPackage.getIntOption("deobf-max", Constants.DEFAULT_DEOBFUSCATION_MAX_LENGTH);
+        return new DecompilerOptions(decompilerType, threads, memory, argumentPackage.isOptionEnabled("deobf"), deobfuscationMinLength, deobfuscationMaxLength);
+    }
+
+    /**
+     * Gets the maximum heap size of a decompiler in megabytes. If the user did
+     * not provide it, the share of the physical memory that is available for
+     * decompilers is divided over the amount of concurrent jobs.
+     *
+     * @param jobs the amount of decompilation jobs that run at the same time
+     * @return the maximum heap size in megabytes
+     * @throws IllegalArgumentException if the provided amount of memory is
+     * invalid
+     */
+    private int getMemory(int jobs) {
+        String value = argumentPackage.getOption("memory");
+        if (value != null) {
+            return parseMemory(value);
+        }
+        long available = Constants.getPhysicalMemory() / 1024 / 1024 * Constants.DECOMPILER_MEMORY_SHARE / 100;
+        long memory = available / jobs;
+        return (int) Math.max(Constants.MIN_DECOMPILER_MEMORY, Math.min(Constants.MAX_DECOMPILER_MEMORY, memory));
+    }
+
+    /**
+     * Parses an amount of memory, which is given in megabytes by default. The
+     * suffixes "m" and "g" can be used to specify megabytes or gigabytes (i.e.
+     * "4096", "4096m" and "4g" are equal).
+     *
+     * @param value the amount of memory to parse
+     * @return the amount of memory in megabytes
+     * @throws IllegalArgumentException if the value is not a valid amount of
+     * memory
+     */
+    private int parseMemory(String value) {
+        String memory = value.trim().toLowerCase();
+        int multiplier = 1;
+        if (memory.endsWith("g")) {
+            multiplier = 1024;
+            memory = memory.substring(0, memory.length() - 1);
+        } else if (memory.endsWith("m")) {
+            memory = memory.substring(0, memory.length() - 1);
+        }
+        try {
+            int megabytes = Integer.parseInt(memory) * multiplier;
+            if (megabytes >= Constants.MIN_DECOMPILER_MEMORY) {
+                return megabytes;
+            }
+        } catch (NumberFormatException ex) {
+            //The error is thrown below
+        }
+        throw new IllegalArgumentException("The value of the option \"memory\" should be an amount of megabytes (i.e. \"4096\" or \"4g\") of at least " + Constants.MIN_DECOMPILER_MEMORY + ", but is \"" + value + "\"!");
+    }
+}
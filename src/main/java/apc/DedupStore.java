@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * A content addressed store in which every unique file is stored once. Files
+ * that are placed in an output folder through this store are hard linked to
+ * the stored copy, meaning identical files (such as bundled libraries and the
+ * template project) only take up disk space once across all outputs. If a hard
+ * link cannot be created (i.e. because the output resides on another file
+ * system), the file is copied instead.
+ *
+ * Note that all outputs share the same file on the disk, meaning a change in
+ * one of the linked files is visible in all outputs that contain it.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class DedupStore {
+
+    /**
+     * The folder in which the unique files are stored, named after their
+     * SHA-256 hash
+     */
+    private final File objectFolder;
+
+    /**
+     * The file manager that is used within this class
+     */
+    private final FileManager fileManager;
+
+    /**
+     * The amount of files that were placed in the output via this store
+     */
+    private long fileCount;
+
+    /**
+     * The amount of files that were already present in the store
+     */
+    private long duplicateCount;
+
+    /**
+     * The amount of bytes that did not need to be written, since the files
+     * were already present in the store
+     */
+    private long duplicateBytes;
+
+    /**
+     * Creates a deduplicated store in the given folder, which is created if it
+     * does not exist yet
+     *
+     * @param storeFolder the root folder of the store
+     */
+    public DedupStore(File storeFolder) {
+        this.objectFolder = new File(storeFolder, "objects");
+        fileManager = new FileManager();
+        objectFolder.mkdirs();
+    }
+
+    /**
+     * Moves all files from the source folder into the store, and links them
+     * into the destination folder using the same folder structure. The source
+     * folder is removed afterwards.
+     *
+     * @param src the folder with the files to store
+     * @param dest the folder to link the files into
+     * @throws IOException if a file cannot be hashed, stored or linked
+     */
+    public void moveFolder(File src, File dest) throws IOException {
+        if (src == null || dest == null || !src.isDirectory()) {
+            return;
+        }
+        dest.mkdirs();
+        for (File file : src.listFiles()) {
+            File fileDest = new File(dest, file.getName());
+            if (file.isDirectory()) {
+                moveFolder(file, fileDest);
+            } else if (!fileDest.exists()) {
+                moveFile(file.toPath(), fileDest.toPath());
+            }
+        }
+        fileManager.delete(src);
+    }
+
+    /**
+     * Moves a single file into the store (if its content is not stored yet)
+     * and links it to the given destination
+     *
+     * @param file the file to store
+     * @param destination the location to link the stored file to
+     * @throws IOException if the file cannot be hashed, stored or linked
+     */
+    private void moveFile(Path file, Path destination) throws IOException {
+        String hash = fileManager.hash(file.toFile());
+        Path object = new File(objectFolder, hash.substring(0, 2) + "/" + hash.substring(2)).toPath();
+        fileCount++;
+        if (Files.exists(object)) {
+            duplicateCount++;
+            duplicateBytes += Files.size(file);
+            Files.delete(file);
+        } else {
+            Files.createDirectories(object.getParent());
+            //Another instance might store the same object at the same time, so the file is moved under a unique name first
+            Path pending = object.resolveSibling(hash.substring(2) + "." + UUID.randomUUID() + ".tmp");
+            Files.move(file, pending);
+            try {
+                Files.move(pending, object, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                //The object was stored by another instance in the meantime
+                Files.deleteIfExists(pending);
+                if (!Files.exists(object)) {
+                    throw ex;
+                }
+            }
+        }
+        try {
+            Files.createLink(destination, object);
+        } catch (IOException | UnsupportedOperationException ex) {
+            //Hard links are not supported between different file systems, or on some file systems
+            Files.copy(object, destination);
+        }
+    }
+
+    /**
+     * Gets the amount of files that were placed in an output via this store
+     *
+     * @return the amount of files
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * Gets the amount of files that were already present in the store
+     *
+     * @return the amount of duplicate files
+     */
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Gets the amount of bytes that did not need to be written, since the
+     * files were already present in the store
+     *
+     * @return the amount of bytes that were saved
+     */
+    public long getDuplicateBytes() {
+        return duplicateBytes;
+    }
+}
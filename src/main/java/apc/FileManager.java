@@ -16,12 +16,24 @@
  */
 package apc;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import net.lingala.zip4j.core.ZipFile;
 import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.model.FileHeader;
 
 /**
  * Contains all functions which handle files, such as removing and copying files
@@ -52,6 +64,45 @@ public class FileManager {
         }
     }
 
+    /**
+     * Extracts a ZIP archive directly into the destination. If the root folder
+     * is skipped, the first path segment of each entry is removed, meaning
+     * the content of an archive with a single (versioned) root folder ends up
+     * in the destination itself.
+     *
+     * @param source ZIP file location
+     * @param destination place to extract all files to
+     * @param skipRootFolder true to remove the root folder of each entry
+     * @throws ZipException if the file is not a ZIP archive
+     * @throws IOException if the source file cannot be found, or if an entry
+     * points outside of the destination
+     */
+    public void extractArchive(String source, String destination, boolean skipRootFolder) throws ZipException, IOException {
+        if (!skipRootFolder) {
+            extractArchive(source, destination);
+            return;
+        }
+        if (!new File(source).exists()) {
+            throw new IOException("The source file does not exist");
+        }
+        Path root = Paths.get(destination).toAbsolutePath().normalize();
+        ZipFile zipFile = new ZipFile(source);
+        for (Object header : zipFile.getFileHeaders()) {
+            FileHeader fileHeader = (FileHeader) header;
+            String name = fileHeader.getFileName().replace('\\', '/');
+            int separator = name.indexOf('/');
+            if (fileHeader.isDirectory() || separator == -1 || separator == name.length() - 1) {
+                continue;
+            }
+            String strippedName = name.substring(separator + 1);
+            //Entries with names such as "../../file" are not extracted, as they would be written outside of the destination
+            if (!root.resolve(strippedName).normalize().startsWith(root)) {
+                throw new IOException("The entry \"" + name + "\" in " + source + " points outside of the destination folder!");
+            }
+            zipFile.extractFile(fileHeader, root.toString(), null, strippedName);
+        }
+    }
+
     /**
      * Deletes a folder, including all sub directories.
      *
@@ -155,4 +206,178 @@ public class FileManager {
             }
         }
     }
+
+    /**
+     * Moves a folder (including all the sub folders) to the given destination.
+     * If the destination does not exist yet and resides on the same file
+     * system, the folder is renamed, meaning no file is read or written. In
+     * any other case, the folder is copied to the destination and removed
+     * afterwards.
+     *
+     * @param src the folder to be moved
+     * @param dest the place to move the <code>src</code> folder to
+     * @throws IOException if the destination is not a folder or if the moving
+     * of the files failed
+     */
+    public void moveFolder(File src, File dest) throws IOException {
+        if (src == null || dest == null || !src.isDirectory()) {
+            return;
+        }
+        if (!dest.exists()) {
+            dest.getAbsoluteFile().getParentFile().mkdirs();
+            try {
+                Files.move(src.toPath(), dest.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return;
+            } catch (IOException ex) {
+                //The rename is not possible (i.e. across file systems), so the folder is copied instead
+            }
+        }
+        copyFolder(src, dest);
+        delete(src);
+    }
+
+    /**
+     * Moves the contents of a folder into the destination folder, after which
+     * the (then empty) source folder is removed. Files and folders are renamed
+     * where possible. If a folder with the same name already exists in the
+     * destination, the contents of both folders are merged. Existing files in
+     * the destination are not overwritten, which is equal to the behaviour of
+     * <code>copyFolder</code>.
+     *
+     * @param src the folder to move the contents from
+     * @param dest the folder to move the contents to, which may be the parent
+     * of <code>src</code>
+     * @throws IOException if the destination is not a folder or if the moving
+     * of the files failed
+     */
+    public void moveFolderContents(File src, File dest) throws IOException {
+        if (src == null || dest == null || !src.isDirectory()) {
+            return;
+        }
+        if (dest.exists() && !dest.isDirectory()) {
+            throw new IOException("The destination is not a folder: " + dest.getAbsolutePath());
+        }
+        dest.mkdirs();
+        for (File file : src.listFiles()) {
+            File fileDest = new File(dest, file.getName());
+            //The source folder itself might have the same name as one of its children, i.e. "sources/sources"
+            if (fileDest.equals(src)) {
+                File renamedSource = new File(src.getParentFile(), src.getName() + "-" + System.nanoTime());
+                Files.move(src.toPath(), renamedSource.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                moveFolderContents(renamedSource, dest);
+                return;
+            }
+            if (fileDest.exists()) {
+                if (file.isDirectory() && fileDest.isDirectory()) {
+                    moveFolderContents(file, fileDest);
+                }
+                continue;
+            }
+            try {
+                Files.move(file.toPath(), fileDest.toPath());
+            } catch (IOException ex) {
+                //Non-empty folders cannot be moved across file systems, in which case they are copied instead
+                if (file.isDirectory()) {
+                    moveFolder(file, fileDest);
+                    continue;
+                }
+                throw new IOException("Something went wrong when trying to move \"" + file.getAbsolutePath() + "\" to \"" + fileDest.getAbsolutePath() + "\"!");
+            }
+        }
+        delete(src);
+    }
+
+    /**
+     * Calculates the SHA-256 hash of the given file
+     *
+     * @param file the file to hash
+     * @return the hash as a lower case hexadecimal string
+     * @throws IOException if the file cannot be read
+     */
+    public String hash(File file) throws IOException {
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[65536];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+            return toHexString(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("The SHA-256 algorithm is not available on this platform!");
+        }
+    }
+
+    /**
+     * Calculates the SHA-256 hash of the given text, which is encoded as UTF-8
+     *
+     * @param text the text to hash
+     * @return the hash as a lower case hexadecimal string
+     * @throws IOException if the SHA-256 algorithm is not available
+     */
+    public String hash(String text) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return toHexString(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("The SHA-256 algorithm is not available on this platform!");
+        }
+    }
+
+    /**
+     * Lists the given file, or all files with the given extension in the given
+     * folder (and its subfolders)
+     *
+     * @param input a file, or the folder to search
+     * @param extension the extension of the files to list (i.e. ".apk"),
+     * which is matched regardless of the casing
+     * @return the given file, or the files in the folder sorted by their path
+     * @throws IOException if the input does not exist or cannot be read
+     */
+    public List<File> listFiles(File input, String extension) throws IOException {
+        if (input.isFile()) {
+            List<File> files = new ArrayList<>();
+            files.add(input);
+            return files;
+        } else if (!input.isDirectory()) {
+            throw new IOException("The file or folder (" + input.getAbsolutePath() + ") does not exist!");
+        }
+        try (Stream<Path> paths = Files.walk(input.toPath())) {
+            return paths.filter(path -> path.toString().toLowerCase().endsWith(extension.toLowerCase()))
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Reads the remaining content of the given stream into memory
+     *
+     * @param input the stream to read
+     * @return the content of the stream
+     * @throws IOException if the stream cannot be read
+     */
+    public byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[65536];
+        int bytesRead;
+        while ((bytesRead = input.read(buffer)) != -1) {
+            output.write(buffer, 0, bytesRead);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Converts the given bytes into a lower case hexadecimal string
+     *
+     * @param bytes the bytes to convert
+     * @return the hexadecimal representation of the bytes
+     */
+    private String toHexString(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An index of class fingerprints, which maps the fingerprint of each class in
+ * a corpus of known libraries to the name of that class and the JAR it
+ * resides in. The index is stored as a single file, which is memory mapped
+ * when it is used, meaning a lookup is a binary search without reading the
+ * complete index.
+ *
+ * The file starts with the magic value "APCFIDX1", followed by the amount of
+ * classes and the amount of JARs. Next are the entries, sorted by
+ * fingerprint, each of which consists of the fingerprint (8 bytes), the index
+ * of the JAR (4 bytes) and the offset of the class name (4 bytes). The class
+ * names and the paths of the JARs follow at the end of the file.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class FingerprintIndex {
+
+    /**
+     * The magic value at the start of an index file
+     */
+    private static final byte[] MAGIC = "APCFIDX1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The size of the header in bytes
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * The size of a single entry in bytes
+     */
+    private static final int ENTRY_SIZE = 16;
+
+    /**
+     * The memory mapped content of the index
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The amount of classes in the index
+     */
+    private final int classCount;
+
+    /**
+     * The paths of the JARs in the corpus, in the order of their index
+     */
+    private final List<String> jars;
+
+    /**
+     * Opens the given index file
+     *
+     * @param indexFile the index file
+     * @throws IOException if the file cannot be read or is not an index file
+     */
+    public FingerprintIndex(File indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException ex) {
+            throw new IOException("The fingerprint index (" + indexFile.getAbsolutePath() + ") cannot be read!");
+        }
+        byte[] magic = new byte[MAGIC.length];
+        if (buffer.capacity() < HEADER_SIZE) {
+            throw new IOException("The file " + indexFile.getAbsolutePath() + " is not a fingerprint index!");
+        }
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("The file " + indexFile.getAbsolutePath() + " is not a fingerprint index!");
+        }
+        classCount = buffer.getInt(8);
+        int jarCount = buffer.getInt(12);
+        //The paths of the JARs are stored after the last class name, the offset of which is stored directly in front of them
+        ByteBuffer data = buffer.duplicate();
+        data.position(buffer.capacity() - 4);
+        data.position(data.getInt());
+        jars = new ArrayList<>();
+        for (int i = 0; i < jarCount; i++) {
+            jars.add(readString(data));
+        }
+    }
+
+    /**
+     * Looks up the class with the given fingerprint
+     *
+     * @param fingerprint the fingerprint of the class
+     * @return the known class in the format "[path of the JAR]![internal name
+     * of the class]", or null if the fingerprint is unknown
+     */
+    public String lookup(long fingerprint) {
+        int low = 0;
+        int high = classCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int position = HEADER_SIZE + middle * ENTRY_SIZE;
+            long current = buffer.getLong(position);
+            if (current < fingerprint) {
+                low = middle + 1;
+            } else if (current > fingerprint) {
+                high = middle - 1;
+            } else {
+                ByteBuffer data = buffer.duplicate();
+                data.position(buffer.getInt(position + 12));
+                return jars.get(buffer.getInt(position + 8)) + "!" + readString(data);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the amount of classes in the index
+     *
+     * @return the amount of classes
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Writes an index file with the given classes. The file is written to a
+     * temporary file first, which then replaces the given file.
+     *
+     * @param classes the fingerprints of the classes, mapped to the index of
+     * their JAR and their internal name
+     * @param jars the paths of the JARs in the corpus
+     * @param indexFile the file to write the index to
+     * @throws IOException if the index cannot be written
+     */
+    public static void write(Map<Long, Map.Entry<Integer, String>> classes, List<String> jars, File indexFile) throws IOException {
+        //The entries are sorted by their fingerprint, so that they can be found with a binary search
+        TreeMap<Long, Map.Entry<Integer, String>> sorted = new TreeMap<>(classes);
+        File temporaryFile = new File(indexFile.getAbsolutePath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.write(MAGIC);
+            output.writeInt(sorted.size());
+            output.writeInt(jars.size());
+            int offset = HEADER_SIZE + sorted.size() * ENTRY_SIZE;
+            for (Map.Entry<Long, Map.Entry<Integer, String>> entry : sorted.entrySet()) {
+                output.writeLong(entry.getKey());
+                output.writeInt(entry.getValue().getKey());
+                output.writeInt(offset);
+                offset += 4 + entry.getValue().getValue().getBytes(StandardCharsets.UTF_8).length;
+            }
+            for (Map.Entry<Integer, String> entry : sorted.values()) {
+                writeString(output, entry.getValue());
+            }
+            for (String jar : jars) {
+                writeString(output, jar);
+            }
+            output.writeInt(offset);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw new IOException("The fingerprint index (" + indexFile.getAbsolutePath() + ") cannot be written!");
+        }
+        Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a string, which is stored as its length in bytes followed by its
+     * UTF-8 encoded content
+     *
+     * @param data the buffer to read from, positioned at the string
+     * @return the string
+     */
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[data.getInt()];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a string as its length in bytes followed by its UTF-8 encoded
+     * content
+     *
+     * @param output the stream to write to
+     * @param value the string to write
+     * @throws IOException if the string cannot be written
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import library.Constants;
+import library.Tools;
+import model.LibraryLease;
+
+/**
+ * Manages the generations of the library. An installation or update builds a
+ * complete generation of the tools next to the active one, after which the
+ * pointer to the active generation is replaced atomically. Running
+ * decompilations hold a lease on the generation they use, and generations
+ * that are neither active nor leased are removed.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class GenerationManager {
+
+    /**
+     * The name of the folder within a generation that contains the leases
+     */
+    private static final String LEASE_FOLDER_NAME = "leases";
+
+    /**
+     * The suffix of a generation that is being removed
+     */
+    private static final String REMOVAL_SUFFIX = ".removing";
+
+    /**
+     * The name under which the tools that were installed directly in the
+     * library folder are removed
+     */
+    private static final String FLAT_LIBRARY_NAME = "flat";
+
+    /**
+     * The file manager that is used within this class
+     */
+    private final FileManager fileManager;
+
+    /**
+     * Manages the generations of the library
+     */
+    public GenerationManager() {
+        fileManager = new FileManager();
+    }
+
+    /**
+     * Creates a new, empty generation. The returned lease ensures that the
+     * generation is not removed by another process while it is being built.
+     *
+     * @return the lease on the new generation
+     * @throws IOException if the generation cannot be created
+     */
+    public LibraryLease createGeneration() throws IOException {
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + "-" + UUID.randomUUID().toString().substring(0, 8);
+        File generationFolder = new File(Constants.GENERATIONS_FOLDER, name);
+        //The lease is acquired while the global lock is held, as the generation would be removed otherwise
+        try (FileChannel lockChannel = openGlobalLock()) {
+            //The lock is released when the channel is closed
+            lockChannel.lock();
+            if (!generationFolder.mkdirs()) {
+                throw new IOException("The library generation folder (" + generationFolder.getAbsolutePath() + ") cannot be created!");
+            }
+            return lease(generationFolder);
+        }
+    }
+
+    /**
+     * Acquires a lease on the active generation, which is used by this program
+     * from then on. If the library has no generations (i.e. it was installed
+     * before generations were used), the lease is held on the library folder
+     * itself, so that its tools are not removed once a generation is
+     * activated.
+     *
+     * @return the lease on the active generation
+     * @throws IOException if the active generation does not exist, or if the
+     * lease cannot be written
+     */
+    public LibraryLease acquireLease() throws IOException {
+        try (FileChannel lockChannel = openGlobalLock()) {
+            lockChannel.lock();
+            //The pointer is read while the global lock is held, as the generation cannot be removed in the meantime
+            String activeGeneration = readPointer();
+            File generationFolder = activeGeneration == null ? new File(Constants.LIBRARY_FOLDER) : new File(Constants.GENERATIONS_FOLDER, activeGeneration);
+            if (!generationFolder.isDirectory()) {
+                throw new IOException("The active library generation (" + generationFolder.getAbsolutePath() + ") does not exist, please reinstall the library!");
+            }
+            LibraryLease lease = lease(generationFolder);
+            Constants.setActiveGeneration(activeGeneration);
+            return lease;
+        }
+    }
+
+    /**
+     * Makes the given generation the active one, by atomically replacing the
+     * pointer file. Processes that start afterwards use the given generation.
+     * The pointer is replaced while the global lock is held, so that it cannot
+     * change while the garbage is collected.
+     *
+     * @param generationFolder the folder of the generation to activate
+     * @throws IOException if the pointer file cannot be written
+     */
+    public void activate(File generationFolder) throws IOException {
+        File pointer = new File(Constants.GENERATION_POINTER_FILE);
+        File temporaryPointer = new File(pointer.getAbsolutePath() + "." + UUID.randomUUID().toString() + ".tmp");
+        try (FileChannel lockChannel = openGlobalLock()) {
+            //The lock is released when the channel is closed
+            lockChannel.lock();
+            Files.write(temporaryPointer.toPath(), generationFolder.getName().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporaryPointer.toPath(), pointer.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temporaryPointer.toPath());
+            throw new IOException("The active library generation cannot be switched to " + generationFolder.getName() + "!");
+        }
+    }
+
+    /**
+     * Removes all generations that are not active and on which no lease is
+     * held. A generation is renamed while the global lock is held, after which
+     * it is removed from the disk. Once a generation is active, the tools that
+     * were installed directly in the library folder (before generations were
+     * used) are removed in the same way.
+     *
+     * @throws IOException if a generation cannot be removed
+     */
+    public void collectGarbage() throws IOException {
+        File generationsFolder = new File(Constants.GENERATIONS_FOLDER);
+        List<File> removableGenerations = new ArrayList<>();
+        try (FileChannel lockChannel = openGlobalLock()) {
+            lockChannel.lock();
+            //The pointer and the generations are read while the global lock is held, as another process might activate a generation before that
+            File[] generations = generationsFolder.listFiles();
+            if (generations == null) {
+                return;
+            }
+            String activeGeneration = readPointer();
+            for (File generation : generations) {
+                if (!generation.isDirectory() || generation.getName().equals(activeGeneration)) {
+                    continue;
+                }
+                if (generation.getName().endsWith(REMOVAL_SUFFIX)) {
+                    //A previous removal was interrupted
+                    removableGenerations.add(generation);
+                } else if (!isLeased(generation)) {
+                    File removal = new File(generationsFolder, generation.getName() + REMOVAL_SUFFIX);
+                    Files.move(generation.toPath(), removal.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    removableGenerations.add(removal);
+                }
+            }
+            File libraryFolder = new File(Constants.LIBRARY_FOLDER);
+            if (activeGeneration != null && !isLeased(libraryFolder)) {
+                File removal = new File(generationsFolder, FLAT_LIBRARY_NAME + "-" + UUID.randomUUID().toString().substring(0, 8) + REMOVAL_SUFFIX);
+                for (String fileName : getFlatLibraryFileNames()) {
+                    File file = new File(libraryFolder, fileName);
+                    if (file.exists()) {
+                        removal.mkdirs();
+                        Files.move(file.toPath(), new File(removal, fileName).toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    }
+                }
+                if (removal.isDirectory()) {
+                    removableGenerations.add(removal);
+                }
+            }
+        }
+        for (File generation : removableGenerations) {
+            System.out.println("[+]Removing the unused library generation " + generation.getName().replace(REMOVAL_SUFFIX, ""));
+            fileManager.delete(generation);
+        }
+    }
+
+    /**
+     * Gets the names of the files and folders that belong to a library that
+     * was installed directly in the library folder, which are the folders of
+     * the tools and the manifest
+     *
+     * @return the names of the files and folders
+     */
+    private List<String> getFlatLibraryFileNames() {
+        List<String> fileNames = new ArrayList<>(Tools.getNames(Tools.getTools()));
+        fileNames.add(Constants.LIBRARY_MANIFEST_FILE_NAME);
+        fileNames.add(Constants.LIBRARY_CHECKSUMS_FILE_NAME);
+        return fileNames;
+    }
+
+    /**
+     * Creates a locked lease file within the given generation
+     *
+     * @param generationFolder the folder of the generation
+     * @return the lease on the generation
+     * @throws IOException if the lease file cannot be created or locked
+     */
+    private LibraryLease lease(File generationFolder) throws IOException {
+        File leaseFolder = new File(generationFolder, LEASE_FOLDER_NAME);
+        leaseFolder.mkdirs();
+        File leaseFile = new File(leaseFolder, UUID.randomUUID().toString() + ".lease");
+        FileChannel channel = FileChannel.open(leaseFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        FileLock lock = channel.tryLock();
+        if (lock == null) {
+            channel.close();
+            throw new IOException("The lease on the library generation " + generationFolder.getName() + " cannot be acquired!");
+        }
+        return new LibraryLease(generationFolder, leaseFile, channel, lock);
+    }
+
+    /**
+     * Checks if a lease is held on the given generation. Lease files that are
+     * no longer locked belong to processes that have exited, and are removed.
+     *
+     * @param generationFolder the folder of the generation
+     * @return true if at least one lease is held, false if not
+     * @throws IOException if a lease file cannot be opened
+     */
+    private boolean isLeased(File generationFolder) throws IOException {
+        File[] leaseFiles = new File(generationFolder, LEASE_FOLDER_NAME).listFiles();
+        if (leaseFiles == null) {
+            return false;
+        }
+        boolean leased = false;
+        for (File leaseFile : leaseFiles) {
+            try (FileChannel channel = FileChannel.open(leaseFile.toPath(), StandardOpenOption.WRITE)) {
+                FileLock lock = channel.tryLock();
+                if (lock == null) {
+                    leased = true;
+                    continue;
+                }
+                lock.release();
+            } catch (OverlappingFileLockException ex) {
+                //The lease is held by this process
+                leased = true;
+                continue;
+            }
+            Files.deleteIfExists(leaseFile.toPath());
+        }
+        return leased;
+    }
+
+    /**
+     * Opens the file that is used as the global lock for the generations
+     *
+     * @return the channel of the lock file
+     * @throws IOException if the lock file cannot be opened
+     */
+    private FileChannel openGlobalLock() throws IOException {
+        new File(Constants.LIBRARY_FOLDER).mkdirs();
+        return FileChannel.open(new File(Constants.GENERATION_LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reads the name of the active generation from the pointer file. Contrary
+     * to <code>Constants.getActiveGeneration()</code>, the current content of
+     * the file is returned.
+     *
+     * @return the name of the active generation, or null if there is none
+     * @throws IOException if the pointer file cannot be read
+     */
+    private String readPointer() throws IOException {
+        File pointer = new File(Constants.GENERATION_POINTER_FILE);
+        if (!pointer.isFile()) {
+            return null;
+        }
+        String generation = new String(Files.readAllBytes(pointer.toPath()), StandardCharsets.UTF_8).trim();
+        return generation.isEmpty() ? null : generation;
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import library.Constants;
+import model.DecompilerOptions;
+
+/**
+ * Runs Dex2Jar and Fernflower within the process of AndroidProjectCreator,
+ * rather than starting a new Java runtime for each of them. Both tools are
+ * loaded from the library with their own class loader, and are used through
+ * their programming interface. Fernflower reads the classes directly from the
+ * converted JAR, and the decompiled Java files are written directly into the
+ * sources folder, rather than into an archive that has to be extracted
+ * afterwards.
+ *
+ * If the interface of an installed tool differs from the expected one, the
+ * tool cannot be used in process, in which case the caller falls back to the
+ * command line interface of the tool.
+ *
+ * The tools use the memory of this process, meaning the heap size that is
+ * given with "--memory" does not apply to them. The class loaders of the tools
+ * are closed once the pipeline is closed.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class InProcessPipeline implements Closeable {
+
+    /**
+     * The class loader of Dex2Jar, which is created when it is first used
+     */
+    private URLClassLoader dex2jarLoader;
+
+    /**
+     * The class loader of Fernflower, which is created when it is first used
+     */
+    private URLClassLoader fernflowerLoader;
+
+    /**
+     * Converts the given DEX file into a JAR with Dex2Jar. Exceptions within
+     * the conversion of single methods are ignored, equal to the "-n" flag of
+     * the command line interface.
+     *
+     * @param dexFile the DEX file to convert
+     * @param jar the JAR to write the classes to
+     * @return true if the DEX file is converted, false if the installed
+     * version of Dex2Jar cannot be used in process
+     * @throws IOException if the conversion fails
+     */
+    public boolean convert(File dexFile, File jar) throws IOException {
+        try {
+            if (dex2jarLoader == null) {
+                dex2jarLoader = createClassLoader(new File(Constants.getDex2JarLibraryFolder() + "/lib"));
+            }
+            Class<?> dex2jarClass = Class.forName("com.googlecode.d2j.dex.Dex2jar", true, dex2jarLoader);
+            Object dex2jar = dex2jarClass.getMethod("from", File.class).invoke(null, dexFile);
+            dex2jarClass.getMethod("topoLogicalSort").invoke(dex2jar);
+            //The JAR is replaced if it already exists, equal to the "-f" flag of the command line interface
+            Files.deleteIfExists(jar.toPath());
+            dex2jarClass.getMethod("to", Path.class).invoke(dex2jar, jar.toPath());
+            return true;
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException ex) {
+            System.out.println("[+]The installed version of Dex2Jar cannot be used in process (" + ex.getMessage() + "), its command line interface is used instead");
+            return false;
+        } catch (InvocationTargetException ex) {
+            throw new IOException("Dex2Jar failed to convert " + dexFile.getAbsolutePath() + ": " + ex.getCause());
+        }
+    }
+
+    /**
+     * Decompiles the given JAR with Fernflower, and writes the Java files
+     * directly into the given sources folder
+     *
+     * @param inputJar the JAR to decompile
+     * @param libraryJar the JAR with the classes that the decompiled classes
+     * refer to, but which are not decompiled themselves, or null if there is
+     * none
+     * @param sourcesFolder the folder to write the Java files to
+     * @param options the options of Fernflower
+     * @return true if the JAR is decompiled, false if the installed version
+     * of Fernflower cannot be used in process
+     * @throws IOException if the decompilation fails
+     */
+    public boolean decompileWithFernflower(File inputJar, File libraryJar, File sourcesFolder, DecompilerOptions options) throws IOException {
+        Map<String, Object> properties = new HashMap<>();
+        if (options.isDeobfuscate()) {
+            properties.put("ren", "1");
+        }
+        AtomicInteger classCount = new AtomicInteger();
+        try (ZipFile zipFile = new ZipFile(inputJar)) {
+            if (fernflowerLoader == null) {
+                fernflowerLoader = createClassLoader(new File(Constants.getFernflowerLibraryFolder()));
+            }
+            Class<?> fernflowerClass = Class.forName("org.jetbrains.java.decompiler.main.Fernflower", true, fernflowerLoader);
+            Class<?> providerClass = Class.forName("org.jetbrains.java.decompiler.main.extern.IBytecodeProvider", true, fernflowerLoader);
+            Class<?> saverClass = Class.forName("org.jetbrains.java.decompiler.main.extern.IResultSaver", true, fernflowerLoader);
+            Class<?> loggerClass = Class.forName("org.jetbrains.java.decompiler.main.extern.IFernflowerLogger", true, fernflowerLoader);
+            Object logger = Class.forName("org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger", true, fernflowerLoader).getConstructor(PrintStream.class).newInstance(System.out);
+            setLogLevel(loggerClass, logger, "WARN");
+            Object saver = Proxy.newProxyInstance(fernflowerLoader, new Class<?>[]{saverClass}, createSaver(sourcesFolder, classCount));
+            Object fernflower;
+            //Older versions of Fernflower require a provider of the class files, newer versions read the classes themselves
+            try {
+                Constructor<?> constructor = fernflowerClass.getConstructor(providerClass, saverClass, Map.class, loggerClass);
+                Object provider = Proxy.newProxyInstance(fernflowerLoader, new Class<?>[]{providerClass}, createProvider(inputJar, zipFile));
+                fernflower = constructor.newInstance(provider, saver, properties, logger);
+            } catch (NoSuchMethodException ex) {
+                fernflower = fernflowerClass.getConstructor(saverClass, Map.class, loggerClass).newInstance(saver, properties, logger);
+            }
+            System.out.println("[+]Decompling JAR with FERNFLOWER (in process)");
+            try {
+                fernflowerClass.getMethod("addSource", File.class).invoke(fernflower, inputJar);
+                //Equal to the "-e" flag of the command line interface
+                if (libraryJar != null) {
+                    fernflowerClass.getMethod("addLibrary", File.class).invoke(fernflower, libraryJar);
+                }
+                fernflowerClass.getMethod("decompileContext").invoke(fernflower);
+            } finally {
+                fernflowerClass.getMethod("clearContext").invoke(fernflower);
+            }
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InstantiationException ex) {
+            System.out.println("[+]The installed version of Fernflower cannot be used in process (" + ex.getMessage() + "), its command line interface is used instead");
+            return false;
+        } catch (InvocationTargetException ex) {
+            throw new IOException("Fernflower failed to decompile " + inputJar.getAbsolutePath() + ": " + ex.getCause());
+        }
+        System.out.println("[+]Decompilation finished, " + classCount.get() + " Java files were written");
+        return true;
+    }
+
+    /**
+     * Closes the class loaders of the tools, which closes the JARs that they
+     * have opened
+     *
+     * @throws IOException if a class loader cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (dex2jarLoader != null) {
+                dex2jarLoader.close();
+            }
+        } finally {
+            dex2jarLoader = null;
+            if (fernflowerLoader != null) {
+                fernflowerLoader.close();
+            }
+            fernflowerLoader = null;
+        }
+    }
+
+    /**
+     * Sets the level of the messages that the logger of Fernflower prints,
+     * equal to the "-log" flag of the command line interface. If the installed
+     * version does not support it, all messages are printed.
+     *
+     * @param loggerClass the interface of the logger
+     * @param logger the logger
+     * @param level the name of the level (i.e. "WARN")
+     */
+    private void setLogLevel(Class<?> loggerClass, Object logger, String level) {
+        try {
+            Class<?> severityClass = Class.forName(loggerClass.getName() + "$Severity", true, fernflowerLoader);
+            loggerClass.getMethod("setSeverity", severityClass).invoke(logger, severityClass.getField(level).get(null));
+        } catch (ReflectiveOperationException ex) {
+            //The messages are printed with the default level of the logger
+        }
+    }
+
+    /**
+     * Creates the handler of the result saver of Fernflower, which writes the
+     * decompiled classes directly into the sources folder. The archive
+     * structure that Fernflower recreates for a JAR is ignored, as are the
+     * files other than classes.
+     *
+     * @param sourcesFolder the folder to write the Java files to
+     * @param classCount the counter of the written Java files
+     * @return the handler of the result saver
+     */
+    private InvocationHandler createSaver(File sourcesFolder, AtomicInteger classCount) {
+        return (proxy, method, arguments) -> {
+            if (method.getDeclaringClass().equals(Object.class)) {
+                return handleObjectMethod(proxy, method, arguments);
+            }
+            String entryName;
+            String content;
+            switch (method.getName()) {
+                case "saveClassEntry":
+                    //saveClassEntry(path, archiveName, qualifiedName, entryName, content[, mapping])
+                    entryName = (String) arguments[3];
+                    content = (String) arguments[4];
+                    break;
+                case "saveClassFile":
+                    //saveClassFile(path, qualifiedName, entryName, content, mapping)
+                    entryName = (String) arguments[2];
+                    content = (String) arguments[3];
+                    break;
+                default:
+                    return null;
+            }
+            //Classes that cannot be decompiled have no content
+            if (entryName == null || content == null) {
+                return null;
+            }
+            File destination = new File(sourcesFolder, entryName);
+            destination.getParentFile().mkdirs();
+            Files.write(destination.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            classCount.incrementAndGet();
+            return null;
+        };
+    }
+
+    /**
+     * Creates the handler of the bytecode provider of Fernflower, which reads
+     * the classes from the already opened JAR
+     *
+     * @param inputJar the JAR that is decompiled
+     * @param zipFile the opened JAR
+     * @return the handler of the bytecode provider
+     */
+    private InvocationHandler createProvider(File inputJar, ZipFile zipFile) {
+        FileManager fileManager = new FileManager();
+        return (proxy, method, arguments) -> {
+            if (method.getDeclaringClass().equals(Object.class)) {
+                return handleObjectMethod(proxy, method, arguments);
+            }
+            //getBytecode(externalPath, internalPath)
+            String externalPath = (String) arguments[0];
+            String internalPath = (String) arguments[1];
+            if (internalPath == null) {
+                return Files.readAllBytes(new File(externalPath).toPath());
+            }
+            if (new File(externalPath).getAbsolutePath().equals(inputJar.getAbsolutePath())) {
+                ZipEntry entry = zipFile.getEntry(internalPath);
+                if (entry == null) {
+                    throw new IOException("The entry " + internalPath + " does not exist in " + externalPath);
+                }
+                try (InputStream input = zipFile.getInputStream(entry)) {
+                    return fileManager.readFully(input);
+                }
+            }
+            try (ZipFile otherZipFile = new ZipFile(externalPath);
+                    InputStream input = otherZipFile.getInputStream(otherZipFile.getEntry(internalPath))) {
+                return fileManager.readFully(input);
+            }
+        };
+    }
+
+    /**
+     * Handles the methods of the Object class for a proxy
+     *
+     * @param proxy the proxy
+     * @param method the invoked method
+     * @param arguments the arguments of the method
+     * @return the result of the method
+     */
+    private Object handleObjectMethod(Object proxy, Method method, Object[] arguments) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == arguments[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return proxy.getClass().getName();
+        }
+    }
+
+    /**
+     * Creates a class loader for all JARs in the given folder. The class
+     * loader does not see the classes of AndroidProjectCreator, so that
+     * libraries that both use cannot conflict.
+     *
+     * @param folder the folder with the JARs of the tool
+     * @return the class loader
+     * @throws ClassNotFoundException if the folder does not contain any JAR
+     */
+    private URLClassLoader createClassLoader(File folder) throws ClassNotFoundException {
+        File[] jars = folder.listFiles((directory, name) -> name.endsWith(".jar"));
+        if (jars == null || jars.length == 0) {
+            throw new ClassNotFoundException("no JAR was found in " + folder.getAbsolutePath());
+        }
+        List<URL> urls = new ArrayList<>();
+        try {
+            for (File jar : jars) {
+                urls.add(jar.toURI().toURL());
+            }
+        } catch (MalformedURLException ex) {
+            throw new ClassNotFoundException("the JARs in " + folder.getAbsolutePath() + " cannot be loaded");
+        }
+        return new URLClassLoader(urls.toArray(new URL[urls.size()]), ClassLoader.getSystemClassLoader().getParent());
+    }
+}
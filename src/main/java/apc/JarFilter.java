@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import model.PackageFilter;
+
+/**
+ * Removes the classes that should not be decompiled from a JAR, so that the
+ * decompiler only processes the remaining classes. Classes are removed if
+ * their package is excluded, or if their fingerprint matches a class of a
+ * known library. A top level class and its nested classes are decided on
+ * together, as the decompiler writes them into a single Java file.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class JarFilter {
+
+    /**
+     * The filter that decides which classes remain in the JAR
+     */
+    private final PackageFilter packageFilter;
+
+    /**
+     * The index of the classes of known libraries, or null if classes are not
+     * matched against known libraries
+     */
+    private final FingerprintIndex fingerprintIndex;
+
+    /**
+     * The filter that selects the classes of the application itself, which
+     * are never matched against known libraries, or null if all classes are
+     * matched
+     */
+    private final PackageFilter applicationFilter;
+
+    /**
+     * The classes that matched a class of a known library during the last
+     * filtering, with the internal name of the class in the JAR as key, and
+     * the known class (in the format of the fingerprint index) as value
+     */
+    private final Map<String, String> knownClasses;
+
+    /**
+     * The amount of classes that remained in the JAR during the last filtering
+     */
+    private int keptCount;
+
+    /**
+     * The amount of classes that were removed from the JAR during the last
+     * filtering
+     */
+    private int removedCount;
+
+    /**
+     * Creates a filter for JARs, based on the given package filter
+     *
+     * @param packageFilter the filter that decides which classes remain in
+     * the JAR
+     */
+    public JarFilter(PackageFilter packageFilter) {
+        this(packageFilter, null, null);
+    }
+
+    /**
+     * Creates a filter for JARs, based on the given package filter and the
+     * fingerprints of known classes. As a fingerprint ignores the names and
+     * the code of a class, a small class of the application (i.e. a
+     * Parcelable) might match a known class, which is why the classes of the
+     * application itself are not matched.
+     *
+     * @param packageFilter the filter that decides which classes remain in
+     * the JAR
+     * @param fingerprintIndex the index of the classes of known libraries, or
+     * null if classes should not be matched against known libraries
+     * @param applicationFilter the filter that selects the classes of the
+     * application itself (i.e. its package and components), or null if all
+     * classes are matched against known libraries
+     */
+    public JarFilter(PackageFilter packageFilter, FingerprintIndex fingerprintIndex, PackageFilter applicationFilter) {
+        this.packageFilter = packageFilter;
+        this.fingerprintIndex = fingerprintIndex;
+        this.applicationFilter = applicationFilter;
+        this.knownClasses = new TreeMap<>();
+    }
+
+    /**
+     * Removes the classes that are not accepted by the package filter, or that
+     * match a known class, from the given JAR. A top level class is only
+     * removed as a known class if all of its nested classes match a known
+     * class too, in which case they are removed together. Files other than
+     * classes remain in the JAR. The filtered JAR is written next to the
+     * original one, which it then replaces. The removed classes are written
+     * to the library JAR, so that decompilers that support it can still
+     * resolve the types that the remaining classes refer to (i.e. the
+     * superclass of an activity).
+     *
+     * @param jar the JAR to filter
+     * @param libraryJar the JAR to write the removed classes to, which is only
+     * created if classes are removed
+     * @throws IOException if the JAR cannot be read or written
+     */
+    public void filter(File jar, File libraryJar) throws IOException {
+        keptCount = 0;
+        removedCount = 0;
+        knownClasses.clear();
+        FileManager fileManager = new FileManager();
+        File filteredJar = new File(jar.getAbsolutePath() + ".filtered");
+        Map<String, Map<String, String>> knownGroups = new HashMap<>();
+        if (fingerprintIndex != null) {
+            try {
+                knownGroups = findKnownGroups(jar);
+            } catch (IOException ex) {
+                throw new IOException("The converted JAR (" + jar.getAbsolutePath() + ") cannot be filtered: " + ex.getMessage());
+            }
+        }
+        Files.deleteIfExists(libraryJar.toPath());
+        //The library JAR is only created once a class is removed, as a JAR without entries cannot be written
+        ZipOutputStream libraryOutput = null;
+        try (ZipFile input = new ZipFile(jar);
+                ZipOutputStream output = new ZipOutputStream(new FileOutputStream(filteredJar))) {
+            //The JARs are only read by the decompiler, so the fastest compression suffices
+            output.setLevel(Deflater.BEST_SPEED);
+            Enumeration<? extends ZipEntry> entries = input.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                byte[] content;
+                try (InputStream entryStream = input.getInputStream(entry)) {
+                    content = fileManager.readFully(entryStream);
+                }
+                if (name.endsWith(".class")) {
+                    String className = name.substring(0, name.length() - ".class".length());
+                    String topLevelClass = getTopLevelClass(className);
+                    Map<String, String> knownGroup = knownGroups.get(topLevelClass);
+                    if (!packageFilter.accepts(topLevelClass.replace('/', '.')) || knownGroup != null) {
+                        if (knownGroup != null) {
+                            knownClasses.put(className, knownGroup.get(className));
+                        }
+                        if (libraryOutput == null) {
+                            libraryOutput = new ZipOutputStream(new FileOutputStream(libraryJar));
+                            libraryOutput.setLevel(Deflater.BEST_SPEED);
+                        }
+                        libraryOutput.putNextEntry(new ZipEntry(name));
+                        libraryOutput.write(content);
+                        libraryOutput.closeEntry();
+                        removedCount++;
+                        continue;
+                    }
+                    keptCount++;
+                }
+                output.putNextEntry(new ZipEntry(name));
+                output.write(content);
+                output.closeEntry();
+            }
+            if (libraryOutput != null) {
+                libraryOutput.close();
+            }
+        } catch (IOException ex) {
+            if (libraryOutput != null) {
+                try {
+                    libraryOutput.close();
+                } catch (IOException closeException) {
+                    //The library JAR is removed regardless
+                }
+            }
+            Files.deleteIfExists(filteredJar.toPath());
+            Files.deleteIfExists(libraryJar.toPath());
+            throw new IOException("The converted JAR (" + jar.getAbsolutePath() + ") cannot be filtered: " + ex.getMessage());
+        }
+        Files.move(filteredJar.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Copies the classes that are accepted by the package filter from the
+     * given JAR into a separate JAR, so that these can be decompiled before
+     * the complete JAR. Nested classes are copied together with their top
+     * level class. The given JAR is not changed, as the decompilers require
+     * the other classes to decompile the accepted ones correctly.
+     *
+     * @param jar the JAR to copy the accepted classes from
+     * @param priorityJar the JAR to write the accepted classes to
+     * @return the amount of classes that were copied
+     * @throws IOException if the JARs cannot be read or written
+     */
+    public int copyAccepted(File jar, File priorityJar) throws IOException {
+        int copiedCount = 0;
+        FileManager fileManager = new FileManager();
+        try (ZipFile input = new ZipFile(jar);
+                ZipOutputStream output = new ZipOutputStream(new FileOutputStream(priorityJar))) {
+            //The JAR is only read by the decompiler, so the fastest compression suffices
+            output.setLevel(Deflater.BEST_SPEED);
+            Enumeration<? extends ZipEntry> entries = input.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class") || !packageFilter.accepts(getTopLevelClass(name.substring(0, name.length() - ".class".length())).replace('/', '.'))) {
+                    continue;
+                }
+                try (InputStream entryStream = input.getInputStream(entry)) {
+                    output.putNextEntry(new ZipEntry(name));
+                    output.write(fileManager.readFully(entryStream));
+                    output.closeEntry();
+                }
+                copiedCount++;
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(priorityJar.toPath());
+            throw new IOException("The classes of the application cannot be copied from the converted JAR (" + jar.getAbsolutePath() + "): " + ex.getMessage());
+        }
+        return copiedCount;
+    }
+
+    /**
+     * Matches the classes in the given JAR that are accepted by the package
+     * filter against the fingerprint index, grouped by their top level class.
+     * Only the groups of which every class matches a known class are
+     * returned. The classes of the application itself are not matched.
+     *
+     * @param jar the JAR to read
+     * @return the internal names of the top level classes of the known groups,
+     * mapped to the internal names of the classes in the group and the known
+     * classes they match
+     * @throws IOException if the JAR cannot be read
+     */
+    private Map<String, Map<String, String>> findKnownGroups(File jar) throws IOException {
+        ClassFingerprinter fingerprinter = new ClassFingerprinter();
+        FileManager fileManager = new FileManager();
+        Map<String, Map<String, String>> knownGroups = new HashMap<>();
+        Set<String> unknownGroups = new HashSet<>();
+        try (ZipFile input = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = input.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class")) {
+                    continue;
+                }
+                String className = name.substring(0, name.length() - ".class".length());
+                String topLevelClass = getTopLevelClass(className);
+                if (unknownGroups.contains(topLevelClass) || !packageFilter.accepts(topLevelClass.replace('/', '.'))) {
+                    continue;
+                }
+                if (applicationFilter != null && !applicationFilter.isEmpty() && applicationFilter.accepts(topLevelClass.replace('/', '.'))) {
+                    continue;
+                }
+                byte[] content;
+                try (InputStream entryStream = input.getInputStream(entry)) {
+                    content = fileManager.readFully(entryStream);
+                }
+                String knownClass = findKnownClass(fingerprinter, content);
+                if (knownClass == null) {
+                    //A single unknown class keeps the complete group
+                    unknownGroups.add(topLevelClass);
+                    knownGroups.remove(topLevelClass);
+                } else {
+                    knownGroups.computeIfAbsent(topLevelClass, key -> new HashMap<>()).put(className, knownClass);
+                }
+            }
+        }
+        return knownGroups;
+    }
+
+    /**
+     * Gets the top level class of the given class, which is the part of its
+     * name before the first dollar sign. A dollar sign at the start of the
+     * simple name (as used by some obfuscators) is part of the name.
+     *
+     * @param className the internal name of the class (i.e.
+     * "com/example/MainActivity$1")
+     * @return the internal name of the top level class (i.e.
+     * "com/example/MainActivity")
+     */
+    private String getTopLevelClass(String className) {
+        int start = className.lastIndexOf('/') + 1;
+        int separator = className.indexOf('$', start + 1);
+        return separator == -1 ? className : className.substring(0, separator);
+    }
+
+    /**
+     * Looks up the given class in the fingerprint index
+     *
+     * @param fingerprinter the fingerprinter to use
+     * @param classBytes the content of the class
+     * @return the known class (in the format of the fingerprint index), or
+     * null if no index is used or the class is unknown
+     */
+    private String findKnownClass(ClassFingerprinter fingerprinter, byte[] classBytes) {
+        if (fingerprintIndex == null) {
+            return null;
+        }
+        try {
+            long fingerprint = fingerprinter.fingerprint(classBytes);
+            return fingerprint == 0 ? null : fingerprintIndex.lookup(fingerprint);
+        } catch (IOException ex) {
+            //Classes that cannot be fingerprinted are decompiled
+            return null;
+        }
+    }
+
+    /**
+     * Gets the classes that matched a class of a known library during the last
+     * filtering
+     *
+     * @return the internal names of the matched classes, mapped to the known
+     * classes in the format "[path of the JAR]![internal name of the class]"
+     */
+    public Map<String, String> getKnownClasses() {
+        return knownClasses;
+    }
+
+    /**
+     * Gets the amount of classes that remained in the JAR during the last
+     * filtering
+     *
+     * @return the amount of remaining classes
+     */
+    public int getKeptCount() {
+        return keptCount;
+    }
+
+    /**
+     * Gets the amount of classes that were removed from the JAR during the
+     * last filtering
+     *
+     * @return the amount of removed classes
+     */
+    public int getRemovedCount() {
+        return removedCount;
+    }
+}
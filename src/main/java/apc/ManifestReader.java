@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads the package name and the main components (the application,
+ * activities, services, receivers and providers) from an AndroidManifest.xml
+ * file that has been decoded by APKTool
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class ManifestReader {
+
+    /**
+     * The tags of the components in the manifest, of which the classes are
+     * read
+     */
+    private static final String[] COMPONENT_TAGS = {"application", "activity", "activity-alias", "service", "receiver", "provider"};
+
+    /**
+     * The package name of the application
+     */
+    private final String packageName;
+
+    /**
+     * The fully qualified class names of the components, in the order in
+     * which they are declared
+     */
+    private final List<String> components;
+
+    /**
+     * Reads the given manifest file
+     *
+     * @param manifest the decoded AndroidManifest.xml file
+     * @throws IOException if the manifest cannot be read or parsed
+     */
+    public ManifestReader(File manifest) throws IOException {
+        Document document;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            //The android prefix of the attributes is kept as part of their name, which avoids the need for namespace handling
+            factory.setNamespaceAware(false);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            document = factory.newDocumentBuilder().parse(manifest);
+        } catch (ParserConfigurationException | SAXException | IOException ex) {
+            throw new IOException("The AndroidManifest.xml (" + manifest.getAbsolutePath() + ") cannot be read: " + ex.getMessage());
+        }
+        packageName = document.getDocumentElement().getAttribute("package");
+        Set<String> names = new LinkedHashSet<>();
+        for (String tag : COMPONENT_TAGS) {
+            NodeList elements = document.getElementsByTagName(tag);
+            for (int i = 0; i < elements.getLength(); i++) {
+                String name = ((Element) elements.item(i)).getAttribute("android:name");
+                if (!name.isEmpty()) {
+                    names.add(resolve(name));
+                }
+            }
+        }
+        components = new ArrayList<>(names);
+    }
+
+    /**
+     * Gets the package name of the application
+     *
+     * @return the package name, or an empty string if the manifest does not
+     * contain it
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Gets the fully qualified class names of the main components
+     *
+     * @return the class names of the components
+     */
+    public List<String> getComponents() {
+        return components;
+    }
+
+    /**
+     * Gets the packages that contain the code of the application itself,
+     * which are the package of the application and the packages of its
+     * components that reside within it. Components in other packages are
+     * often part of a library (i.e. a service of an analytics SDK), and are
+     * therefore not included.
+     *
+     * @return the packages, without duplicates, or an empty list if the
+     * manifest does not contain the package of the application
+     */
+    public List<String> getApplicationPackages() {
+        Set<String> packages = new LinkedHashSet<>();
+        if (packageName.isEmpty()) {
+            return new ArrayList<>();
+        }
+        packages.add(packageName);
+        for (String component : components) {
+            int index = component.lastIndexOf('.');
+            if (index > 0 && component.startsWith(packageName + ".")) {
+                packages.add(component.substring(0, index));
+            }
+        }
+        return new ArrayList<>(packages);
+    }
+
+    /**
+     * Resolves the class name of a component, which may be relative to the
+     * package of the application (i.e. ".MainActivity" or "MainActivity")
+     *
+     * @param name the name of the component as it is written in the manifest
+     * @return the fully qualified class name
+     */
+    private String resolve(String name) {
+        if (name.startsWith(".")) {
+            return packageName + name;
+        } else if (!name.contains(".")) {
+            return packageName + "." + name;
+        }
+        return name;
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Writes machine readable progress events as JSON lines (one JSON object per
+ * line) to the standard output, a file or a TCP socket. Each event contains
+ * the type of the event, the stage it belongs to, an optional target (such as
+ * the name of a tool) and the time in milliseconds since the epoch.
+ *
+ * The following events are written:
+ *
+ * "stage-start" when a stage starts
+ *
+ * "stage-end" when a stage ends, together with its duration and (if known)
+ * the amount of files and bytes it produced, and the throughput
+ *
+ * "stage-failed" instead of "stage-end" when the process of a stage (such as
+ * the build of a tool) fails, together with its duration and exit code
+ *
+ * "progress" during a stage, together with the completed and total amount of
+ * work, the rate per second and the estimated remaining time
+ *
+ * "error" when the job fails
+ *
+ * The stream is disabled by default, in which case all methods return
+ * immediately. If the events are written to the standard output, all other
+ * output (including the output of the tools) is written to the standard error
+ * instead, so that the standard output only contains JSON lines.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class ProgressReporter {
+
+    /**
+     * The writer of the events, or null if the stream is disabled
+     */
+    private static volatile PrintWriter writer;
+
+    /**
+     * The socket to which the events are written, or null if the events are
+     * not written to a socket
+     */
+    private static Socket socket;
+
+    /**
+     * The standard output to which the events are written, which is restored
+     * (and not closed) when the stream is closed, or null if the events are not
+     * written to the standard output
+     */
+    private static PrintStream standardOutput;
+
+    /**
+     * The time (in milliseconds) at which each running stage has started, with
+     * the stage and target as key
+     */
+    private static final Map<String, Long> START_TIMES = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the event stream to the given target, which is either "stdout",
+     * "file:[path]" or "tcp:[host]:[port]"
+     *
+     * @param target the target of the event stream
+     * @throws IOException if the target is invalid or cannot be opened
+     */
+    public static synchronized void open(String target) throws IOException {
+        OutputStream output;
+        if (target.equalsIgnoreCase("stdout")) {
+            //The human readable output is redirected, as it would otherwise be mixed with the events
+            standardOutput = System.out;
+            output = standardOutput;
+            System.setOut(System.err);
+        } else if (target.startsWith("file:")) {
+            File file = new File(target.substring("file:".length()));
+            if (file.getAbsoluteFile().getParentFile() != null) {
+                file.getAbsoluteFile().getParentFile().mkdirs();
+            }
+            output = new FileOutputStream(file, true);
+        } else if (target.startsWith("tcp:") && target.lastIndexOf(':') > "tcp:".length()) {
+            int separator = target.lastIndexOf(':');
+            try {
+                socket = new Socket(target.substring("tcp:".length(), separator), Integer.parseInt(target.substring(separator + 1)));
+            } catch (NumberFormatException ex) {
+                throw new IOException("The port of the progress stream (" + target + ") is not a number!");
+            } catch (IOException ex) {
+                throw new IOException("The progress stream cannot connect to " + target.substring("tcp:".length()) + "!");
+            }
+            output = socket.getOutputStream();
+        } else {
+            throw new IOException("The progress stream should be \"stdout\", \"file:[path]\" or \"tcp:[host]:[port]\", but is \"" + target + "\"!");
+        }
+        writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), true);
+    }
+
+    /**
+     * Closes the event stream, if it is open
+     */
+    public static synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        writer.flush();
+        //The standard output is used by the rest of APC again, and is therefore not closed
+        if (standardOutput != null) {
+            System.setOut(standardOutput);
+            standardOutput = null;
+        } else {
+            writer.close();
+        }
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                //The events have been written, so the error is irrelevant
+            }
+            socket = null;
+        }
+        writer = null;
+        START_TIMES.clear();
+    }
+
+    /**
+     * Checks if the event stream is enabled. Callers can use this to skip the
+     * collection of data that is only required for the events.
+     *
+     * @return true if the event stream is open, false if not
+     */
+    public static boolean isEnabled() {
+        return writer != null;
+    }
+
+    /**
+     * Reports the start of the given stage
+     *
+     * @param stage the name of the stage
+     */
+    public static void startStage(String stage) {
+        startStage(stage, null);
+    }
+
+    /**
+     * Reports the start of the given stage for the given target
+     *
+     * @param stage the name of the stage
+     * @param target the target of the stage (i.e. the name of a tool), or
+     * null if there is none
+     */
+    public static void startStage(String stage, String target) {
+        if (writer == null) {
+            return;
+        }
+        START_TIMES.put(getKey(stage, target), System.currentTimeMillis());
+        write(createEvent("stage-start", stage, target));
+    }
+
+    /**
+     * Reports the end of the given stage
+     *
+     * @param stage the name of the stage
+     * @param output the file or folder that the stage produced, of which the
+     * amount of files and bytes is reported, or null if there is none
+     */
+    public static void endStage(String stage, File output) {
+        endStage(stage, null, output);
+    }
+
+    /**
+     * Reports the end of the given stage for the given target
+     *
+     * @param stage the name of the stage
+     * @param target the target of the stage, or null if there is none
+     * @param output the file or folder that the stage produced, of which the
+     * amount of files and bytes is reported, or null if there is none
+     */
+    public static void endStage(String stage, String target, File output) {
+        if (writer == null) {
+            return;
+        }
+        Long startTime = START_TIMES.remove(getKey(stage, target));
+        long duration = startTime == null ? 0 : System.currentTimeMillis() - startTime;
+        StringBuilder event = createEvent("stage-end", stage, target);
+        event.append(",\"durationMs\":").append(duration);
+        if (output != null && output.exists()) {
+            long[] size = measure(output);
+            event.append(",\"files\":").append(size[0]);
+            event.append(",\"bytes\":").append(size[1]);
+            if (duration > 0) {
+                event.append(",\"filesPerSecond\":").append(size[0] * 1000 / duration);
+                event.append(",\"bytesPerSecond\":").append(size[1] * 1000 / duration);
+            }
+        }
+        write(event);
+    }
+
+    /**
+     * Reports that the given stage for the given target has failed, instead
+     * of its end
+     *
+     * @param stage the name of the stage
+     * @param target the target of the stage, or null if there is none
+     * @param exitCode the exit code of the process that ran the stage
+     */
+    public static void failStage(String stage, String target, int exitCode) {
+        if (writer == null) {
+            return;
+        }
+        Long startTime = START_TIMES.remove(getKey(stage, target));
+        long duration = startTime == null ? 0 : System.currentTimeMillis() - startTime;
+        StringBuilder event = createEvent("stage-failed", stage, target);
+        event.append(",\"durationMs\":").append(duration);
+        event.append(",\"exitCode\":").append(exitCode);
+        write(event);
+    }
+
+    /**
+     * Reports the progress within a running stage. The rate and the estimated
+     * remaining time are based on the time since the start of the stage.
+     *
+     * @param stage the name of the stage
+     * @param target the target of the stage, or null if there is none
+     * @param unit the unit of the work (i.e. "classes" or "objects")
+     * @param completed the amount of work that has been completed
+     * @param total the total amount of work, or a negative value if it is
+     * unknown
+     */
+    public static void reportProgress(String stage, String target, String unit, long completed, long total) {
+        if (writer == null) {
+            return;
+        }
+        StringBuilder event = createEvent("progress", stage, target);
+        event.append(",\"unit\":").append(quote(unit));
+        event.append(",\"completed\":").append(completed);
+        if (total >= 0) {
+            event.append(",\"total\":").append(total);
+        }
+        Long startTime = START_TIMES.get(getKey(stage, target));
+        long elapsed = startTime == null ? 0 : System.currentTimeMillis() - startTime;
+        if (elapsed > 0) {
+            double rate = completed * 1000.0 / elapsed;
+            event.append(",\"perSecond\":").append(Math.round(rate * 100) / 100.0);
+            if (total >= completed && rate > 0) {
+                event.append(",\"etaSeconds\":").append(Math.round((total - completed) / rate));
+            }
+        }
+        write(event);
+    }
+
+    /**
+     * Reports that the job has failed
+     *
+     * @param message the error message
+     */
+    public static void reportError(String message) {
+        if (writer == null) {
+            return;
+        }
+        StringBuilder event = createEvent("error", null, null);
+        event.append(",\"message\":").append(quote(message));
+        write(event);
+    }
+
+    /**
+     * Creates the common part of an event, which is not closed yet
+     *
+     * @param type the type of the event
+     * @param stage the name of the stage, or null if there is none
+     * @param target the target of the stage, or null if there is none
+     * @return the unclosed event
+     */
+    private static StringBuilder createEvent(String type, String stage, String target) {
+        StringBuilder event = new StringBuilder();
+        event.append("{\"event\":").append(quote(type));
+        event.append(",\"time\":").append(System.currentTimeMillis());
+        if (stage != null) {
+            event.append(",\"stage\":").append(quote(stage));
+        }
+        if (target != null) {
+            event.append(",\"target\":").append(quote(target));
+        }
+        return event;
+    }
+
+    /**
+     * Closes the given event and writes it as a single line. Events from
+     * different threads are never interleaved.
+     *
+     * @param event the unclosed event
+     */
+    private static synchronized void write(StringBuilder event) {
+        if (writer != null) {
+            writer.println(event.append('}').toString());
+        }
+    }
+
+    /**
+     * Gets the key of a stage and target, which is used to store its start
+     * time
+     *
+     * @param stage the name of the stage
+     * @param target the target of the stage, or null if there is none
+     * @return the key
+     */
+    private static String getKey(String stage, String target) {
+        return target == null ? stage : stage + "/" + target;
+    }
+
+    /**
+     * Counts the files and bytes within the given file or folder
+     *
+     * @param output the file or folder to measure
+     * @return an array with the amount of files at index 0 and the amount of
+     * bytes at index 1
+     */
+    private static long[] measure(File output) {
+        long[] size = new long[2];
+        try (Stream<Path> paths = Files.walk(output.toPath())) {
+            paths.filter(Files::isRegularFile).forEach(path -> {
+                size[0]++;
+                size[1] += path.toFile().length();
+            });
+        } catch (IOException | RuntimeException ex) {
+            //Files that are removed while walking are not counted
+        }
+        return size;
+    }
+
+    /**
+     * Quotes the given value as a JSON string, which is also used by the
+     * other actions that write JSON
+     *
+     * @param value the value to quote
+     * @return the quoted and escaped value, or "null" if the value is null
+     */
+    public static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char character : value.toCharArray()) {
+            switch (character) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (character < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) character));
+                    } else {
+                        quoted.append(character);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -19,9 +19,20 @@ package apc;
 import enumeration.DecompilerType;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import library.Constants;
+import library.ProjectInfos;
+import library.Tools;
+import model.LibraryManifest;
 import model.Repository;
 import model.Tool;
 import net.lingala.zip4j.exception.ZipException;
@@ -38,6 +49,11 @@ public class RepositoryManager {
      */
     private FileManager fileManager;
 
+    /**
+     * The cache of the builds of the tools, or null if no cache is used
+     */
+    private ArtifactCache artifactCache;
+
     /**
      * This class handles everything regarding repositories, such as cloning and
      * updating
@@ -46,6 +62,16 @@ public class RepositoryManager {
         fileManager = new FileManager();
     }
 
+    /**
+     * Sets the cache which is consulted before a tool is built, and which is
+     * filled once a tool has been extracted into the library
+     *
+     * @param artifactCache the cache to use, or null to not use a cache
+     */
+    public void setArtifactCache(ArtifactCache artifactCache) {
+        this.artifactCache = artifactCache;
+    }
+
     /**
      * Removes the repository directory (as specified by the constant
      * <code>Constants.REPOSITORY_FOLDER</code>)
@@ -60,17 +86,51 @@ public class RepositoryManager {
     }
 
     /**
-     * Clones all repositories that are provided
+     * Clones all repositories that are provided. The repositories are cloned
+     * at the same time, using at most <code>Constants.MAX_PARALLEL_CLONES</code>
+     * threads. If one or more repositories fail to clone, the others are
+     * cloned regardless, after which all failures are reported at once.
      *
      * @param repositoryList the repositories to be cloned
+     * @param depth the amount of commits to clone, or 0 to clone the complete
+     * history
      *
-     * @throws IOException if the cloning of a repository fails
+     * @throws IOException if the cloning of one or more repositories fails
      */
-    public void cloneRepositories(List<Repository> repositoryList) throws IOException {
+    public void cloneRepositories(List<Repository> repositoryList, int depth) throws IOException {
+        int threadCount = Math.max(1, Math.min(Constants.MAX_PARALLEL_CLONES, repositoryList.size()));
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        Map<Repository, Future<?>> clones = new LinkedHashMap<>();
         for (Repository repository : repositoryList) {
-            System.out.println("[+]Started cloning " + repository.getName());
-            repository.cloneRepository();
-            System.out.println("[+]Finished cloning " + repository.getName());
+            clones.put(repository, executorService.submit(() -> {
+                System.out.println("[+]Started cloning " + repository.getName());
+                ProgressReporter.startStage("clone", repository.getName());
+                repository.cloneRepository(depth);
+                ProgressReporter.endStage("clone", repository.getName(), repository.getDirectory());
+                System.out.println("[+]Finished cloning " + repository.getName());
+                return null;
+            }));
+        }
+        executorService.shutdown();
+        //Wait for all clones to finish, and aggregate the errors
+        List<String> errors = new ArrayList<>();
+        for (Map.Entry<Repository, Future<?>> clone : clones.entrySet()) {
+            try {
+                clone.getValue().get();
+            } catch (ExecutionException ex) {
+                errors.add(clone.getKey().getName() + ": " + ex.getCause().getMessage());
+            } catch (InterruptedException ex) {
+                executorService.shutdownNow();
+                throw new IOException("The cloning of the repositories was interrupted!");
+            }
+        }
+        if (errors.size() > 0) {
+            StringBuilder message = new StringBuilder();
+            message.append("\tThe following repositories failed to clone:\n");
+            for (String error : errors) {
+                message.append("\t\t" + error + "\n");
+            }
+            throw new IOException(message.toString());
         }
     }
 
@@ -78,112 +138,349 @@ public class RepositoryManager {
      * Updates all repositories that are given using.
      *
      * @param repositoryList the repositories to be updated
+     * @param depth the amount of commits to fetch for shallow clones, or 0 to
+     * fetch the complete history
      * @throws IOException if an IO operation returns an error
      */
-    public void updateRepositories(List<Repository> repositoryList) throws IOException {
+    public void updateRepositories(List<Repository> repositoryList, int depth) throws IOException {
         for (Repository repository : repositoryList) {
             System.out.println("[+]Started updating " + repository.getName());
-            repository.updateRepository();
+            ProgressReporter.startStage("update", repository.getName());
+            repository.updateRepository(depth);
+            ProgressReporter.endStage("update", repository.getName(), null);
             System.out.println("[+]Succesfully updated " + repository.getName());
         }
     }
 
     /**
-     * Builds each project that is provided
+     * Determines which of the given tools need to be updated, by comparing the
+     * commit from which each tool was built with the latest commit of its
+     * remote repository. Tools of which the installed commit is unknown are
+     * always updated, as are tools of which the remote repository cannot be
+     * reached.
+     *
+     * @param tools the tools to check
+     * @param manifest the manifest of the library
+     * @param force true if all tools should be updated regardless
+     * @return the tools that need to be updated
+     */
+    public List<Tool> getChangedTools(List<Tool> tools, LibraryManifest manifest, boolean force) {
+        List<Tool> changedTools = new ArrayList<>();
+        for (Tool tool : tools) {
+            Repository repository = tool.getRepository();
+            String installedCommit = manifest.getCommit(repository.getName());
+            if (force || installedCommit == null) {
+                changedTools.add(tool);
+                continue;
+            }
+            try {
+                String remoteCommit = repository.getRemoteCommit();
+                if (!remoteCommit.equals(installedCommit)) {
+                    System.out.println("[+]" + repository.getName() + " has changed (" + installedCommit.substring(0, 8) + " -> " + remoteCommit.substring(0, 8) + ")");
+                    changedTools.add(tool);
+                }
+            } catch (IOException ex) {
+                System.out.println("[+]" + ex.getMessage() + " It will be updated regardless.");
+                changedTools.add(tool);
+            }
+        }
+        return changedTools;
+    }
+
+    /**
+     * Records the commit and version of the repository of each of the given
+     * tools in the manifest of the library, together with the entry point of
+     * the tool and the size and hash of each of its files in the library. The
+     * manifest is saved afterwards.
+     *
+     * @param tools the tools that have been installed
+     * @param libraryRoot the folder in which the library folders of the tools
+     * reside, such as a generation of the library
+     * @throws IOException if a repository cannot be opened, if a file cannot
+     * be hashed, or if the manifest cannot be saved
+     */
+    public void writeManifest(List<Tool> tools, File libraryRoot) throws IOException {
+        LibraryManifest manifest = LibraryManifest.load(new File(libraryRoot, Constants.LIBRARY_MANIFEST_FILE_NAME));
+        for (Tool tool : tools) {
+            recordTool(manifest, tool.getRepository().getName(), tool.getRepository(), libraryRoot);
+        }
+        manifest.save();
+    }
+
+    /**
+     * Records the given tools in the manifest of the library, as is done in
+     * <code>writeManifest</code>, for tools that are taken from the repository
+     * of the compact installation. The commit and version of that repository
+     * are recorded for each tool.
+     *
+     * @param toolNames the names of the tools that have been installed
+     * @param libraryRoot the folder in which the library folders of the tools
+     * reside, such as a generation of the library
+     * @param compactRepository the repository of the compact installation
+     * @throws IOException if the repository cannot be opened, if a file cannot
+     * be hashed, or if the manifest cannot be saved
+     */
+    public void writeCompactManifest(List<String> toolNames, File libraryRoot, Repository compactRepository) throws IOException {
+        LibraryManifest manifest = LibraryManifest.load(new File(libraryRoot, Constants.LIBRARY_MANIFEST_FILE_NAME));
+        for (String toolName : toolNames) {
+            recordTool(manifest, toolName, compactRepository, libraryRoot);
+        }
+        manifest.save();
+    }
+
+    /**
+     * Records the commit and version of the given repository for the given
+     * tool, together with the entry point of the tool and the size and hash of
+     * each of its files in the library
+     *
+     * @param manifest the manifest to record the tool in
+     * @param toolName the name of the tool
+     * @param repository the repository from which the tool was installed
+     * @param libraryRoot the folder in which the library folder of the tool
+     * resides
+     * @throws IOException if the repository cannot be opened, or if a file
+     * cannot be hashed
+     */
+    private void recordTool(LibraryManifest manifest, String toolName, Repository repository, File libraryRoot) throws IOException {
+        File libraryFolder = new File(libraryRoot, toolName);
+        manifest.setCommit(toolName, repository.getHeadCommit());
+        manifest.setVersion(toolName, repository.getVersion());
+        String entryPoint = getEntryPoint(toolName, libraryFolder);
+        if (entryPoint != null) {
+            manifest.setEntryPoint(toolName, entryPoint);
+        }
+        manifest.setFiles(toolName, new ChecksumVerifier().record(libraryFolder));
+    }
+
+    /**
+     * Gets the entry point of the given tool (the JAR or script that is
+     * executed during the decompilation), relative to its library folder
+     *
+     * @param toolName the name of the tool
+     * @param libraryFolder the library folder of the tool
+     * @return the relative path of the entry point, or null if the tool has no
+     * entry point (such as the Android Studio project template), or if it
+     * cannot be found
+     */
+    private String getEntryPoint(String toolName, File libraryFolder) {
+        if (toolName.equalsIgnoreCase(DecompilerType.APKTOOL.toString())) {
+            return "apktool-cli-all.jar";
+        } else if (toolName.equalsIgnoreCase(DecompilerType.DEX2JAR.toString())) {
+            return Constants.isWindows() ? "d2j-dex2jar.bat" : "d2j-dex2jar.sh";
+        } else if (toolName.equalsIgnoreCase(DecompilerType.FERNFLOWER.toString())) {
+            return "fernflower.jar";
+        } else if (toolName.equalsIgnoreCase(DecompilerType.JADX.toString())) {
+            return Constants.isWindows() ? "bin/jadx.bat" : "bin/jadx";
+        } else if (toolName.equalsIgnoreCase(DecompilerType.JDCMD.toString())) {
+            return "jd-cli.jar";
+        } else if (toolName.equalsIgnoreCase(DecompilerType.PROCYON.toString())) {
+            return "procyon-decompiler-0.5.30.jar";
+        } else if (toolName.equalsIgnoreCase(DecompilerType.JEB3.toString())) {
+            return "DecompileAndroid.py";
+        } else if (toolName.equalsIgnoreCase(DecompilerType.CFR.toString())) {
+            //The name of the CFR JAR contains the version number, so it is resolved once during the installation
+            File[] files = libraryFolder.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isFile() && file.getName().toLowerCase().contains(ProjectInfos.getCfr().getPartialOutputName().toLowerCase())) {
+                        return file.getName();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds each project that is provided. Independent projects are built at
+     * the same time, within the budget of the available processors and
+     * memory.
      *
      * @param tools the tools to be build
      * @throws IOException if the building process went wrong
      * @throws InterruptedException if the thread was somehow interrupted
      */
     public void buildRepositories(List<Tool> tools) throws IOException, InterruptedException {
+        List<Tool> toolsToBuild = new ArrayList<>();
         for (Tool tool : tools) {
-            try {
-                if (tool.getRepository().getName().equalsIgnoreCase("androidproject")
-                        || tool.getRepository().getName().equalsIgnoreCase(DecompilerType.PROCYON.toString())
-                        || tool.getRepository().getName().equalsIgnoreCase(DecompilerType.JEB3.toString())
-                        || tool.getRepository().getName().equalsIgnoreCase(DecompilerType.JDCMD.toString())) {
-                    continue;
-                }
-                System.out.println("[+]Starting to build " + tool.getRepository().getName());
-                tool.getProjectInfo().getBuildCommand().execute();
-                System.out.println("[+]Finished building " + tool.getRepository().getName());
-            } catch (IOException ex) {
-                throw new IOException("Something went wrong when building " + tool.getRepository().getName());
+            if (!requiresBuild(tool)) {
+                continue;
             }
+            //Tools of which the build is cached are restored during the extraction
+            if (artifactCache != null && artifactCache.contains(tool)) {
+                System.out.println("[+]Using the cached build of " + tool.getRepository().getName());
+                continue;
+            }
+            toolsToBuild.add(tool);
+        }
+        if (toolsToBuild.isEmpty()) {
+            return;
         }
+        BuildScheduler buildScheduler = new BuildScheduler(toolsToBuild.size());
+        buildScheduler.build(toolsToBuild);
+    }
+
+    /**
+     * Checks if the given tool needs to be built. The Android Studio Project
+     * repository, Procyon mirror, JEB3 CLI Android Decompiler script and JD-CMD
+     * mirror are used as is.
+     *
+     * @param tool the tool to check
+     * @return true if the tool needs to be built, false if not
+     */
+    private boolean requiresBuild(Tool tool) {
+        String name = tool.getRepository().getName();
+        return !(name.equalsIgnoreCase("androidproject")
+                || name.equalsIgnoreCase(DecompilerType.PROCYON.toString())
+                || name.equalsIgnoreCase(DecompilerType.JEB3.toString())
+                || name.equalsIgnoreCase(DecompilerType.JDCMD.toString()));
     }
 
     /**
-     * Empty the folders of each repository before the content is placed in it.
-     * This is required during the update process
+     * Copies the library folders of the given tools from one generation of the
+     * library to another
      *
-     * @param tools the tools which will be emptied
-     * @throws IOException is an IO error occurs
+     * @param tools the tools to copy
+     * @param sourceRoot the folder in which the library folders of the tools
+     * currently reside
+     * @param targetRoot the folder to copy the library folders to
+     * @throws IOException if a library folder cannot be copied
      */
-    public void emptyLibraryFolders(List<Tool> tools) throws IOException {
+    public void copyLibraryFolders(List<Tool> tools, File sourceRoot, File targetRoot) throws IOException {
         for (Tool tool : tools) {
-            fileManager.emptyFolder(new File(Constants.LIBRARY_FOLDER + "/" + tool.getRepository().getName()));
+            String name = tool.getRepository().getName();
+            fileManager.copyFolder(new File(sourceRoot, name), new File(targetRoot, name));
         }
     }
 
     /**
-     * Extracts the output of the builds to the library (as is defined in
-     * <code>Constants.getLibraryFolderName()</code>
+     * Copies the manifest and the checksums of one generation of the library
+     * to another, so that the records of the tools that are copied along are
+     * kept. Files that do not exist are skipped.
+     *
+     * @param sourceRoot the folder of the generation to copy the manifest from
+     * @param targetRoot the folder of the generation to copy the manifest to
+     * @throws IOException if the manifest cannot be copied
+     */
+    public void copyManifest(File sourceRoot, File targetRoot) throws IOException {
+        for (String fileName : new String[]{Constants.LIBRARY_MANIFEST_FILE_NAME, Constants.LIBRARY_CHECKSUMS_FILE_NAME}) {
+            File sourceFile = new File(sourceRoot, fileName);
+            if (sourceFile.isFile()) {
+                Files.copy(sourceFile.toPath(), new File(targetRoot, fileName).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Extracts the output of the builds to the given root folder, such as a
+     * generation of the library. The tools are extracted
+     * at the same time, using one thread per available processor. Archives are
+     * extracted directly into the library folder of the tool. If an artifact
+     * cache is used, cached builds are copied from the cache instead, and new
+     * builds are stored in the cache once they have been extracted.
+     *
+     * If one or more builds cannot be extracted, the others are extracted
+     * regardless, after which all failures are reported at once.
      *
      * @param tools the tools to be extracted
+     * @param libraryRoot the folder in which the library folder of each tool
+     * is created
+     * @throws IOException if one or more builds cannot be extracted, or if the
+     * extraction is interrupted
      */
-    public void extractBuilds(List<Tool> tools) {
+    public void extractBuilds(List<Tool> tools, File libraryRoot) throws IOException {
+        int threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), tools.size()));
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        Map<Tool, Future<?>> extractions = new LinkedHashMap<>();
         for (Tool tool : tools) {
+            extractions.put(tool, executorService.submit(() -> {
+                String name = tool.getRepository().getName();
+                ProgressReporter.startStage("extract", name);
+                extractBuild(tool, libraryRoot);
+                ProgressReporter.endStage("extract", name, new File(libraryRoot, name));
+                return null;
+            }));
+        }
+        executorService.shutdown();
+        List<String> failedTools = new ArrayList<>();
+        for (Map.Entry<Tool, Future<?>> extraction : extractions.entrySet()) {
             try {
-                /**
-                 * Since the Android Studio Project repository, CFR mirror,
-                 * Procyon mirror and JEB3 CLI Android Decompiler script only
-                 * consist of a single file, it does not need to be extracted.
-                 */
-                if (tool.getRepository().getName().equalsIgnoreCase("androidproject")) {
-                    fileManager.copyFolder(new File(Constants.ANDROIDPROJECT_REPOSITORY_FOLDER), new File(Constants.ANDROIDPROJECT_LIBRARY_FOLDER));
-                    continue;
-                } else if (tool.getRepository().getName().equalsIgnoreCase(DecompilerType.CFR.toString())) {
-                    fileManager.copyFolder(tool.getProjectInfo().getBuildOutputFolder(), new File(Constants.CFR_LIBRARY_FOLDER));
-                    continue;
-                } else if (tool.getRepository().getName().equalsIgnoreCase(DecompilerType.PROCYON.toString())) {
-                    fileManager.copyFolder(new File(Constants.PROCYON_REPOSITORY_FOLDER), new File(Constants.PROCYON_LIBRARY_FOLDER));
-                    continue;
-                } else if (tool.getRepository().getName().equalsIgnoreCase(DecompilerType.JEB3.toString())) {
-                    fileManager.copyFolder(new File(Constants.JEB3_CLI_ANDROID_SCRIPT_REPOSITORY_FOLDER), new File(Constants.JEB3_CLI_ANDROID_SCRIPT_LIBRARY_FOLDER));
-                    continue;
-                } else if (tool.getRepository().getName().equalsIgnoreCase(DecompilerType.JDCMD.toString())) {
-                    fileManager.copyFolder(new File(Constants.JDCMD_REPOSITORY_FOLDER), new File(Constants.JDCMD_LIBRARY_FOLDER));
-                    continue;
-                }
-                System.out.println("[+]Extracting " + tool.getRepository().getName());
-                File buildOutputFolder = tool.getProjectInfo().getBuildOutputFolder();
-                String partialArchiveName = tool.getProjectInfo().getPartialOutputName();
-                //Loop through the output directory of the build
-                for (File currentFile : buildOutputFolder.listFiles()) {
-                    //If this file contains the partial name, then it is treated as being the build output
-                    if (currentFile.getName().toLowerCase().contains(partialArchiveName.toLowerCase()) && partialArchiveName.toLowerCase().endsWith(".zip")) {
-                        File outputLocation = new File(buildOutputFolder.getAbsolutePath() + "/" + Constants.BUILD_OUTPUT);
-                        System.out.println("[+]Extracting to " + outputLocation.getAbsolutePath());
-                        outputLocation.mkdir();
-                        fileManager.extractArchive(currentFile.getAbsolutePath(), outputLocation.getAbsolutePath());
-                        //Copy extracted files to the lib folder, where only the builds reside
-                        if (tool.getRepository().getName().equalsIgnoreCase(DecompilerType.DEX2JAR.toString())) {
-                            fileManager.copyFolder(outputLocation.listFiles()[0], new File(Constants.DEX2JAR_LIBRARY_FOLDER));
-                        } else {
-                            fileManager.copyFolder(outputLocation, new File(Constants.LIBRARY_FOLDER + "/" + tool.getRepository().getName()));;
-                        }
-                    } else if (currentFile.getName().toLowerCase().contains(partialArchiveName.toLowerCase()) && partialArchiveName.toLowerCase().endsWith(".jar")) {
-                        fileManager.copyFolder(buildOutputFolder, new File(Constants.LIBRARY_FOLDER + "/" + tool.getRepository().getName()));
-                    }
-                }
-                System.out.println("[+]Finished extracting " + tool.getRepository().getName());
+                extraction.getValue().get();
+            } catch (ExecutionException ex) {
+                failedTools.add(extraction.getKey().getRepository().getName() + " (" + ex.getCause().getMessage() + ")");
+            } catch (InterruptedException ex) {
+                executorService.shutdownNow();
+                throw new IOException("The extraction of the builds was interrupted!");
+            }
+        }
+        //A partially extracted tool would otherwise be recorded in the manifest, and pass the verification against that same record
+        if (failedTools.size() > 0) {
+            throw new IOException("Something went wrong when extracting the build of " + String.join(", ", failedTools));
+        }
+    }
 
-            } catch (IOException | ZipException ex) {
-                System.err.println("Something went wrong during the extraction of the build of " + tool.getRepository().getName() + ":\n" + ex.getMessage());
-                ex.printStackTrace();
+    /**
+     * Extracts the output of the build of a single tool to its library folder
+     *
+     * @param tool the tool to be extracted
+     * @param libraryRoot the folder in which the library folder of the tool is
+     * created
+     * @throws IOException if the files cannot be copied
+     * @throws ZipException if the build output cannot be extracted
+     */
+    private void extractBuild(Tool tool, File libraryRoot) throws IOException, ZipException {
+        File libraryFolder = new File(libraryRoot, tool.getRepository().getName());
+        boolean cacheable = artifactCache != null && requiresBuild(tool);
+        if (cacheable && artifactCache.contains(tool)) {
+            System.out.println("[+]Restoring " + tool.getRepository().getName() + " from the artifact cache");
+            artifactCache.restore(tool, libraryFolder);
+            return;
+        }
+        /**
+         * Since the Android Studio Project repository, CFR mirror, Procyon
+         * mirror and JEB3 CLI Android Decompiler script only consist of a
+         * single file, it does not need to be extracted.
+         */
+        if (tool.getRepository().getName().equalsIgnoreCase("androidproject")) {
+            fileManager.copyFolder(new File(Constants.ANDROIDPROJECT_REPOSITORY_FOLDER), libraryFolder);
+            return;
+        } else if (tool.getRepository().getName().equalsIgnoreCase(DecompilerType.CFR.toString())) {
+            fileManager.copyFolder(tool.getProjectInfo().getBuildOutputFolder(), libraryFolder);
+            if (cacheable) {
+                artifactCache.store(tool, libraryFolder);
+            }
+            return;
+        } else if (tool.getRepository().getName().equalsIgnoreCase(DecompilerType.PROCYON.toString())) {
+            fileManager.copyFolder(new File(Constants.PROCYON_REPOSITORY_FOLDER), libraryFolder);
+            return;
+        } else if (tool.getRepository().getName().equalsIgnoreCase(DecompilerType.JEB3.toString())) {
+            fileManager.copyFolder(new File(Constants.JEB3_CLI_ANDROID_SCRIPT_REPOSITORY_FOLDER), libraryFolder);
+            return;
+        } else if (tool.getRepository().getName().equalsIgnoreCase(DecompilerType.JDCMD.toString())) {
+            fileManager.copyFolder(new File(Constants.JDCMD_REPOSITORY_FOLDER), libraryFolder);
+            return;
+        }
+        System.out.println("[+]Extracting " + tool.getRepository().getName());
+        File buildOutputFolder = tool.getProjectInfo().getBuildOutputFolder();
+        String partialArchiveName = tool.getProjectInfo().getPartialOutputName();
+        //Loop through the output directory of the build
+        for (File currentFile : buildOutputFolder.listFiles()) {
+            //If this file contains the partial name, then it is treated as being the build output
+            if (currentFile.getName().toLowerCase().contains(partialArchiveName.toLowerCase()) && partialArchiveName.toLowerCase().endsWith(".zip")) {
+                System.out.println("[+]Extracting to " + libraryFolder.getAbsolutePath());
+                //The distribution of dex2jar contains a single versioned root folder, which is skipped so that the scripts reside in the library folder
+                boolean skipRootFolder = tool.getRepository().getName().equalsIgnoreCase(DecompilerType.DEX2JAR.toString());
+                fileManager.extractArchive(currentFile.getAbsolutePath(), libraryFolder.getAbsolutePath(), skipRootFolder);
+            } else if (currentFile.getName().toLowerCase().contains(partialArchiveName.toLowerCase()) && partialArchiveName.toLowerCase().endsWith(".jar")) {
+                //The complete build output folder is copied, so a single match suffices
+                fileManager.copyFolder(buildOutputFolder, libraryFolder);
+                break;
             }
         }
+        System.out.println("[+]Finished extracting " + tool.getRepository().getName());
+        if (cacheable) {
+            artifactCache.store(tool, libraryFolder);
+        }
     }
 
     /**
@@ -197,32 +494,64 @@ public class RepositoryManager {
      * @throws Exception if one or more tools fail to install
      */
     public void verifyInstallation() throws Exception {
+        verifyInstallation(new File(Constants.getActiveLibraryFolder()));
+    }
+
+    /**
+     * Verifies the installation in the given root folder, such as a new
+     * generation of the library before it is activated, as is described in
+     * <code>verifyInstallation()</code>. If only some of the tools were
+     * installed, only those are verified.
+     *
+     * @param libraryRoot the folder in which the library folders of the tools
+     * reside
+     * @throws Exception if one or more tools fail to install
+     */
+    public void verifyInstallation(File libraryRoot) throws Exception {
+        verifyInstallation(libraryRoot, getInstalledToolNames(libraryRoot));
+    }
+
+    /**
+     * Gets the names of the tools that are installed in the given root folder,
+     * which are the tools that are recorded in its manifest, as well as the
+     * tools of which the library folder exists (i.e. in a library that was
+     * installed before the manifest was written).
+     *
+     * @param libraryRoot the folder in which the library folders of the tools
+     * reside
+     * @return the names of the installed tools
+     * @throws IOException if the manifest cannot be read
+     */
+    public List<String> getInstalledToolNames(File libraryRoot) throws IOException {
+        LibraryManifest manifest = LibraryManifest.load(new File(libraryRoot, Constants.LIBRARY_MANIFEST_FILE_NAME));
+        List<String> toolNames = new ArrayList<>();
+        for (Tool tool : Tools.getTools()) {
+            String name = tool.getRepository().getName();
+            if (manifest.getCommit(name) != null || new File(libraryRoot, name).isDirectory()) {
+                toolNames.add(name);
+            }
+        }
+        return toolNames;
+    }
+
+    /**
+     * Verifies the installation of the given tools in the given root folder,
+     * as is described in <code>verifyInstallation()</code>
+     *
+     * @param libraryRoot the folder in which the library folders of the tools
+     * reside
+     * @param toolNames the names of the tools that should be installed
+     * @throws Exception if one or more tools fail to install
+     */
+    public void verifyInstallation(File libraryRoot, List<String> toolNames) throws Exception {
         //Create a list in which all of the results go
         List<String> missingTools = new ArrayList<>();
 
-        //Create an object for each folder
-        File androidProjectFolder = new File(Constants.ANDROIDPROJECT_LIBRARY_FOLDER);
-        File apkToolFolder = new File(Constants.APKTOOL_LIBRARY_FOLDER);
-        File dex2jarFolder = new File(Constants.DEX2JAR_LIBRARY_FOLDER);
-        File fernflowerFolder = new File(Constants.FERNFLOWER_LIBRARY_FOLDER);
-        //Since the JadX folder is set to the "bin" folder within the "jadx" folder, the last four characters need to be removed in order for the name-printing to work
-        File jadxFolder = new File(new String(Constants.JADX_LIBRARY_FOLDER).substring(0, Constants.JADX_LIBRARY_FOLDER.length() - 4));
-        File jdcmdFolder = new File(Constants.JDCMD_LIBRARY_FOLDER);
-        File crfFolder = new File(Constants.CFR_LIBRARY_FOLDER);
-        File procyonFolder = new File(Constants.PROCYON_LIBRARY_FOLDER);
-        File jeb3Script = new File(Constants.JEB3_CLI_ANDROID_SCRIPT_LIBRARY_FOLDER);
-
-        //Add all folders in a list
+        //Add the folder of each tool in a list
         List<File> folders = new ArrayList<>();
-        folders.add(androidProjectFolder);
-        folders.add(apkToolFolder);
-        folders.add(dex2jarFolder);
-        folders.add(fernflowerFolder);
-        folders.add(jadxFolder);
-        folders.add(jdcmdFolder);
-        folders.add(crfFolder);
-        folders.add(procyonFolder);
-        folders.add(jeb3Script);
+        for (String toolName : toolNames) {
+            folders.add(new File(libraryRoot, toolName));
+        }
 
         //Check each of the folders in the folders list
         for (File folder : folders) {
@@ -243,5 +572,24 @@ public class RepositoryManager {
             message.append("\tSee the output log above for more details. Verify that you have installed the correct dependencies before you try again.");
             throw new Exception(message.toString());
         }
+
+        //If the installation recorded the files of the tools, verify that each of them is present with the correct size
+        LibraryManifest manifest = LibraryManifest.load(new File(libraryRoot, Constants.LIBRARY_MANIFEST_FILE_NAME));
+        List<String> recordedTools = new ArrayList<>();
+        for (String toolName : toolNames) {
+            if (!manifest.getFiles(toolName).isEmpty()) {
+                recordedTools.add(toolName);
+            }
+        }
+        List<String> mismatches = new ChecksumVerifier().verify(manifest, libraryRoot, recordedTools, false);
+        if (mismatches.size() > 0) {
+            StringBuilder message = new StringBuilder();
+            message.append("\tThe following files in the library differ from the installation:\n");
+            for (String mismatch : mismatches) {
+                message.append("\t\t" + mismatch + "\n");
+            }
+            message.append("\tReinstall or update the library (using \"-update --force\") to repair it.");
+            throw new Exception(message.toString());
+        }
     }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.File;
+import library.Constants;
+
+/**
+ * Handles the selection of the scratch space, in which all temporary files of
+ * a decompilation are stored. The scratch root can be placed on a faster
+ * medium (such as a tmpfs mount like "/dev/shm" or a local NVMe drive), since
+ * the intermediate I/O is responsible for most of the runtime.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class ScratchManager {
+
+    /**
+     * Selects the scratch root for the decompilation of the given APK. If the
+     * requested root cannot hold the estimated amount of data, the default
+     * scratch root within the library is used instead.
+     *
+     * @param apk the APK that is going to be decompiled
+     * @param requestedRoot the scratch root that the user requested, or null if
+     * no specific root was requested
+     * @return the scratch root to use
+     */
+    public File selectScratchRoot(File apk, String requestedRoot) {
+        long requiredSpace = estimateRequiredSpace(apk);
+        if (requestedRoot != null) {
+            File scratchRoot = new File(requestedRoot);
+            if (hasSpace(scratchRoot, requiredSpace)) {
+                System.out.println("[+]Using " + scratchRoot.getAbsolutePath() + " as the scratch space");
+                return scratchRoot;
+            }
+            System.out.println("[+]The scratch space at " + scratchRoot.getAbsolutePath() + " cannot hold the estimated " + toMegabytes(requiredSpace) + " MB, falling back to the library folder");
+        }
+        File defaultRoot = new File(Constants.DEFAULT_SCRATCH_ROOT);
+        if (!hasSpace(defaultRoot, requiredSpace)) {
+            //The estimate is an upper bound, so the decompilation is attempted regardless
+            System.out.println("[+]Warning: the scratch space at " + defaultRoot.getAbsolutePath() + " has less than the estimated " + toMegabytes(requiredSpace) + " MB available");
+        }
+        return defaultRoot;
+    }
+
+    /**
+     * Estimates the amount of scratch space that is required to decompile the
+     * given APK, based on the size of the APK
+     *
+     * @param apk the APK to decompile
+     * @return the estimated amount of bytes that are required
+     */
+    public long estimateRequiredSpace(File apk) {
+        return apk.length() * Constants.SCRATCH_SPACE_FACTOR + Constants.SCRATCH_SPACE_OVERHEAD;
+    }
+
+    /**
+     * Checks if the given folder can hold the required amount of bytes. The
+     * folder is created if it does not exist yet.
+     *
+     * @param folder the folder to check
+     * @param requiredSpace the amount of bytes that is required
+     * @return true if the folder exists (or was created) and has enough usable
+     * space, false if not
+     */
+    private boolean hasSpace(File folder, long requiredSpace) {
+        folder.mkdirs();
+        if (!folder.isDirectory() || !folder.canWrite()) {
+            return false;
+        }
+        return folder.getUsableSpace() >= requiredSpace;
+    }
+
+    /**
+     * Converts the given amount of bytes into megabytes (rounded up)
+     *
+     * @param bytes the amount of bytes
+     * @return the amount of megabytes
+     */
+    private long toMegabytes(long bytes) {
+        return (bytes + 1024 * 1024 - 1) / (1024 * 1024);
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An inverted index of the Java files of a decompiled project, which maps
+ * each term (a class name, a called method, a string literal or an
+ * identifier) to the files in which it occurs. The index is stored as a
+ * single file, which is memory mapped when it is used, meaning a lookup is a
+ * binary search without reading the complete index.
+ *
+ * The file starts with the magic value "APCSIDX1", followed by the amount of
+ * terms and the amount of files. Next are the offsets of the terms (4 bytes
+ * each), sorted by term, and the terms themselves, each of which consists of
+ * the term and the indices of the files it occurs in. The path of the project
+ * and the paths of the files (relative to the project) follow at the end of
+ * the file.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class SearchIndex {
+
+    /**
+     * The magic value at the start of an index file
+     */
+    private static final byte[] MAGIC = "APCSIDX1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The size of the header in bytes
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * The memory mapped content of the index
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The amount of terms in the index
+     */
+    private final int termCount;
+
+    /**
+     * The path of the project that is indexed
+     */
+    private final String project;
+
+    /**
+     * The paths of the files in the project, in the order of their index
+     */
+    private final List<String> files;
+
+    /**
+     * Opens the given index file
+     *
+     * @param indexFile the index file
+     * @throws IOException if the file cannot be read or is not an index file
+     */
+    public SearchIndex(File indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException ex) {
+            throw new IOException("The search index (" + indexFile.getAbsolutePath() + ") cannot be read!");
+        }
+        byte[] magic = new byte[MAGIC.length];
+        if (buffer.capacity() < HEADER_SIZE) {
+            throw new IOException("The file " + indexFile.getAbsolutePath() + " is not a search index!");
+        }
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("The file " + indexFile.getAbsolutePath() + " is not a search index!");
+        }
+        termCount = buffer.getInt(8);
+        int fileCount = buffer.getInt(12);
+        //The paths are stored after the last term, the offset of which is stored directly in front of them
+        ByteBuffer data = buffer.duplicate();
+        data.position(buffer.capacity() - 4);
+        data.position(data.getInt());
+        project = readString(data);
+        files = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            files.add(readString(data));
+        }
+    }
+
+    /**
+     * Searches the index for the given term, or for all terms that start with
+     * it
+     *
+     * @param term the term to search for, in lower case and prefixed with its
+     * kind (see <code>SourceIndexer</code>)
+     * @param prefix true if all terms that start with the given term match,
+     * false if only the term itself matches
+     * @param limit the maximum amount of matches
+     * @return the matches, which map the matching term to the paths of the
+     * files (relative to the project) in which it occurs
+     */
+    public Map<String, List<String>> search(String term, boolean prefix, int limit) {
+        Map<String, List<String>> matches = new TreeMap<>();
+        int count = 0;
+        //The first term that is equal to or larger than the given term is the start of the matches
+        int low = 0;
+        int high = termCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (readTerm(middle).compareTo(term) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < termCount && count < limit; i++) {
+            ByteBuffer data = buffer.duplicate();
+            data.position(buffer.getInt(HEADER_SIZE + i * 4));
+            String current = readString(data);
+            if (!(prefix ? current.startsWith(term) : current.equals(term))) {
+                break;
+            }
+            List<String> paths = new ArrayList<>();
+            int postingCount = data.getInt();
+            for (int j = 0; j < postingCount && count < limit; j++) {
+                paths.add(files.get(data.getInt()));
+                count++;
+            }
+            matches.put(current, paths);
+        }
+        return matches;
+    }
+
+    /**
+     * Gets the path of the project that is indexed
+     *
+     * @return the path of the project
+     */
+    public String getProject() {
+        return project;
+    }
+
+    /**
+     * Gets the amount of terms in the index
+     *
+     * @return the amount of terms
+     */
+    public int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * Gets the amount of files in the index
+     *
+     * @return the amount of files
+     */
+    public int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * Reads the term with the given index
+     *
+     * @param index the index of the term, in the sorted order
+     * @return the term
+     */
+    private String readTerm(int index) {
+        ByteBuffer data = buffer.duplicate();
+        data.position(buffer.getInt(HEADER_SIZE + index * 4));
+        return readString(data);
+    }
+
+    /**
+     * Writes an index file with the given terms. The file is written to a
+     * temporary file first, which then replaces the given file.
+     *
+     * @param terms the terms, mapped to the (ascending) indices of the files
+     * in which they occur
+     * @param project the path of the project that is indexed
+     * @param files the paths of the files, relative to the project
+     * @param indexFile the file to write the index to
+     * @throws IOException if the index cannot be written
+     */
+    public static void write(Map<String, List<Integer>> terms, String project, List<String> files, File indexFile) throws IOException {
+        //The terms are sorted, so that they can be found with a binary search
+        TreeMap<String, List<Integer>> sorted = new TreeMap<>(terms);
+        File temporaryFile = new File(indexFile.getAbsolutePath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.write(MAGIC);
+            output.writeInt(sorted.size());
+            output.writeInt(files.size());
+            long offset = HEADER_SIZE + sorted.size() * 4L;
+            for (Map.Entry<String, List<Integer>> entry : sorted.entrySet()) {
+                if (offset > Integer.MAX_VALUE) {
+                    throw new IOException("The index exceeds the maximum size of 2 GB");
+                }
+                output.writeInt((int) offset);
+                offset += 8 + entry.getKey().getBytes(StandardCharsets.UTF_8).length + entry.getValue().size() * 4L;
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("The index exceeds the maximum size of 2 GB");
+            }
+            for (Map.Entry<String, List<Integer>> entry : sorted.entrySet()) {
+                writeString(output, entry.getKey());
+                output.writeInt(entry.getValue().size());
+                for (int file : entry.getValue()) {
+                    output.writeInt(file);
+                }
+            }
+            writeString(output, project);
+            for (String file : files) {
+                writeString(output, file);
+            }
+            output.writeInt((int) offset);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw new IOException("The search index (" + indexFile.getAbsolutePath() + ") cannot be written: " + ex.getMessage());
+        }
+        Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a string, which is stored as its length in bytes followed by its
+     * UTF-8 encoded content
+     *
+     * @param data the buffer to read from, positioned at the string
+     * @return the string
+     */
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[data.getInt()];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a string as its length in bytes followed by its UTF-8 encoded
+     * content
+     *
+     * @param output the stream to write to
+     * @param value the string to write
+     * @throws IOException if the string cannot be written
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package apc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import library.Constants;
+
+/**
+ * Builds a search index of decompiled Java files while these are copied into
+ * the project, meaning each file is only read once. Each file is tokenized
+ * into the classes it declares (by their simple and fully qualified name),
+ * the methods it calls (by their name and, if called on a class or object, by
+ * the name of that class or object followed by the method name), its string
+ * literals and all other identifiers. Comments and Java keywords are skipped.
+ * The terms are stored in lower case, prefixed with their kind (i.e.
+ * "call:cipher.getinstance").
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class SourceIndexer {
+
+    /**
+     * The kind of the names of declared classes
+     */
+    public static final String CLASS = "class";
+
+    /**
+     * The kind of the names of called methods
+     */
+    public static final String CALL = "call";
+
+    /**
+     * The kind of string literals
+     */
+    public static final String STRING = "string";
+
+    /**
+     * The kind of all other identifiers
+     */
+    public static final String IDENTIFIER = "identifier";
+
+    /**
+     * The Java keywords, which are not indexed as identifiers. Primitive types
+     * are listed separately, as these precede a name like any other type.
+     */
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "abstract", "assert", "break", "case", "catch", "class", "const", "continue",
+            "default", "do", "else", "enum", "extends", "false", "final", "finally", "for",
+            "goto", "if", "implements", "import", "instanceof", "interface", "native", "new",
+            "null", "package", "private", "protected", "public", "return", "static", "strictfp",
+            "super", "switch", "synchronized", "this", "throw", "throws", "transient", "true",
+            "try", "volatile", "while"));
+
+    /**
+     * The primitive types, which are not indexed as identifiers either
+     */
+    private static final Set<String> PRIMITIVE_TYPES = new HashSet<>(Arrays.asList(
+            "boolean", "byte", "char", "double", "float", "int", "long", "short", "void"));
+
+    /**
+     * The terms, mapped to the (ascending) indices of the files in which they
+     * occur
+     */
+    private final Map<String, List<Integer>> terms;
+
+    /**
+     * The paths of the indexed files, relative to the project
+     */
+    private final List<String> files;
+
+    /**
+     * Creates an empty index
+     */
+    public SourceIndexer() {
+        terms = new HashMap<>();
+        files = new ArrayList<>();
+    }
+
+    /**
+     * Copies a folder (including all the sub folders) to the given
+     * destination, and indexes the Java files that are copied. Equal to
+     * <code>FileManager.copyFolder</code>, files that already exist in the
+     * destination are neither overwritten nor indexed again.
+     *
+     * @param src the folder to be copied
+     * @param dest the place to copy the <code>src</code> folder to
+     * @param path the path of the destination, relative to the project (i.e.
+     * "app/src/main/java/")
+     * @throws IOException if the destination is not a folder or if the copying
+     * of the files failed
+     */
+    public void copyFolder(File src, File dest, String path) throws IOException {
+        if (src == null || dest == null || !src.isDirectory()) {
+            return;
+        }
+        if (dest.exists()) {
+            if (!dest.isDirectory()) {
+                throw new IOException("The destination is not a folder: " + dest.getAbsolutePath());
+            }
+        } else {
+            dest.mkdirs();
+        }
+        File[] children = src.listFiles();
+        if (children == null) {
+            return;
+        }
+        //The files are sorted to give the same project the same index
+        Arrays.sort(children);
+        for (File file : children) {
+            File fileDest = new File(dest, file.getName());
+            if (file.isDirectory()) {
+                copyFolder(file, fileDest, path + file.getName() + "/");
+            } else if (!fileDest.exists()) {
+                try {
+                    if (file.getName().endsWith(".java")) {
+                        byte[] content = Files.readAllBytes(file.toPath());
+                        Files.write(fileDest.toPath(), content, StandardOpenOption.CREATE_NEW);
+                        index(path + file.getName(), new String(content, StandardCharsets.UTF_8));
+                    } else {
+                        Files.copy(file.toPath(), fileDest.toPath());
+                    }
+                } catch (IOException ex) {
+                    throw new IOException("Something went wrong when trying to copy the file \"" + file.getAbsolutePath() + "\"! It might not exist or you might not have the correct permissions to write a file to the destination (\"" + fileDest.getAbsolutePath() + "\").");
+                }
+            }
+        }
+    }
+
+    /**
+     * Tokenizes the given Java source code and adds its terms to the index
+     *
+     * @param path the path of the file, relative to the project
+     * @param source the Java source code
+     */
+    public void index(String path, String source) {
+        int file = files.size();
+        files.add(path);
+        String packageName = "";
+        //The classes in which the current position is declared, with the depth of the braces of their body
+        Deque<Map.Entry<String, Integer>> classes = new ArrayDeque<>();
+        String declaredClass = null;
+        boolean declaration = false;
+        int depth = 0;
+        //The previous token, which is either an identifier, a keyword or a single character
+        String previous = "";
+        String qualifier = null;
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char character = source.charAt(i);
+            if (character == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                int end = source.indexOf('\n', i);
+                i = end == -1 ? length : end + 1;
+            } else if (character == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+                i = end == -1 ? length : end + 2;
+            } else if (character == '"' || character == '\'') {
+                //The escape sequences of the literals are kept as they are written in the source code
+                StringBuilder literal = new StringBuilder();
+                i++;
+                while (i < length && source.charAt(i) != character && source.charAt(i) != '\n') {
+                    if (source.charAt(i) == '\\' && i + 1 < length) {
+                        literal.append(source.charAt(i++));
+                    }
+                    literal.append(source.charAt(i++));
+                }
+                i++;
+                if (character == '"' && literal.length() > 0) {
+                    String value = literal.length() > Constants.SEARCH_INDEX_MAX_STRING_LENGTH ? literal.substring(0, Constants.SEARCH_INDEX_MAX_STRING_LENGTH) : literal.toString();
+                    add(STRING, value, file);
+                }
+                previous = "\"";
+                qualifier = null;
+            } else if (Character.isJavaIdentifierStart(character)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(source.charAt(i))) {
+                    i++;
+                }
+                String identifier = source.substring(start, i);
+                if (identifier.equals("package") && packageName.isEmpty() && classes.isEmpty()) {
+                    int end = source.indexOf(';', i);
+                    if (end != -1) {
+                        packageName = source.substring(i, end).replaceAll("\\s", "");
+                        i = end + 1;
+                        continue;
+                    }
+                }
+                if (KEYWORDS.contains(identifier)) {
+                    //The "class" in "Example.class" is not a declaration
+                    declaration = (identifier.equals("class") || identifier.equals("interface") || identifier.equals("enum")) && !previous.equals(".");
+                    previous = identifier;
+                    qualifier = null;
+                    continue;
+                } else if (PRIMITIVE_TYPES.contains(identifier)) {
+                    previous = identifier;
+                    qualifier = null;
+                    continue;
+                }
+                add(IDENTIFIER, identifier, file);
+                if (declaration) {
+                    String outerName = classes.isEmpty() ? packageName : classes.peek().getKey();
+                    declaredClass = outerName.isEmpty() ? identifier : outerName + "." + identifier;
+                    add(CLASS, identifier, file);
+                    add(CLASS, declaredClass, file);
+                    declaration = false;
+                } else if (nextCharacter(source, i) == '(') {
+                    if (qualifier != null) {
+                        add(CALL, identifier, file);
+                        add(CALL, qualifier + "." + identifier, file);
+                    } else if (previous.equals(".") || (!previous.equals("@") && !isTypeEnd(previous))) {
+                        //A name that is preceded by a type is the declaration of a method, and one preceded by an at sign is an annotation
+                        add(CALL, identifier, file);
+                    }
+                }
+                qualifier = null;
+                if (nextCharacter(source, i) == '.') {
+                    qualifier = identifier;
+                }
+                previous = identifier;
+            } else {
+                if (character == '{') {
+                    depth++;
+                    if (declaredClass != null) {
+                        classes.push(new AbstractMap.SimpleEntry<>(declaredClass, depth));
+                        declaredClass = null;
+                    }
+                } else if (character == '}') {
+                    if (!classes.isEmpty() && classes.peek().getValue() == depth) {
+                        classes.pop();
+                    }
+                    depth--;
+                }
+                if (!Character.isWhitespace(character)) {
+                    //The qualifier is kept for the dot that follows it
+                    if (character != '.') {
+                        qualifier = null;
+                    }
+                    previous = String.valueOf(character);
+                }
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of indexed files
+     *
+     * @return the amount of files
+     */
+    public int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * Gets the amount of unique terms in the index
+     *
+     * @return the amount of terms
+     */
+    public int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * Writes the index to the given file
+     *
+     * @param project the path of the project, which is stored in the index so
+     * that the files can be found when the index is searched as part of a
+     * corpus
+     * @param indexFile the file to write the index to
+     * @throws IOException if the index cannot be written
+     */
+    public void write(String project, File indexFile) throws IOException {
+        SearchIndex.write(terms, project, files, indexFile);
+    }
+
+    /**
+     * Adds a term to the index, unless it has already been added for the
+     * given file
+     *
+     * @param kind the kind of the term
+     * @param term the term
+     * @param file the index of the file in which the term occurs
+     */
+    private void add(String kind, String term, int file) {
+        List<Integer> postings = terms.computeIfAbsent(kind + ":" + term.toLowerCase(Locale.ROOT), key -> new ArrayList<>(1));
+        //The files are indexed one after another, so a duplicate is always the last entry
+        if (postings.isEmpty() || postings.get(postings.size() - 1) != file) {
+            postings.add(file);
+        }
+    }
+
+    /**
+     * Gets the first character after the given position that is not a
+     * whitespace
+     *
+     * @param source the source code
+     * @param position the position to start at
+     * @return the character, or 0 if the end of the source code is reached
+     */
+    private char nextCharacter(String source, int position) {
+        for (int i = position; i < source.length(); i++) {
+            if (!Character.isWhitespace(source.charAt(i))) {
+                return source.charAt(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Checks if the given token can be the end of a type, which is the case
+     * for an identifier that is not a keyword (i.e. "String" or "int"), the
+     * end of a generic type or the end of an array type
+     *
+     * @param token the token
+     * @return true if the token can be the end of a type, false if not
+     */
+    private boolean isTypeEnd(String token) {
+        if (token.equals(">") || token.equals("]")) {
+            return true;
+        }
+        return !token.isEmpty() && Character.isJavaIdentifierStart(token.charAt(0)) && !KEYWORDS.contains(token);
+    }
+}
@@ -16,7 +16,11 @@
  */
 package command;
 
+import apc.DedupStore;
 import apc.FileManager;
+import apc.ProgressReporter;
+import apc.SourceIndexer;
+import enumeration.ArtifactProfile;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -24,14 +28,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import library.Constants;
+import model.ArgumentPackage;
+import model.Workspace;
 import net.lingala.zip4j.exception.ZipException;
 
 /**
  * The assembler class contains all functions required to create the Android
  * Studio project using the output of the decompiler class and the Android
  * Studio ZIP archive from the
- * <code>Constants.ANDROIDPROJECT_LIBRARY_FOLDER</code>
+ * <code>Constants.getAndroidProjectLibraryFolder()</code>
  *
  * @author Max 'Libra' Kersten
  */
@@ -47,17 +55,60 @@ public class Assembler {
      */
     private final FileManager fileManager;
 
+    /**
+     * The folder of the deduplicated store, or null if the output should be
+     * written without deduplication
+     */
+    private final String dedupStoreFolder;
+
+    /**
+     * The workspace of this job, which contains the output of the decompiler
+     */
+    private final Workspace workspace;
+
+    /**
+     * The profile that defines which parts of the APK are placed in the
+     * project
+     */
+    private final ArtifactProfile artifactProfile;
+
+    /**
+     * The indexer that builds the search index while the Java files are
+     * copied, or null if no search index should be built
+     */
+    private final SourceIndexer sourceIndexer;
+
+    /**
+     * The folder of the corpus-level search index, to which the index of this
+     * project is added, or null if the index is only written to the project
+     */
+    private final String corpusIndexFolder;
+
     /**
      * The assembler class contains all functions required to create the Android
      * Studio project using the output of the decompiler class and the Android
      * Studio ZIP archive from the
-     * <code>Constants.ANDROIDPROJECT_LIBRARY_FOLDER</code>
+     * <code>Constants.getAndroidProjectLibraryFolder()</code>
      *
-     * @param outputLocation the location where the filled Android Studio
-     * project should be placed
+     * @param argumentPackage the arguments, which contain the location where
+     * the filled Android Studio project should be placed
+     * @param workspace the workspace of this job, which contains the output of
+     * the decompiler
      */
-    public Assembler(File outputLocation) {
-        this.outputLocation = outputLocation;
+    public Assembler(ArgumentPackage argumentPackage, Workspace workspace) {
+        this.outputLocation = argumentPackage.getOutputLocation();
+        this.dedupStoreFolder = argumentPackage.getOption("dedup-store");
+        this.workspace = workspace;
+        this.artifactProfile = argumentPackage.getArtifactProfile();
+        //The option is either a flag, or the folder of the corpus-level index
+        if (argumentPackage.isOptionEnabled("search-index")) {
+            this.sourceIndexer = new SourceIndexer();
+            String value = argumentPackage.getOption("search-index");
+            this.corpusIndexFolder = value.equalsIgnoreCase("true") ? null : value;
+        } else {
+            this.sourceIndexer = null;
+            this.corpusIndexFolder = null;
+        }
         fileManager = new FileManager();
     }
 
@@ -72,19 +123,101 @@ public class Assembler {
      */
     public void assemble() throws IOException, ZipException, FileNotFoundException {
         //Copy and extract the template zip
+        ProgressReporter.startStage("template");
         prepareTemplateProject();
+        ProgressReporter.endStage("template", new File(workspace.getTemplateFolder()));
         //Copy the decoded and decompiled files to the template project
+        ProgressReporter.startStage("copy-manifest");
         copyManifest();
-        copyResources();
-        copyJavaCode();
-        copyNativeLibraries();
-        copySmaliFiles();
-        copyAssets();
+        ProgressReporter.endStage("copy-manifest", new File(workspace.getTemplateManifestFile()));
+        //The parts that are not included in the artifact profile have not been decoded or decompiled
+        if (artifactProfile.includesResources()) {
+            ProgressReporter.startStage("copy-resources");
+            copyResources();
+            ProgressReporter.endStage("copy-resources", new File(workspace.getTemplateResourcesFolder()));
+        }
+        if (artifactProfile.includesSources()) {
+            ProgressReporter.startStage("copy-sources");
+            copyJavaCode();
+            ProgressReporter.endStage("copy-sources", new File(workspace.getTemplateSource()));
+            if (sourceIndexer != null) {
+                ProgressReporter.startStage("search-index");
+                writeSearchIndex();
+                ProgressReporter.endStage("search-index", new File(workspace.getTemplateFolder(), Constants.SEARCH_INDEX_FILE_NAME));
+            }
+        }
+        if (artifactProfile.includesRawFiles()) {
+            ProgressReporter.startStage("copy-native-libraries");
+            copyNativeLibraries();
+            ProgressReporter.endStage("copy-native-libraries", new File(workspace.getTemplateLibsFolder()));
+        }
+        if (artifactProfile.includesSmali()) {
+            ProgressReporter.startStage("copy-smali");
+            copySmaliFiles();
+            ProgressReporter.endStage("copy-smali", new File(workspace.getTemplateSmaliFolder()));
+        }
+        if (artifactProfile.includesRawFiles()) {
+            ProgressReporter.startStage("copy-assets");
+            copyAssets();
+            ProgressReporter.endStage("copy-assets", new File(workspace.getTemplateAssetFolder()));
+        }
         //Copy the template project from the temporary location to the desired output location
+        ProgressReporter.startStage("output");
+        File prioritySourcesFolder = new File(workspace.getPrioritySourcesFolder());
+        if (prioritySourcesFolder.isDirectory()) {
+            //The template source folder is relative to the template project, which is equal to its location in the output
+            String sourcePath = new File(workspace.getTemplateFolder()).toPath().relativize(new File(workspace.getTemplateSource()).toPath()).toString();
+            removePriorityOutput(prioritySourcesFolder, new File(outputLocation, sourcePath));
+        }
         copyTemplateToOutputFolder();
+        ProgressReporter.endStage("output", outputLocation);
+        if (sourceIndexer != null && corpusIndexFolder != null && artifactProfile.includesSources()) {
+            addToCorpusIndex();
+        }
         //TODO ZIP template project to the desired output location (if the zip flag is used)
         //Remove temporary files
+        ProgressReporter.startStage("cleanup");
         cleanup();
+        ProgressReporter.endStage("cleanup", null);
+    }
+
+    /**
+     * Assembles the Android Studio project with the manifest and the classes
+     * of the application itself, which are decompiled before all classes are,
+     * and writes it to the output location. This allows the analyst to start
+     * with the most relevant code, while all classes are decompiled. The
+     * complete project is assembled afterwards, during which the early copies
+     * of the classes are replaced, as these were decompiled without the other
+     * classes of the APK.
+     *
+     * @throws IOException if something goes wrong with the file handling
+     * @throws ZipException if an archive cannot be extracted
+     * @throws FileNotFoundException if a file cannot be found (such as the
+     * AndroidManifest file)
+     */
+    public void assemblePriority() throws IOException, ZipException, FileNotFoundException {
+        ProgressReporter.startStage("template");
+        prepareTemplateProject();
+        ProgressReporter.endStage("template", new File(workspace.getTemplateFolder()));
+        ProgressReporter.startStage("copy-manifest");
+        copyManifest();
+        ProgressReporter.endStage("copy-manifest", new File(workspace.getTemplateManifestFile()));
+        ProgressReporter.startStage("copy-priority-sources");
+        copyPriorityJavaCode();
+        ProgressReporter.endStage("copy-priority-sources", new File(workspace.getTemplateSource()));
+        //The template project is copied rather than moved, as the remaining files are added to it once these are decompiled
+        ProgressReporter.startStage("output-priority");
+        try {
+            System.out.println("[+]Writing the classes of the application itself to the output folder");
+            outputLocation.mkdirs();
+            fileManager.copyFolder(new File(workspace.getTemplateFolder()), outputLocation);
+            System.out.println("[+]The classes of the application itself are available in " + outputLocation.getAbsolutePath() + ", the remaining classes are added once all classes are decompiled");
+            //The complete project is assembled from scratch, as the early copies of the classes are replaced
+            fileManager.delete(new File(workspace.getTemplateFolder()));
+        } catch (IOException ex) {
+            throw new IOException("Unable to copy the temporary project (\"" + new File(workspace.getTemplateFolder()).getAbsolutePath() + "\") to the desired output location (\"" + outputLocation.getAbsolutePath() + "\").");
+        }
+        ProgressReporter.endStage("output-priority", outputLocation);
     }
 
     /**
@@ -99,12 +232,12 @@ public class Assembler {
             //Read file
             System.out.println("[+]Reading Android Studio template project");
             //Create temp folder
-            File tempFile = new File(Constants.TEMP_LIBRARY_FOLDER);
+            File tempFile = new File(workspace.getFolder());
             tempFile.mkdir();
-            System.out.println("[+]Writing template to a temporary folder (" + Constants.TEMP_TEMPLATE_FOLDER + ")");
+            System.out.println("[+]Writing template to a temporary folder (" + workspace.getTemplateFolder() + ")");
             String androidStudioZipFileName = "/ap.zip";
-            File targetFile = new File(Constants.ANDROIDPROJECT_LIBRARY_FOLDER + androidStudioZipFileName);
-            File destinationFile = new File(Constants.TEMP_TEMPLATE_FOLDER);
+            File targetFile = new File(Constants.getAndroidProjectLibraryFolder() + androidStudioZipFileName);
+            File destinationFile = new File(workspace.getTemplateFolder());
             //Extract file
             System.out.println("[+]Extracting Android Studio template project");
             fileManager.extractArchive(targetFile.getAbsolutePath(), destinationFile.getAbsolutePath());
@@ -123,9 +256,9 @@ public class Assembler {
     private void copyResources() throws IOException {
         try {
             //Get the teporary resource folder location
-            File tempResourcesFolder = new File(Constants.TEMP_RESOURCES_FOLDER);
+            File tempResourcesFolder = new File(workspace.getResourcesFolder());
             //Copy the template resource folder
-            File templateResourceFolder = new File(Constants.TEMP_TEMPLATE_RESOURCES_FOLDER);
+            File templateResourceFolder = new File(workspace.getTemplateResourcesFolder());
             System.out.println("[+]Copying resources from the APK to the Android Studio project");
             //Copy the files
             fileManager.copyFolder(tempResourcesFolder, templateResourceFolder);
@@ -145,9 +278,9 @@ public class Assembler {
     private void copyManifest() throws FileNotFoundException, IOException {
         try {
             //The manifest
-            File tempManifest = new File(Constants.TEMP_MANIFEST_FILE);
+            File tempManifest = new File(workspace.getManifestFile());
             //Create file located in the Android Project
-            File templateManifest = new File(Constants.TEMP_TEMPLATE_MANIFEST_FILE);
+            File templateManifest = new File(workspace.getTemplateManifestFile());
             //Copy the xml file
             System.out.println("[+]Copying the AndroidManifest.xml from the APK to the Android Studio project");
             templateManifest.createNewFile();
@@ -180,9 +313,15 @@ public class Assembler {
     private void copyJavaCode() throws IOException {
         try {
             System.out.println("[+]Copying the decompiled Java source code from the APK to the Android Studio project");
-            File sourceLocation = new File(Constants.TEMP_SOURCES_FOLDER);
-            File sourceDest = new File(Constants.TEMP_TEMPLATE_SOURCE);
-            fileManager.copyFolder(sourceLocation, sourceDest);
+            File sourceLocation = new File(workspace.getSourcesFolder());
+            File sourceDest = new File(workspace.getTemplateSource());
+            if (sourceIndexer != null) {
+                //The Java files are indexed while these are copied, rather than read again afterwards
+                String path = new File(workspace.getTemplateFolder()).toPath().relativize(sourceDest.toPath()).toString().replace('\\', '/') + "/";
+                sourceIndexer.copyFolder(sourceLocation, sourceDest, path);
+            } else {
+                fileManager.copyFolder(sourceLocation, sourceDest);
+            }
             System.out.println("[+]Source code successfully copied");
         } catch (IOException ex) {
             throw new IOException("An error occurred when the decompiled Java code was copied to the template project!");
@@ -190,9 +329,84 @@ public class Assembler {
     }
 
     /**
-     * Copies the native libraries from the APK to the template project. APKTool
-     * only creates the lib folder, if there are libraries to extract from the
-     * APK, hence the check. If it is not found, it is skipped
+     * Copies the classes of the application itself, which are decompiled
+     * first if these are prioritized, to the template project in the temporary
+     * folder. These are not indexed, as they are replaced once all classes are
+     * decompiled.
+     *
+     * @throws IOException if the source code cannot be copied
+     */
+    private void copyPriorityJavaCode() throws IOException {
+        try {
+            System.out.println("[+]Copying the decompiled Java source code of the application itself to the Android Studio project");
+            fileManager.copyFolder(new File(workspace.getPrioritySourcesFolder()), new File(workspace.getTemplateSource()));
+        } catch (IOException ex) {
+            throw new IOException("An error occurred when the decompiled Java code was copied to the template project!");
+        }
+    }
+
+    /**
+     * Removes the early copies of the classes of the application itself from
+     * the output location, so that these are replaced by the classes that
+     * were decompiled together with all other classes
+     *
+     * @param folder the folder in the decompiled priority sources to remove
+     * the copies of
+     * @param outputFolder the matching folder in the output location
+     * @throws IOException if a copy cannot be removed
+     */
+    private void removePriorityOutput(File folder, File outputFolder) throws IOException {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            File outputFile = new File(outputFolder, file.getName());
+            if (file.isDirectory()) {
+                removePriorityOutput(file, outputFile);
+            } else {
+                Files.deleteIfExists(outputFile.toPath());
+            }
+        }
+    }
+
+    /**
+     * Writes the search index of the copied Java files to the root of the
+     * template project
+     *
+     * @throws IOException if the index cannot be written
+     */
+    private void writeSearchIndex() throws IOException {
+        System.out.println("[+]Writing the search index of " + sourceIndexer.getFileCount() + " Java files (" + sourceIndexer.getTermCount() + " unique terms)");
+        sourceIndexer.write(outputLocation.getAbsolutePath(), new File(workspace.getTemplateFolder(), Constants.SEARCH_INDEX_FILE_NAME));
+        System.out.println("[+]Search index written, use \"-search " + outputLocation.getAbsolutePath() + " term\" to query it");
+    }
+
+    /**
+     * Copies the search index of the project into the folder of the
+     * corpus-level index. The name of the copy is based on the output
+     * location, so that projects with the same name do not replace each
+     * other's index, while decompiling the same APK into the same location
+     * again does.
+     *
+     * @throws IOException if the index cannot be copied
+     */
+    private void addToCorpusIndex() throws IOException {
+        File corpusFolder = new File(corpusIndexFolder);
+        corpusFolder.mkdirs();
+        String name = outputLocation.getAbsoluteFile().getName() + "-" + fileManager.hash(outputLocation.getAbsolutePath()).substring(0, 12) + ".idx";
+        try {
+            Files.copy(new File(outputLocation, Constants.SEARCH_INDEX_FILE_NAME).toPath(), new File(corpusFolder, name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            throw new IOException("The search index cannot be added to the corpus index (" + corpusFolder.getAbsolutePath() + ")!");
+        }
+        System.out.println("[+]Added the search index to the corpus index in " + corpusFolder.getAbsolutePath());
+    }
+
+    /**
+     * Moves the native libraries from the APK to the template project. The lib
+     * folder is only created if there are libraries to extract from the APK,
+     * hence the check. If it is not found, it is skipped
      *
      * @throws IOException when something goes wrong during the copying of the
      * libraries
@@ -200,14 +414,14 @@ public class Assembler {
     private void copyNativeLibraries() throws IOException {
         try {
             System.out.println("[+]Looking for native libraries");
-            File apkLibraryFolder = new File(Constants.TEMP_LIB_FOLDER);
+            File apkLibraryFolder = new File(workspace.getLibFolder());
             if (apkLibraryFolder.exists() && apkLibraryFolder.isDirectory()) {
                 System.out.println("[+]Native libraries found!");
-                System.out.println("[+]Copying native lbraries to the template project");
-                File templateLibraryFolder = new File(Constants.TEMP_TEMPLATE_LIBS_FOLDER);
-                templateLibraryFolder.mkdir();
-                fileManager.copyFolder(apkLibraryFolder, templateLibraryFolder);
-                System.out.println("[+]Native libraries succesfully copied!");
+                System.out.println("[+]Moving native libraries to the template project");
+                File templateLibraryFolder = new File(workspace.getTemplateLibsFolder());
+                //The libraries are extracted directly from the APK into the temporary folder, so they can be moved instead of copied
+                fileManager.moveFolder(apkLibraryFolder, templateLibraryFolder);
+                System.out.println("[+]Native libraries succesfully moved!");
                 return;
             }
             System.out.println("[+]No native libraries found, skipping this step.");
@@ -225,11 +439,11 @@ public class Assembler {
     private void copySmaliFiles() throws IOException {
         try {
             System.out.println("[+]Looking for SMALI files");
-            File apkSmaliFolder = new File(Constants.TEMP_SMALI_FOLDER);
+            File apkSmaliFolder = new File(workspace.getSmaliFolder());
             if (apkSmaliFolder.exists() && apkSmaliFolder.isDirectory()) {
                 System.out.println("[+]SMALI files found!");
                 System.out.println("[+]Copying the SMALI files to the template project");
-                File templateSmaliFolder = new File(Constants.TEMP_TEMPLATE_SMALI_FOLDER);
+                File templateSmaliFolder = new File(workspace.getTemplateSmaliFolder());
                 templateSmaliFolder.mkdir();
                 fileManager.copyFolder(apkSmaliFolder, templateSmaliFolder);
                 System.out.println("[+]SMALI files succesfully copied!");
@@ -242,21 +456,21 @@ public class Assembler {
     }
 
     /**
-     * Copies assets from the APK to the resource folder of the template project
+     * Moves assets from the APK to the resource folder of the template project
      *
      * @throws IOException
      */
     private void copyAssets() throws IOException {
         try {
             System.out.println("[+]Looking for assets");
-            File apkAssetFolder = new File(Constants.TEMP_ASSET_FOLDER);
+            File apkAssetFolder = new File(workspace.getAssetFolder());
             if (apkAssetFolder.exists() && apkAssetFolder.isDirectory()) {
                 System.out.println("[+]Assets found!");
-                System.out.println("[+]Copying assets to the template project");
-                File templateAssetFolder = new File(Constants.TEMP_TEMPLATE_ASSET_FOLDER);
-                templateAssetFolder.mkdir();
-                fileManager.copyFolder(apkAssetFolder, templateAssetFolder);
-                System.out.println("[+]Assets succesfully copied!");
+                System.out.println("[+]Moving assets to the template project");
+                File templateAssetFolder = new File(workspace.getTemplateAssetFolder());
+                //The assets are extracted directly from the APK into the temporary folder, so they can be moved instead of copied
+                fileManager.moveFolder(apkAssetFolder, templateAssetFolder);
+                System.out.println("[+]Assets succesfully moved!");
                 return;
             }
             System.out.println("[+]No assets found, skipping this step.");
@@ -274,13 +488,20 @@ public class Assembler {
     private void copyTemplateToOutputFolder() throws IOException {
         try {
             System.out.println("[+]Copying temp folder to output folder");
-            File tempProject = new File(Constants.TEMP_TEMPLATE_FOLDER);
+            File tempProject = new File(workspace.getTemplateFolder());
             //Make sure the output location (and its parents) exists
             outputLocation.mkdirs();
-            fileManager.copyFolder(tempProject, outputLocation);
+            if (dedupStoreFolder != null) {
+                //Identical files are only stored once and are linked into the output location
+                DedupStore dedupStore = new DedupStore(new File(dedupStoreFolder));
+                dedupStore.moveFolder(tempProject, outputLocation);
+                System.out.println("[+]" + dedupStore.getDuplicateCount() + " of the " + dedupStore.getFileCount() + " files were already present in the deduplicated store, saving " + dedupStore.getDuplicateBytes() / 1024 + " KB");
+            } else {
+                fileManager.copyFolder(tempProject, outputLocation);
+            }
             System.out.println("[+]Output folder succesfully populated!");
         } catch (IOException ex) {
-            throw new IOException("Unable to copy the temporary project (\"" + new File(Constants.TEMP_TEMPLATE_FOLDER).getAbsolutePath() + "\") to the desired output location (\"" + outputLocation.getAbsolutePath() + "\").");
+            throw new IOException("Unable to copy the temporary project (\"" + new File(workspace.getTemplateFolder()).getAbsolutePath() + "\") to the desired output location (\"" + outputLocation.getAbsolutePath() + "\").");
         }
     }
 
@@ -293,7 +514,7 @@ public class Assembler {
     private void cleanup() throws IOException {
         try {
             System.out.println("[+]Cleaning the temporary files folder");
-            fileManager.delete(new File(Constants.TEMP_LIBRARY_FOLDER));
+            fileManager.delete(new File(workspace.getFolder()));
             System.out.println("[+]Cleanup complete");
         } catch (IOException ex) {
             throw new IOException("An error occurred during the removal of the temporary files");
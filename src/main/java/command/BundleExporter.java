@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package command;
+
+import apc.FileManager;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import library.Constants;
+import library.Repositories;
+import model.ArgumentPackage;
+import model.Repository;
+
+/**
+ * Exports the repositories of all tools as Git bundles, which can be used as a
+ * mirror to install or update AndroidProjectCreator on machines without
+ * internet access.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class BundleExporter {
+
+    /**
+     * The arguments that were provided by the user
+     */
+    private final ArgumentPackage argumentPackage;
+
+    /**
+     * Exports the repositories of all tools as Git bundles
+     *
+     * @param argumentPackage the arguments that were provided by the user
+     */
+    public BundleExporter(ArgumentPackage argumentPackage) {
+        this.argumentPackage = argumentPackage;
+    }
+
+    /**
+     * Clones each repository as a bare repository into a temporary folder,
+     * and writes its branch into a bundle named after the repository (i.e.
+     * "jadx.bundle") in the output folder. The temporary folder is removed
+     * afterwards.
+     *
+     * @throws IOException if a repository cannot be cloned, or if a bundle
+     * cannot be written
+     */
+    public void export() throws IOException {
+        File bundleFolder = new File(argumentPackage.getParameters().get(0));
+        bundleFolder.mkdirs();
+        List<Repository> repositories = Repositories.getAll();
+        repositories.add(Repositories.getCompact());
+        //An existing mirror can be used as the source, i.e. to refresh the bundles from another mirror
+        if (argumentPackage.hasOption("mirror")) {
+            repositories = Repositories.resolveMirror(repositories, new File(argumentPackage.getOption("mirror")));
+        }
+        FileManager fileManager = new FileManager();
+        File temporaryFolder = new File(Constants.DEFAULT_SCRATCH_ROOT + "/bundles-" + UUID.randomUUID().toString());
+        try {
+            for (Repository repository : repositories) {
+                File bundle = new File(bundleFolder, repository.getMirrorName() + ".bundle");
+                System.out.println("[+]Exporting " + repository.getName() + " to " + bundle.getAbsolutePath());
+                Repository bareRepository = new Repository(repository.getName(), repository.getUrl(), new File(temporaryFolder, repository.getMirrorName() + ".git"), repository.getBranch());
+                bareRepository.exportBundle(bundle);
+                System.out.println("[+]Finished exporting " + repository.getName());
+            }
+        } finally {
+            fileManager.delete(temporaryFolder);
+        }
+        System.out.println("[+]All bundles have been exported to " + bundleFolder.getAbsolutePath());
+    }
+}
@@ -16,13 +16,20 @@
  */
 package command;
 
+import apc.FileManager;
+import apc.GenerationManager;
 import apc.RepositoryManager;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import library.Constants;
+import library.Repositories;
+import library.Tools;
+import model.ArgumentPackage;
+import model.LibraryLease;
 import model.Repository;
+import model.Tool;
 
 /**
  * Handles the compact installation of all required tools for
@@ -32,25 +39,66 @@ import model.Repository;
  */
 public class CompactInstaller {
 
+    /**
+     * The arguments that were provided by the user
+     */
+    private final ArgumentPackage argumentPackage;
+
+    /**
+     * Handles the compact installation of all required tools for
+     * AndroidProjectCreator
+     *
+     * @param argumentPackage the arguments that were provided by the user
+     */
+    public CompactInstaller(ArgumentPackage argumentPackage) {
+        this.argumentPackage = argumentPackage;
+    }
+
     /**
      * Performs the compact installation of the required tools by cloning a
-     * repository directly into the library folder
+     * repository that contains precompiled versions of them. If decompilers
+     * are selected, only those are checked out, together with APKTool, Dex2Jar
+     * and the Android Studio project template. The tools are then moved into a
+     * new generation of the library and recorded in its manifest, after which
+     * the generation becomes the active generation once it is verified.
      */
     public void install() throws IOException, InterruptedException, Exception {
         System.out.println("[+]Starting the installation");
         RepositoryManager repositoryManager = new RepositoryManager();
+        FileManager fileManager = new FileManager();
         System.out.println("[+]Starting cloning the repositories");
-        List<Repository> repository = new ArrayList<>();
-        String name = "CompactInstall version 1.1 (dated 11-05-2021)";
-        String url = "https://github.com/thisislibra/apc-compact.git";
-        File directory = new File(Constants.LIBRARY_FOLDER);
-        String branch = "11-05-2021";
-        repository.add(new Repository(name, url, directory, branch));
-        repositoryManager.cloneRepositories(repository);
+        Repository repository = Repositories.getCompact();
+        //Use the local mirror instead of Github, if one is provided
+        if (argumentPackage.hasOption("mirror")) {
+            repository = repository.resolveMirror(new File(argumentPackage.getOption("mirror")));
+        }
+        //If decompilers are selected, only the folders of the required tools are checked out
+        List<Tool> tools = Tools.getSelection(argumentPackage.getParameters());
+        List<String> toolNames = Tools.getNames(tools);
+        List<String> paths = argumentPackage.getParameters().isEmpty() ? new ArrayList<>() : toolNames;
+        //A left over clone of a previous installation is replaced, as it might be incomplete
+        fileManager.delete(repository.getDirectory());
+        System.out.println("[+]Started cloning " + repository.getName());
+        repository.cloneRepository(argumentPackage.getIntOption("depth", Constants.DEFAULT_CLONE_DEPTH), paths);
         System.out.println("[+]Cloning finished");
-        System.out.println("[+]Verifying the toolset");
-        repositoryManager.verifyInstallation();
-        System.out.println("[+]Verification succesful!");
+        //The tools are installed in a new generation, so that running decompilations are not affected
+        GenerationManager generationManager = new GenerationManager();
+        try (LibraryLease generation = generationManager.createGeneration()) {
+            File generationFolder = generation.getGenerationFolder();
+            for (String toolName : toolNames) {
+                fileManager.moveFolder(new File(repository.getDirectory(), toolName), new File(generationFolder, toolName));
+            }
+            //The tools are recorded, so that an update and a verification know which tools are installed
+            repositoryManager.writeCompactManifest(toolNames, generationFolder, repository);
+            System.out.println("[+]Verifying the toolset");
+            repositoryManager.verifyInstallation(generationFolder, toolNames);
+            System.out.println("[+]Verification succesful!");
+            generationManager.activate(generationFolder);
+            System.out.println("[+]Activated library generation " + generationFolder.getName());
+        } finally {
+            fileManager.delete(repository.getDirectory());
+        }
+        generationManager.collectGarbage();
         System.out.println("[+]Installation complete!");
     }
 }
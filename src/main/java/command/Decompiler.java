@@ -16,14 +16,47 @@
  */
 package command;
 
+import apc.ApkExtractor;
+import apc.ChecksumVerifier;
+import apc.DecompilationProgressMonitor;
+import apc.DecompilerOptionsManager;
 import apc.FileManager;
+import apc.FingerprintIndex;
+import apc.InProcessPipeline;
+import apc.JarFilter;
+import apc.ManifestReader;
+import apc.ProgressReporter;
+import enumeration.ArtifactProfile;
 import enumeration.DecompilerType;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import library.Constants;
 import library.ProjectInfos;
+import library.Tools;
 import model.ArgumentPackage;
 import model.Command;
+import model.DecompilerOptions;
+import model.LibraryManifest;
+import model.PackageFilter;
+import model.Workspace;
 import net.lingala.zip4j.exception.ZipException;
 
 /**
@@ -36,8 +69,135 @@ public class Decompiler {
 
     private final ArgumentPackage argumentPackage;
 
-    public Decompiler(ArgumentPackage argumentPackage) {
+    /**
+     * The workspace of this job, in which all temporary files are written
+     */
+    private final Workspace workspace;
+
+    /**
+     * The manager that determines the threads, memory and other options of
+     * each decompiler
+     */
+    private final DecompilerOptionsManager optionsManager;
+
+    /**
+     * The filter that decides which classes are decompiled, based on the
+     * included and excluded packages
+     */
+    private PackageFilter packageFilter;
+
+    /**
+     * The fingerprint index of known library classes, or null if classes are
+     * not matched against known libraries
+     */
+    private final String fingerprintIndexFile;
+
+    /**
+     * The filter that selects the classes of the application itself, which
+     * are decompiled before all classes are, or null if all classes are
+     * decompiled at once
+     */
+    private PackageFilter priorityFilter;
+
+    /**
+     * The decompilation of all classes, which runs in the background once
+     * the classes of the application itself are decompiled, or null if all
+     * classes are decompiled at once
+     */
+    private Future<Void> remainingDecompilation;
+
+    /**
+     * The pipeline that runs Dex2Jar and Fernflower within this process, or
+     * null if all tools are started as a separate process
+     */
+    private final InProcessPipeline inProcessPipeline;
+
+    /**
+     * The profile that defines which parts of the APK are required, of which
+     * the others are not decoded or decompiled
+     */
+    private final ArtifactProfile artifactProfile;
+
+    /**
+     * The service that extracts the raw files from the APK in the background,
+     * which is stopped if one of the extractions fails
+     */
+    private ExecutorService extractionService;
+
+    public Decompiler(ArgumentPackage argumentPackage, Workspace workspace) {
         this.argumentPackage = argumentPackage;
+        this.workspace = workspace;
+        this.optionsManager = new DecompilerOptionsManager(argumentPackage);
+        this.packageFilter = createPackageFilter(new ArrayList<>());
+        this.fingerprintIndexFile = argumentPackage.getOption("index");
+        this.inProcessPipeline = argumentPackage.isOptionEnabled("in-process") ? new InProcessPipeline() : null;
+        if (inProcessPipeline != null && argumentPackage.hasOption("memory")) {
+            System.out.println("[+]Dex2Jar and Fernflower run within this process, meaning the heap size of --memory only applies to the other tools. Use the -Xmx flag of Java to change the heap size of this process instead");
+        }
+        this.artifactProfile = argumentPackage.getArtifactProfile();
+    }
+
+    /**
+     * Creates the filter that decides which classes are decompiled, based on
+     * the included and excluded packages. If well-known libraries are skipped,
+     * their packages are excluded as well.
+     *
+     * @param keeps the packages and classes that are not skipped as a
+     * well-known library
+     * @return the filter
+     */
+    private PackageFilter createPackageFilter(List<String> keeps) {
+        List<String> excludes = new ArrayList<>(argumentPackage.getListOption("exclude"));
+        if (argumentPackage.isOptionEnabled("skip-libraries")) {
+            excludes.addAll(Constants.WELL_KNOWN_LIBRARIES);
+        }
+        return new PackageFilter(argumentPackage.getListOption("include"), excludes, keeps);
+    }
+
+    /**
+     * Checks if classes are removed from the converted JAR before it is
+     * decompiled, which is the case if packages are filtered or if classes are
+     * matched against known libraries
+     *
+     * @return true if the converted JAR is filtered, false if not
+     */
+    private boolean isJarFiltered() {
+        return packageFilter.isEmpty() == false || fingerprintIndexFile != null;
+    }
+
+    /**
+     * Gets the JAR with the classes that were removed from the converted JAR,
+     * which Fernflower and CFR use as a library to resolve the types that the
+     * remaining classes refer to
+     *
+     * @return the library JAR, or null if no classes were removed
+     */
+    private File getLibraryJar() {
+        File libraryJar = new File(workspace.getLibraryJar());
+        return libraryJar.isFile() ? libraryJar : null;
+    }
+
+    /**
+     * Checks if the classes of the application itself are decompiled first,
+     * after which all classes are decompiled in the background
+     *
+     * @return true if the classes of the application are decompiled first,
+     * false if all classes are decompiled at once
+     */
+    public boolean isPrioritized() {
+        return priorityFilter != null;
+    }
+
+    /**
+     * Checks if JADX decompiles the APK directly, which is not possible if
+     * the converted JAR is filtered, or if the classes of the application are
+     * decompiled first
+     *
+     * @return true if JADX decompiles the APK, false if it decompiles the
+     * converted JAR
+     */
+    private boolean isApkDecompiled() {
+        return isJarFiltered() == false && isPrioritized() == false;
     }
 
     /**
@@ -53,11 +213,50 @@ public class Decompiler {
         boolean isWindows = Constants.isWindows();
         String command;
         File workingDirectory;
+        //The classes that match a class of a known library, which are not decompiled
+        Map<String, String> knownClasses = new TreeMap<>();
+        //The options of APKTool and of the selected decompiler, based on the available cores and memory, unless overridden by the user
+        DecompilerOptions apktoolOptions = optionsManager.getOptions(DecompilerType.APKTOOL);
+        DecompilerOptions options = optionsManager.getOptions(argumentPackage.getDecompilerType());
+        System.out.println("[+]Using " + options.getThreads() + " thread(s) and " + options.getMemory() + " MB of memory for " + options.getDecompilerType());
+        verifyTools();
 
         //Decode the APK with APKTool
-        File apkOutput = new File(Constants.TEMP_LIBRARY_FOLDER);
+        File apkOutput = new File(workspace.getFolder());
         System.out.println("[+]Decompiling the APK to a temporary location (" + apkOutput.getAbsolutePath() + ")");
         apkOutput.mkdirs();
+
+        /**
+         * The native libraries, assets and DEX files are stored as-is in the
+         * APK, meaning they do not need to be decoded by APKTool. These are
+         * streamed directly from the APK while APKTool decodes the manifest and
+         * the resources.
+         */
+        System.out.println("[+]Extracting the native libraries, assets and DEX files from the APK");
+        File rawFolder = new File(workspace.getRawFolder());
+        ApkExtractor apkExtractor = new ApkExtractor(argumentPackage.getApk());
+        extractionService = Executors.newFixedThreadPool(2);
+        //Files that are not required for the artifact profile are not extracted
+        Future<Integer> dexExtraction = CompletableFuture.completedFuture(0);
+        if (artifactProfile.includesSources()) {
+            dexExtraction = extractionService.submit(() -> {
+                ProgressReporter.startStage("extract-dex");
+                int count = apkExtractor.extractDexFiles(rawFolder);
+                ProgressReporter.endStage("extract-dex", rawFolder);
+                return count;
+            });
+        }
+        Future<Integer> folderExtraction = CompletableFuture.completedFuture(0);
+        if (artifactProfile.includesRawFiles()) {
+            folderExtraction = extractionService.submit(() -> {
+                ProgressReporter.startStage("extract-folders");
+                int count = apkExtractor.extractFolders(rawFolder, "lib/", "assets/");
+                ProgressReporter.endStage("extract-folders", new File(workspace.getLibFolder()).getParentFile());
+                return count;
+            });
+        }
+        extractionService.shutdown();
+
         /**
          * First the 'd' is provided to enable 'decoding'.
          *
@@ -66,9 +265,13 @@ public class Decompiler {
          *
          * The '-s' command is used to keep the classes.dex file (instead of
          * decompiling it to smali code). This speeds up the process of decoding
-         * the APK. Additionally, the classes.dex file is used by the
-         * decompilers. Without the '-s' flag, the classes.dex file is not
-         * present in the decoded output
+         * the APK. The DEX files that the decompilers use are extracted
+         * directly from the APK instead. APKTool has no flag to skip the
+         * copying of the DEX files and the native libraries, meaning its
+         * copies are removed once it is finished.
+         *
+         * The flag '--no-assets' avoids the copying of the assets, which are
+         * extracted directly from the APK.
          *
          * The '-o' command requires one more parameter behind it. This
          * specifies the output directory
@@ -81,50 +284,82 @@ public class Decompiler {
          * The '-k' command allows broken resources to be decoded although the
          * project will then not be compilable. This is not a problem, since the
          * output of APC isn't fully buildable anyway.
+         *
+         * The '-r' command avoids the decoding of the resources if these are
+         * not part of the artifact profile, in which case '--force-manifest'
+         * still decodes the AndroidManifest.xml
          */
         System.out.println("[+]Calling APKTool to decompile the AndroidManifest.xml and the application resources");
         if (isWindows) {
-            command = "java -jar apktool-cli-all.jar";
+            command = "java " + apktoolOptions.getJvmMemoryFlag() + " -jar apktool-cli-all.jar";
         } else {
-            command = "java -jar ./apktool-cli-all.jar";
+            command = "java " + apktoolOptions.getJvmMemoryFlag() + " -jar ./apktool-cli-all.jar";
         }
         //Append the flags and the file paths to the commands. These are the same on any platform due to the Java runtime
-        command += " d -f -s -m -k -o " + encapsulate(new File(Constants.TEMP_LIBRARY_FOLDER + "/apktool").getAbsolutePath()) + " " + encapsulate(argumentPackage.getApk().getAbsolutePath());
+        command += " d -f -s --no-assets -m -k";
+        if (artifactProfile.includesResources() == false) {
+            command += " -r --force-manifest";
+        }
+        command += " -o " + encapsulate(new File(workspace.getFolder() + "/apktool").getAbsolutePath()) + " " + encapsulate(argumentPackage.getApk().getAbsolutePath());
 
-        workingDirectory = new File(Constants.APKTOOL_LIBRARY_FOLDER);
-        executeCommand(DecompilerType.APKTOOL, command, workingDirectory);
+        workingDirectory = new File(Constants.getApktoolLibraryFolder());
+        ProgressReporter.startStage("apktool-resources");
+        try {
+            executeCommand(DecompilerType.APKTOOL, command, workingDirectory);
+        } catch (IOException | InterruptedException ex) {
+            //The extraction is stopped, as the workspace is removed once the error is handled
+            extractionService.shutdownNow();
+            throw ex;
+        }
+        removeApktoolRawFiles();
+        ProgressReporter.endStage("apktool-resources", new File(workspace.getFolder() + "/apktool"));
 
-        /**
-         * Use APKTool again for the SMALI files, cant be done at once because
-         * one either gets the 'classes.dex' file or the .smali files
-         *
-         * The flag '--no-assets' avoids the decoding of assets in the APK,
-         * which are already extracted in the previous call of APKTool.
-         *
-         * The '--no-res' avoids the decoding of resources, which is also done
-         * in the previous call of APKTool.
-         *
-         */
-        System.out.println("[+]Calling APKTool to obtain the SMALI code");
-        if (isWindows) {
-            command = "java -jar apktool-cli-all.jar";
-        } else {
-            command = "java -jar ./apktool-cli-all.jar";
+        //The remaining stages produce the SMALI code and the Java sources, which are skipped if neither is part of the artifact profile
+        if (artifactProfile.includesSources() == false) {
+            System.out.println("[+]The " + artifactProfile.toString().toLowerCase().replace('_', '-') + " profile does not include the Java sources, the decompilation is skipped");
+            if (artifactProfile.includesSmali()) {
+                decodeSmali(apktoolOptions);
+            }
+            awaitExtraction(folderExtraction);
+            return;
         }
-        //Append the flags and the file paths to the commands. These are the same on any platform due to the Java runtime
-        command += " d -f --no-assets --no-res -m -o " + encapsulate(new File(Constants.TEMP_LIBRARY_FOLDER + "/apktool-smali").getAbsolutePath()) + " " + encapsulate(argumentPackage.getApk().getAbsolutePath());
 
-        workingDirectory = new File(Constants.APKTOOL_LIBRARY_FOLDER);
-        executeCommand(DecompilerType.APKTOOL, command, workingDirectory);
+        //The package of the application and its components are never skipped as a well-known library (i.e. com.google) or as a known class
+        PackageFilter applicationFilter = null;
+        if (argumentPackage.isOptionEnabled("skip-libraries") || fingerprintIndexFile != null) {
+            ManifestReader manifestReader = new ManifestReader(new File(workspace.getManifestFile()));
+            List<String> applicationClasses = new ArrayList<>(manifestReader.getComponents());
+            if (manifestReader.getPackageName().isEmpty() == false) {
+                applicationClasses.add(manifestReader.getPackageName());
+            }
+            if (argumentPackage.isOptionEnabled("skip-libraries")) {
+                packageFilter = createPackageFilter(applicationClasses);
+            }
+            if (applicationClasses.isEmpty() == false) {
+                applicationFilter = new PackageFilter(applicationClasses, new ArrayList<>());
+            }
+        }
+
+        //The classes of the application itself are decompiled first if requested, which requires the package of the application from the manifest
+        if (argumentPackage.isOptionEnabled("priority")) {
+            priorityFilter = createPriorityFilter();
+        }
+
+        //The SMALI code is not required for the classes that are decompiled first, meaning it is decoded in the background if these are prioritized
+        if (isPrioritized() == false && artifactProfile.includesSmali()) {
+            decodeSmali(apktoolOptions);
+        }
 
         //TODO before the combine functionality is added, add a temporary "copy all classes[n].dex files to the template project's assets folder" method
         //TODO Combine classes[N].dex files into classes.dex to decompile every part of the binary, should be optional since it can exceed 64k functions. Use /Users/[name]/Library/Android/sdk/build-tools/28.0.2/lib/dx.jar com.android.dx.merge.DexMerger output.dex part1.dex part2.dex
         //Source for code: https://stackoverflow.com/questions/11257378/is-there-a-way-to-merge-two-or-more-dex-files-into-one-dex-file-using-scala
         /**
          * JADX can decompile an APK directly, therefore its more efficient to
-         * skip this step if the JADX decompiler has been selected.
+         * skip this step if the JADX decompiler has been selected. If the JAR
+         * is filtered or the classes of the application are decompiled first,
+         * JADX decompiles the JAR instead.
          */
-        if (argumentPackage.getDecompilerType().equals(DecompilerType.JADX) == false) {
+        if (argumentPackage.getDecompilerType().equals(DecompilerType.JADX) == false || isApkDecompiled() == false) {
             //Convert the classes.dex to a JAR file for later use
             /**
              * Convert the classes.dex to a JAR (use the "sh" in front since the
@@ -144,52 +379,167 @@ public class Decompiler {
                 command = "sh ./d2j-dex2jar.sh";
             }
             //Append the flags and the file paths to the commands. These are the same on any platform due to the Java runtime
-            command += " -n -f -o " + encapsulate(new File(Constants.TEMP_CONVERTED_JAR).getAbsolutePath()) + " " + encapsulate(new File(Constants.TEMP_LIBRARY_FOLDER + "/apktool/classes.dex").getAbsolutePath());
-            workingDirectory = new File(Constants.DEX2JAR_LIBRARY_FOLDER);
-            executeCommand(DecompilerType.DEX2JAR, command, workingDirectory);
+            awaitExtraction(dexExtraction);
+            command += " -n -f -o " + encapsulate(new File(workspace.getConvertedJar()).getAbsolutePath()) + " " + encapsulate(new File(workspace.getRawFolder() + "/classes.dex").getAbsolutePath());
+            workingDirectory = new File(Constants.getDex2JarLibraryFolder());
+            ProgressReporter.startStage("dex2jar");
+            //The command line interface is used if the conversion is not done in process, or if it cannot be done in process
+            if (inProcessPipeline == null || inProcessPipeline.convert(new File(workspace.getRawFolder() + "/classes.dex"), new File(workspace.getConvertedJar())) == false) {
+                executeCommand(DecompilerType.DEX2JAR, command, workingDirectory);
+            }
+            ProgressReporter.endStage("dex2jar", new File(workspace.getConvertedJar()));
+
+            //Remove the classes that should not be decompiled, as the time the decompiler requires depends on the amount of classes
+            if (isJarFiltered()) {
+                System.out.println("[+]Removing the classes of the excluded packages and known libraries from the converted JAR");
+                ProgressReporter.startStage("filter");
+                FingerprintIndex fingerprintIndex = fingerprintIndexFile == null ? null : new FingerprintIndex(new File(fingerprintIndexFile));
+                JarFilter jarFilter = new JarFilter(packageFilter, fingerprintIndex, applicationFilter);
+                jarFilter.filter(new File(workspace.getConvertedJar()), new File(workspace.getLibraryJar()));
+                knownClasses.putAll(jarFilter.getKnownClasses());
+                ProgressReporter.endStage("filter", new File(workspace.getConvertedJar()));
+                System.out.println("[+]Removed " + jarFilter.getRemovedCount() + " classes (of which " + knownClasses.size() + " are part of a known library), " + jarFilter.getKeptCount() + " classes remain to be decompiled");
+            }
+
+            //Copy the classes of the application itself into a separate JAR, which is decompiled first
+            if (isPrioritized()) {
+                ProgressReporter.startStage("priority-jar");
+                int priorityCount = new JarFilter(priorityFilter).copyAccepted(new File(workspace.getConvertedJar()), new File(workspace.getPriorityJar()));
+                ProgressReporter.endStage("priority-jar", new File(workspace.getPriorityJar()));
+                System.out.println("[+]Copied " + priorityCount + " classes of the application itself into a separate JAR, which is decompiled first");
+            }
         }
 
         //Ensure that the output directory for the source code exists
-        new File(Constants.TEMP_SOURCES_FOLDER).mkdir();
+        new File(workspace.getSourcesFolder()).mkdir();
+        if (knownClasses.isEmpty() == false) {
+            writeKnownClasses(knownClasses);
+        }
 
+        //The decompiler counts the classes in the DEX files if the progress is reported, which requires these to be extracted
+        if (ProgressReporter.isEnabled()) {
+            awaitExtraction(dexExtraction);
+        }
+        File convertedJar = new File(workspace.getConvertedJar());
+        File sourcesFolder = new File(workspace.getSourcesFolder());
+        if (isPrioritized()) {
+            //Decompile the classes of the application itself, which the assembler writes to the output folder while the complete JAR is decompiled
+            File priorityJar = new File(workspace.getPriorityJar());
+            File prioritySourcesFolder = new File(workspace.getPrioritySourcesFolder());
+            prioritySourcesFolder.mkdir();
+            runDecompiler(options, priorityJar, prioritySourcesFolder, "decompile-priority", priorityFilter, knownClasses.keySet());
+            //The complete JAR includes the classes of the application, which are decompiled again with the other classes available, and then replace the early copies
+            System.out.println("[+]The classes of the application itself have been decompiled, all classes are decompiled in the background");
+            ExecutorService remainingService = Executors.newSingleThreadExecutor();
+            remainingDecompilation = remainingService.submit(() -> {
+                try {
+                    if (artifactProfile.includesSmali()) {
+                        decodeSmali(apktoolOptions);
+                    }
+                    runDecompiler(options, convertedJar, sourcesFolder, "decompile", packageFilter, knownClasses.keySet());
+                } finally {
+                    closeInProcessPipeline();
+                }
+                return null;
+            });
+            remainingService.shutdown();
+        } else {
+            try {
+                runDecompiler(options, convertedJar, sourcesFolder, "decompile", packageFilter, knownClasses.keySet());
+            } finally {
+                closeInProcessPipeline();
+            }
+        }
+
+        //Ensure that all files have been extracted from the APK before the assembler uses them
+        awaitExtraction(dexExtraction);
+        awaitExtraction(folderExtraction);
+    }
+
+    /**
+     * Creates the command that decompiles the given JAR with the selected
+     * decompiler. JADX and JEB3 decompile the APK itself instead, unless the
+     * converted JAR is filtered or the classes of the application are
+     * decompiled first (which JEB3 does not support).
+     *
+     * @param options the options of the selected decompiler
+     * @param inputJar the JAR to decompile
+     * @param sourcesFolder the folder to write the Java files to
+     * @return the command, including the working directory in which it is
+     * executed
+     * @throws IOException if the decompiler is not supported
+     */
+    private Command createDecompileCommand(DecompilerOptions options, File inputJar, File sourcesFolder) throws IOException {
+        boolean isWindows = Constants.isWindows();
+        String command;
+        File workingDirectory;
         //Handle each decompiler with different commands
         switch (argumentPackage.getDecompilerType()) {
             case FERNFLOWER:
-                //TODO implement rename option
-                //use -ren=1 for rename
+                /**
+                 * -ren=1 renames ambiguous (i.e. obfuscated) classes and class
+                 * elements, if deobfuscation is enabled
+                 */
                 if (isWindows) {
-                    command = "java -jar fernflower.jar";
+                    command = "java " + options.getJvmMemoryFlag() + " -jar fernflower.jar";
                 } else {
-                    command = "java -jar ./fernflower.jar";
+                    command = "java " + options.getJvmMemoryFlag() + " -jar ./fernflower.jar";
+                }
+                if (options.isDeobfuscate()) {
+                    command += " -ren=1";
+                }
+                //-e adds the classes that were removed from the JAR as a library, so that the remaining classes refer to their types
+                if (getLibraryJar() != null) {
+                    command += " -e=" + encapsulate(getLibraryJar().getAbsolutePath());
                 }
                 //Append the flags and the file paths to the commands. These are the same on any platform due to the Java runtime
-                command += " " + encapsulate(new File(Constants.TEMP_CONVERTED_JAR).getAbsolutePath()) + " " + encapsulate(new File(Constants.TEMP_SOURCES_FOLDER).getAbsolutePath());
-                workingDirectory = new File(Constants.FERNFLOWER_LIBRARY_FOLDER);
+                command += " " + encapsulate(inputJar.getAbsolutePath()) + " " + encapsulate(sourcesFolder.getAbsolutePath());
+                workingDirectory = new File(Constants.getFernflowerLibraryFolder());
                 break;
             case JADX:
                 /**
                  * -d sets output dir
                  *
+                 * -ds sets the output dir for the sources, which is the
+                 * temporary sources folder to avoid moving the output
+                 * afterwards
+                 *
                  * -r avoids resources (got these with APKTool already)
                  *
                  * --escape-unicode to escape unicode characters
                  *
+                 * -j sets the amount of threads that decompile classes
+                 *
                  * --deobf to enable deobfuscation
                  *
-                 * --deobf-min minimum length of the new names
+                 * --deobf-min minimum length of the names, shorter names are
+                 * renamed
+                 *
+                 * --deobf-max maximum length of the names, longer names are
+                 * renamed
                  *
-                 * --deobf-max maximum length of the new names
+                 * The heap size is passed to the JVM via the JADX_OPTS
+                 * environment variable, which is read by the start scripts
                  */
-                //TODO implement deobfuscation parameters
                 if (isWindows) {
-                    command = "jadx.bat";
+                    command = "set \"JADX_OPTS=" + options.getJvmMemoryFlag() + "\" && jadx.bat";
                 } else {
                     //Add extra shell here to avoid the need to chmod +x the shell script
-                    command = "sh ./jadx";
+                    command = "JADX_OPTS=" + options.getJvmMemoryFlag() + " sh ./jadx";
+                }
+                command += " -j " + options.getThreads();
+                if (options.isDeobfuscate()) {
+                    command += " --deobf --deobf-min " + options.getDeobfuscationMinLength() + " --deobf-max " + options.getDeobfuscationMaxLength();
                 }
                 //Append the flags and the file paths to the commands. These are the same on any platform due to the Java runtime
-                command += " -r --escape-unicode -d " + encapsulate(new File(Constants.TEMP_LIBRARY_FOLDER).getAbsolutePath()) + " " + encapsulate(argumentPackage.getApk().getAbsolutePath());
-                workingDirectory = new File(Constants.JADX_LIBRARY_FOLDER);
+                command += " -r --escape-unicode -d " + encapsulate(new File(workspace.getFolder()).getAbsolutePath()) + " -ds " + encapsulate(sourcesFolder.getAbsolutePath());
+                //If the JAR is filtered or the classes of the application are decompiled first, the given JAR is decompiled instead of the APK
+                if (isApkDecompiled()) {
+                    command += " " + encapsulate(argumentPackage.getApk().getAbsolutePath());
+                } else {
+                    command += " " + encapsulate(inputJar.getAbsolutePath());
+                }
+                workingDirectory = new File(Constants.getJadxLibraryFolder());
                 break;
             case JDCMD:
                 /**
@@ -197,30 +547,22 @@ public class Decompiler {
                  * '-od' specifies the output directory
                  */
                 if (isWindows) {
-                    command = "java -jar jd-cli.jar";
+                    command = "java " + options.getJvmMemoryFlag() + " -jar jd-cli.jar";
                 } else {
-                    command = "java -jar ./jd-cli.jar";
+                    command = "java " + options.getJvmMemoryFlag() + " -jar ./jd-cli.jar";
                 }
                 //Append the flags and the file paths to the commands. These are the same on any platform due to the Java runtime
-                command += " -od " + encapsulate(new File(Constants.TEMP_SOURCES_FOLDER).getAbsolutePath()) + " " + encapsulate(new File(Constants.TEMP_CONVERTED_JAR).getAbsolutePath());
-                workingDirectory = new File(Constants.JDCMD_LIBRARY_FOLDER);
+                command += " -od " + encapsulate(sourcesFolder.getAbsolutePath()) + " " + encapsulate(inputJar.getAbsolutePath());
+                workingDirectory = new File(Constants.getJdCmdLibraryFolder());
                 break;
             case CFR:
-                //The file name of the CFR decompiler JAR, which contains the version number
-                String cfrFileName = "";
+                //The file name of the CFR decompiler JAR, which contains the version number and is recorded in the library manifest during the installation
+                String cfrFileName = LibraryManifest.load(new File(Constants.getLibraryManifestFile())).getEntryPoint(DecompilerType.CFR.toString().toLowerCase());
                 //Get the folder where the build is located
-                File cfrLibraryFolder = new File(Constants.CFR_LIBRARY_FOLDER);
-                //Iterate through all files in the folder to find the correct JAR
-                for (File file : cfrLibraryFolder.listFiles()) {
-                    //Even though only files are listed, this measure is added as an additional security layer
-                    if (file.isDirectory()) {
-                        continue;
-                    }
-                    //If the name of the iterated file in the build output directory contains the partial output name of CFR, the name is taken
-                    //Both are in lower case to avoid errors when the casing is changed in the build output
-                    if (file.getName().toLowerCase().contains(ProjectInfos.getCfr().getPartialOutputName().toLowerCase())) {
-                        cfrFileName = file.getName();
-                    }
+                File cfrLibraryFolder = new File(Constants.getCfrLibraryFolder());
+                //Libraries that were installed without a manifest (i.e. using the compact installation) are searched for the JAR instead
+                if (cfrFileName == null || !new File(cfrLibraryFolder, cfrFileName).isFile()) {
+                    cfrFileName = findCfrJar(cfrLibraryFolder);
                 }
                 /**
                  * --outputdir [the output directory]
@@ -228,15 +570,27 @@ public class Decompiler {
                  * --aexagg true To remove nested exception handles which have
                  * the same semantics
                  *
+                 * --renameillegalidents and --renamedupmembers rename
+                 * identifiers that are invalid or ambiguous (i.e. due to
+                 * obfuscation), if deobfuscation is enabled
+                 *
+                 * --extraclasspath adds the classes that were removed from
+                 * the JAR as a library
                  */
                 if (isWindows) {
-                    command = "java -jar " + cfrFileName;
+                    command = "java " + options.getJvmMemoryFlag() + " -jar " + cfrFileName;
                 } else {
-                    command = "java -jar " + cfrFileName;
+                    command = "java " + options.getJvmMemoryFlag() + " -jar " + cfrFileName;
+                }
+                if (options.isDeobfuscate()) {
+                    command += " --renameillegalidents true --renamedupmembers true";
+                }
+                if (getLibraryJar() != null) {
+                    command += " --extraclasspath " + encapsulate(getLibraryJar().getAbsolutePath());
                 }
                 //Append the flags and the file paths to the commands. These are the same on any platform due to the Java runtime
-                command += " " + encapsulate(new File(Constants.TEMP_CONVERTED_JAR).getAbsolutePath()) + " --aexagg true --outputdir " + encapsulate(new File(Constants.TEMP_SOURCES_FOLDER).getAbsolutePath());
-                workingDirectory = new File(Constants.CFR_LIBRARY_FOLDER);
+                command += " " + encapsulate(inputJar.getAbsolutePath()) + " --aexagg true --outputdir " + encapsulate(sourcesFolder.getAbsolutePath());
+                workingDirectory = new File(Constants.getCfrLibraryFolder());
                 break;
             case PROCYON:
                 /**
@@ -248,13 +602,13 @@ public class Decompiler {
                  * -o [dir] for output
                  */
                 if (isWindows) {
-                    command = "java -jar procyon-decompiler-0.5.30.jar";
+                    command = "java " + options.getJvmMemoryFlag() + " -jar procyon-decompiler-0.5.30.jar";
                 } else {
-                    command = "java -jar ./procyon-decompiler-0.5.30.jar";
+                    command = "java " + options.getJvmMemoryFlag() + " -jar ./procyon-decompiler-0.5.30.jar";
                 }
                 //Append the flags and the file paths to the commands. These are the same on any platform due to the Java runtime
-                command += " -ci -eml --jar-file " + encapsulate(new File(Constants.TEMP_CONVERTED_JAR).getAbsolutePath()) + " -o " + encapsulate(new File(Constants.TEMP_SOURCES_FOLDER).getAbsolutePath());
-                workingDirectory = new File(Constants.PROCYON_LIBRARY_FOLDER);
+                command += " -ci -eml --jar-file " + encapsulate(inputJar.getAbsolutePath()) + " -o " + encapsulate(sourcesFolder.getAbsolutePath());
+                workingDirectory = new File(Constants.getProcyonLibraryFolder());
                 break;
             case JEB3:
                 /**
@@ -265,16 +619,304 @@ public class Decompiler {
                  *
                  * java -jar ./jeb.jar --srv2=DecompileAndroid.py -- FILE
                  * OUTPUT_DIR
+                 *
+                 * JEB3 decompiles the APK itself, meaning the package filters
+                 * and the fingerprint index do not apply
                  */
+                if (isJarFiltered()) {
+                    System.out.println("[+]JEB3 decompiles the complete APK, the package filters and the fingerprint index are ignored");
+                }
                 if (isWindows) {
-                    command = "java -jar bin/app/jeb.jar";
+                    command = "java " + options.getJvmMemoryFlag() + " -jar bin/app/jeb.jar";
                 } else {
-                    command = "java -jar ./bin/app/jeb.jar";
+                    command = "java " + options.getJvmMemoryFlag() + " -jar ./bin/app/jeb.jar";
                 }
-                command += " --srv2 --script=" + encapsulate(new File(Constants.JEB3_CLI_ANDROID_SCRIPT_LIBRARY_FOLDER + "/DecompileAndroid.py").getAbsolutePath()) + " -- " + encapsulate(argumentPackage.getApk().getAbsolutePath()) + " " + encapsulate(new File(Constants.TEMP_SOURCES_FOLDER).getAbsolutePath());
+                command += " --srv2 --script=" + encapsulate(new File(Constants.getJeb3CliAndroidScriptLibraryFolder() + "/DecompileAndroid.py").getAbsolutePath()) + " -- " + encapsulate(argumentPackage.getApk().getAbsolutePath()) + " " + encapsulate(sourcesFolder.getAbsolutePath());
                 workingDirectory = argumentPackage.getJeb3Folder();
+                break;
+            default:
+                throw new IOException("The decompiler " + argumentPackage.getDecompilerType() + " is not supported!");
+        }
+        return new Command(command, workingDirectory);
+    }
+
+    /**
+     * Decompiles the given JAR with the selected decompiler, and reports it as
+     * a stage to the progress stream. If the progress is reported, the
+     * decompiled classes are counted during the decompilation.
+     *
+     * @param options the options of the selected decompiler
+     * @param inputJar the JAR that is decompiled
+     * @param sourcesFolder the folder the Java files are written to
+     * @param stage the name of the stage
+     * @param filter the filter that selects the classes that are decompiled
+     * @param knownClasses the internal names of the classes that are part of
+     * a known library, which are not decompiled
+     * @throws IOException if the decompilation fails
+     * @throws InterruptedException if the decompilation is interrupted
+     * @throws ZipException if the output of the decompiler cannot be
+     * extracted
+     */
+    private void runDecompiler(DecompilerOptions options, File inputJar, File sourcesFolder, String stage, PackageFilter filter, Collection<String> knownClasses) throws IOException, InterruptedException, ZipException {
+        String decompilerName = argumentPackage.getDecompilerType().toString().toLowerCase();
+        ProgressReporter.startStage(stage, decompilerName);
+        if (ProgressReporter.isEnabled()) {
+            //Only the first DEX file is converted into the JAR, while the APK itself contains all DEX files
+            List<File> dexFiles = Arrays.asList(new File(workspace.getRawFolder() + "/classes.dex"));
+            DecompilerType decompilerType = argumentPackage.getDecompilerType();
+            if (decompilerType.equals(DecompilerType.JEB3) || (decompilerType.equals(DecompilerType.JADX) && isApkDecompiled())) {
+                File[] allDexFiles = new File(workspace.getRawFolder()).listFiles((folder, name) -> name.endsWith(".dex"));
+                dexFiles = allDexFiles == null ? new ArrayList<>() : Arrays.asList(allDexFiles);
+            }
+            DecompilationProgressMonitor monitor = new DecompilationProgressMonitor(stage, decompilerName, dexFiles, sourcesFolder, filter, knownClasses);
+            try {
+                decompileJar(options, inputJar, sourcesFolder);
+            } finally {
+                monitor.close();
+            }
+        } else {
+            decompileJar(options, inputJar, sourcesFolder);
+        }
+        ProgressReporter.endStage(stage, decompilerName, sourcesFolder);
+    }
+
+    /**
+     * Decompiles the given JAR with the selected decompiler. Fernflower is
+     * used in process if requested (and possible), in which case the Java
+     * files are written directly into the sources folder. Otherwise, the
+     * command line interface of the decompiler is used.
+     *
+     * @param options the options of the selected decompiler
+     * @param inputJar the JAR that is decompiled
+     * @param sourcesFolder the folder the Java files are written to
+     * @throws IOException if the decompilation fails
+     * @throws InterruptedException if the decompilation is interrupted
+     * @throws ZipException if the output of the decompiler cannot be
+     * extracted
+     */
+    private void decompileJar(DecompilerOptions options, File inputJar, File sourcesFolder) throws IOException, InterruptedException, ZipException {
+        if (inProcessPipeline != null && argumentPackage.getDecompilerType().equals(DecompilerType.FERNFLOWER)) {
+            if (inProcessPipeline.decompileWithFernflower(inputJar, getLibraryJar(), sourcesFolder, options)) {
+                return;
+            }
+        }
+        executeCommand(argumentPackage.getDecompilerType(), createDecompileCommand(options, inputJar, sourcesFolder), inputJar, sourcesFolder);
+    }
+
+    /**
+     * Closes the pipeline that runs the tools within this process, if it is
+     * used, once all classes are decompiled
+     *
+     * @throws IOException if the class loaders of the tools cannot be closed
+     */
+    private void closeInProcessPipeline() throws IOException {
+        if (inProcessPipeline != null) {
+            inProcessPipeline.close();
         }
-        executeCommand(argumentPackage.getDecompilerType(), command, workingDirectory);
+    }
+
+    /**
+     * Waits until all classes are decompiled in the background (if the
+     * classes of the application itself are prioritized)
+     *
+     * @throws IOException if the decompilation failed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitRemaining() throws IOException, InterruptedException {
+        if (remainingDecompilation == null) {
+            return;
+        }
+        try {
+            remainingDecompilation.get();
+        } catch (ExecutionException ex) {
+            throw new IOException("Something went wrong when decompiling all classes: " + ex.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Creates the filter that selects the classes of the application itself,
+     * based on the package of the application and the packages of the
+     * components in the manifest that reside within it
+     *
+     * @return the filter, or null if the classes cannot be prioritized
+     * @throws IOException if the manifest cannot be read
+     */
+    private PackageFilter createPriorityFilter() throws IOException {
+        if (argumentPackage.getDecompilerType().equals(DecompilerType.JEB3)) {
+            System.out.println("[+]JEB3 decompiles the complete APK at once, meaning the classes of the application cannot be decompiled first");
+            return null;
+        }
+        ManifestReader manifestReader = new ManifestReader(new File(workspace.getManifestFile()));
+        List<String> packages = manifestReader.getApplicationPackages();
+        if (packages.isEmpty()) {
+            System.out.println("[+]The manifest does not contain the package of the application, meaning all classes are decompiled at once");
+            return null;
+        }
+        System.out.println("[+]Decompiling the classes in " + String.join(", ", packages) + " first");
+        return new PackageFilter(packages, new ArrayList<>());
+    }
+
+    /**
+     * Uses APKTool again for the SMALI files, which cannot be done at once
+     * because one either gets the 'classes.dex' file or the .smali files
+     *
+     * @param apktoolOptions the options of APKTool
+     * @throws IOException if APKTool fails
+     * @throws InterruptedException if APKTool is interrupted
+     * @throws ZipException if an archive cannot be extracted
+     */
+    private void decodeSmali(DecompilerOptions apktoolOptions) throws IOException, InterruptedException, ZipException {
+        String command;
+        File workingDirectory;
+        /**
+         * The flag '--no-assets' avoids the decoding of assets in the APK,
+         * which are already extracted directly from the APK.
+         *
+         * The '--no-res' avoids the decoding of resources, which is also done
+         * in the previous call of APKTool.
+         *
+         */
+        System.out.println("[+]Calling APKTool to obtain the SMALI code");
+        if (Constants.isWindows()) {
+            command = "java " + apktoolOptions.getJvmMemoryFlag() + " -jar apktool-cli-all.jar";
+        } else {
+            command = "java " + apktoolOptions.getJvmMemoryFlag() + " -jar ./apktool-cli-all.jar";
+        }
+        //Append the flags and the file paths to the commands. These are the same on any platform due to the Java runtime
+        command += " d -f --no-assets --no-res -m -o " + encapsulate(new File(workspace.getFolder() + "/apktool-smali").getAbsolutePath()) + " " + encapsulate(argumentPackage.getApk().getAbsolutePath());
+
+        workingDirectory = new File(Constants.getApktoolLibraryFolder());
+        ProgressReporter.startStage("apktool-smali");
+        executeCommand(DecompilerType.APKTOOL, command, workingDirectory);
+        ProgressReporter.endStage("apktool-smali", new File(workspace.getFolder() + "/apktool-smali"));
+    }
+
+    /**
+     * Writes the list of classes that match a class of a known library into
+     * the sources folder. If the corpus contains the sources of a library
+     * (i.e. "okhttp-3.12.0-sources.jar" next to "okhttp-3.12.0.jar"), the
+     * sources of the matching classes are placed in the sources folder under
+     * their original name as well.
+     *
+     * @param knownClasses the internal names of the matched classes, mapped
+     * to the known classes in the format "[path of the JAR]![internal name of
+     * the class]"
+     * @throws IOException if the list or the sources cannot be written
+     */
+    private void writeKnownClasses(Map<String, String> knownClasses) throws IOException {
+        File sourcesFolder = new File(workspace.getSourcesFolder());
+        Map<String, ZipFile> sourceJars = new HashMap<>();
+        int substitutedCount = 0;
+        try (PrintWriter writer = new PrintWriter(new File(sourcesFolder, Constants.KNOWN_CLASSES_FILE_NAME), StandardCharsets.UTF_8.name())) {
+            writer.println("# The following classes match a class of a known library, and were not decompiled by AndroidProjectCreator");
+            writer.println("# [class in the APK] = [class in the library] ([library])");
+            for (Map.Entry<String, String> knownClass : knownClasses.entrySet()) {
+                String jar = knownClass.getValue().substring(0, knownClass.getValue().lastIndexOf('!'));
+                String libraryClass = knownClass.getValue().substring(jar.length() + 1);
+                writer.println(knownClass.getKey().replace('/', '.') + " = " + libraryClass.replace('/', '.') + " (" + new File(jar).getName() + ")");
+                //Inner classes reside in the source file of their outer class
+                if (libraryClass.contains("$")) {
+                    continue;
+                }
+                File sourceJar = new File(jar.substring(0, jar.length() - ".jar".length()) + "-sources.jar");
+                if (!sourceJar.isFile()) {
+                    continue;
+                }
+                if (!sourceJars.containsKey(sourceJar.getAbsolutePath())) {
+                    sourceJars.put(sourceJar.getAbsolutePath(), new ZipFile(sourceJar));
+                }
+                ZipFile sources = sourceJars.get(sourceJar.getAbsolutePath());
+                ZipEntry source = sources.getEntry(libraryClass + ".java");
+                File destination = new File(sourcesFolder, libraryClass + ".java");
+                if (source != null && !destination.exists()) {
+                    destination.getParentFile().mkdirs();
+                    try (InputStream input = sources.getInputStream(source)) {
+                        Files.copy(input, destination.toPath());
+                    }
+                    substitutedCount++;
+                }
+            }
+        } finally {
+            for (ZipFile sources : sourceJars.values()) {
+                sources.close();
+            }
+        }
+        System.out.println("[+]Listed the " + knownClasses.size() + " classes of known libraries in " + Constants.KNOWN_CLASSES_FILE_NAME + ", and added the sources of " + substitutedCount + " of them");
+    }
+
+    /**
+     * Checks that the entry points of the tools that the decompilation
+     * requires are present, based on the library manifest. The complete
+     * verification of the files is done with the "-verify" action.
+     *
+     * @throws IOException if the manifest cannot be read, or if one or more
+     * entry points are missing
+     */
+    private void verifyTools() throws IOException {
+        LibraryManifest manifest = LibraryManifest.load(new File(Constants.getLibraryManifestFile()));
+        List<String> toolNames = Tools.getNames(Tools.getSelection(Arrays.asList(argumentPackage.getDecompilerType().toString().toLowerCase())));
+        List<String> mismatches = new ChecksumVerifier().verifyEntryPoints(manifest, new File(Constants.getActiveLibraryFolder()), toolNames);
+        if (mismatches.size() > 0) {
+            throw new IOException("The library is incomplete (" + String.join(", ", mismatches) + "), use \"-verify\" for details and \"-update --force\" to repair it.");
+        }
+    }
+
+    /**
+     * Removes the DEX files and native libraries that APKTool copied into its
+     * output folder, as these are extracted directly from the APK instead
+     *
+     * @throws IOException if the files cannot be removed
+     */
+    private void removeApktoolRawFiles() throws IOException {
+        File apktoolFolder = new File(workspace.getFolder() + "/apktool");
+        File[] dexFiles = apktoolFolder.listFiles((directory, name) -> name.matches("classes[0-9]*\\.dex"));
+        if (dexFiles != null) {
+            for (File dexFile : dexFiles) {
+                Files.deleteIfExists(dexFile.toPath());
+            }
+        }
+        new FileManager().delete(new File(apktoolFolder, "lib"));
+    }
+
+    /**
+     * Waits until the given extraction of files from the APK has finished
+     *
+     * @param extraction the extraction to wait for
+     * @throws IOException if the extraction failed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void awaitExtraction(Future<Integer> extraction) throws IOException, InterruptedException {
+        try {
+            extraction.get();
+        } catch (ExecutionException ex) {
+            //The other extraction is stopped, as the decompilation cannot continue
+            extractionService.shutdownNow();
+            throw new IOException("Something went wrong when extracting files from the APK: " + ex.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Searches the library folder of CFR for its JAR, of which the name
+     * contains the version number
+     *
+     * @param cfrLibraryFolder the library folder of CFR
+     * @return the name of the JAR, or an empty string if it cannot be found
+     */
+    private String findCfrJar(File cfrLibraryFolder) {
+        String cfrFileName = "";
+        //Iterate through all files in the folder to find the correct JAR
+        for (File file : cfrLibraryFolder.listFiles()) {
+            //Even though only files are listed, this measure is added as an additional security layer
+            if (file.isDirectory()) {
+                continue;
+            }
+            //If the name of the iterated file in the build output directory contains the partial output name of CFR, the name is taken
+            //Both are in lower case to avoid errors when the casing is changed in the build output
+            if (file.getName().toLowerCase().contains(ProjectInfos.getCfr().getPartialOutputName().toLowerCase())) {
+                cfrFileName = file.getName();
+            }
+        }
+        return cfrFileName;
     }
 
     /**
@@ -291,40 +933,45 @@ public class Decompiler {
      * @throws ZipException if an archive cannot be extracted
      */
     private void executeCommand(DecompilerType name, String commandString, File workingDirectory) throws IOException, InterruptedException, ZipException {
-        Command command = new Command(commandString, workingDirectory);
+        executeCommand(name, new Command(commandString, workingDirectory), new File(workspace.getConvertedJar()), new File(workspace.getSourcesFolder()));
+    }
+
+    /**
+     * Executes the given command, after which the output of the decompiler is
+     * moved into the given sources folder if required
+     *
+     * @param name the name of the tool that is executed
+     * @param command the command that is executed
+     * @param inputJar the JAR that is decompiled
+     * @param sourcesFolder the folder the Java files are written to
+     * @throws IOException if something goes wrong with file handling
+     * @throws InterruptedException if the command is interrupted, although this
+     * should never happen
+     * @throws ZipException if an archive cannot be extracted
+     */
+    private void executeCommand(DecompilerType name, Command command, File inputJar, File sourcesFolder) throws IOException, InterruptedException, ZipException {
         FileManager fileManager = new FileManager();
         System.out.println("[+]Decompling JAR with " + name);
         try {
             command.execute();
             switch (name) {
                 case FERNFLOWER:
-                    fileManager.extractArchive(new File(Constants.TEMP_SOURCES_FOLDER + "/output.jar").getAbsolutePath(), new File(Constants.TEMP_SOURCES_FOLDER).getAbsolutePath());
-                    fileManager.delete(new File(Constants.TEMP_SOURCES_FOLDER + "/output.jar"));
+                    //Fernflower writes the decompiled classes into an archive with the name of the given JAR
+                    File fernflowerOutput = new File(sourcesFolder, inputJar.getName());
+                    fileManager.extractArchive(fernflowerOutput.getAbsolutePath(), sourcesFolder.getAbsolutePath());
+                    fileManager.delete(fernflowerOutput);
                     break;
                 case JEB3:
                     /**
-                     * If the JEB3 output folder exists, copy the contents to
-                     * the TEMP_SOURCES_FOLDER and remove the JEB3 output
+                     * If the JEB3 output folder exists, move the contents to
+                     * the temporary sources folder and remove the JEB3 output
                      * folder. This way, the rest file handling can stay the
-                     * same.
+                     * same. The contents are renamed, rather than copied.
                      */
-                    File sourceLocation = new File(Constants.TEMP_SOURCES_FOLDER);
+                    File sourceLocation = sourcesFolder;
                     File jeb3Output = new File(sourceLocation.getAbsolutePath() + "/Bytecode_decompiled");
                     if (jeb3Output.exists() && jeb3Output.isDirectory()) {
-                        for (File currentFileObject : sourceLocation.listFiles()) {
-                            fileManager.copyFolder(currentFileObject, sourceLocation);
-                        }
-                        fileManager.delete(jeb3Output);
-                    }
-                    break;
-                case JADX:
-                    File source = new File(Constants.TEMP_SOURCES_FOLDER);
-                    File jadxOutput = new File(source.getAbsolutePath() + "/sources");
-                    if (jadxOutput.exists() && jadxOutput.isDirectory()) {
-                        for (File currentFileObject : source.listFiles()) {
-                            fileManager.copyFolder(currentFileObject, source);
-                        }
-                        fileManager.delete(jadxOutput);
+                        fileManager.moveFolderContents(jeb3Output, sourceLocation);
                     }
                     break;
                 default:
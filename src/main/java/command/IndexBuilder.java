@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package command;
+
+import apc.ClassFingerprinter;
+import apc.FileManager;
+import apc.FingerprintIndex;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import model.ArgumentPackage;
+
+/**
+ * Builds a fingerprint index of the classes in a corpus of library JARs. The
+ * index is used during the decompilation to recognize (renamed) classes of
+ * known libraries, which then do not need to be decompiled.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class IndexBuilder {
+
+    /**
+     * The arguments that were provided by the user
+     */
+    private final ArgumentPackage argumentPackage;
+
+    /**
+     * Builds a fingerprint index of the given corpus
+     *
+     * @param argumentPackage the arguments that were provided by the user,
+     * which contain the corpus folder and the index file as parameters
+     */
+    public IndexBuilder(ArgumentPackage argumentPackage) {
+        this.argumentPackage = argumentPackage;
+    }
+
+    /**
+     * Fingerprints all classes in the JARs within the corpus folder (and its
+     * subfolders), and writes the index. The JARs are processed in parallel.
+     * Source JARs (of which the name ends with "-sources.jar") are skipped, as
+     * these are used to substitute the recognized classes.
+     *
+     * @throws IOException if the corpus cannot be read or the index cannot be
+     * written
+     */
+    public void build() throws IOException {
+        File corpus = new File(argumentPackage.getParameters().get(0));
+        File indexFile = new File(argumentPackage.getParameters().get(1));
+        if (!corpus.isDirectory()) {
+            throw new IOException("The corpus folder (" + corpus.getAbsolutePath() + ") does not exist!");
+        }
+        List<String> jars;
+        try (Stream<Path> paths = Files.walk(corpus.toPath())) {
+            jars = paths.map(path -> path.toAbsolutePath().toString())
+                    .filter(path -> path.endsWith(".jar") && !path.endsWith("-sources.jar"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        System.out.println("[+]Fingerprinting the classes of " + jars.size() + " JAR(s) in " + corpus.getAbsolutePath());
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), jars.size())));
+        Map<String, Future<Map<Long, String>>> fingerprints = new LinkedHashMap<>();
+        for (String jar : jars) {
+            fingerprints.put(jar, executorService.submit(() -> fingerprintJar(new File(jar))));
+        }
+        executorService.shutdown();
+        //The results are merged in the order of the JARs, so that the index is the same for the same corpus
+        Map<Long, Map.Entry<Integer, String>> classes = new HashMap<>();
+        int collisions = 0;
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < jars.size(); i++) {
+            String jar = jars.get(i);
+            try {
+                for (Map.Entry<Long, String> fingerprint : fingerprints.get(jar).get().entrySet()) {
+                    if (classes.putIfAbsent(fingerprint.getKey(), new AbstractMap.SimpleEntry<>(i, fingerprint.getValue())) != null) {
+                        collisions++;
+                    }
+                }
+            } catch (ExecutionException ex) {
+                errors.add(jar + ": " + ex.getCause().getMessage());
+            } catch (InterruptedException ex) {
+                executorService.shutdownNow();
+                throw new IOException("The fingerprinting of the corpus was interrupted!");
+            }
+        }
+        for (String error : errors) {
+            System.out.println("[+]Skipped " + error);
+        }
+        FingerprintIndex.write(classes, jars, indexFile);
+        System.out.println("[+]Wrote " + classes.size() + " fingerprints to " + indexFile.getAbsolutePath() + " (" + collisions + " duplicate fingerprints were skipped)");
+    }
+
+    /**
+     * Fingerprints all classes in the given JAR. Classes that are too small to
+     * be identified reliably are skipped.
+     *
+     * @param jar the JAR to fingerprint
+     * @return the fingerprints of the classes, mapped to their internal name
+     * @throws IOException if the JAR cannot be read
+     */
+    private Map<Long, String> fingerprintJar(File jar) throws IOException {
+        ClassFingerprinter fingerprinter = new ClassFingerprinter();
+        FileManager fileManager = new FileManager();
+        Map<Long, String> fingerprints = new LinkedHashMap<>();
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class") || name.endsWith("module-info.class")) {
+                    continue;
+                }
+                byte[] classBytes;
+                try (InputStream input = zipFile.getInputStream(entry)) {
+                    classBytes = fileManager.readFully(input);
+                }
+                long fingerprint;
+                try {
+                    fingerprint = fingerprinter.fingerprint(classBytes);
+                } catch (IOException ex) {
+                    //Malformed classes are skipped
+                    continue;
+                }
+                if (fingerprint != 0) {
+                    fingerprints.putIfAbsent(fingerprint, name.substring(0, name.length() - ".class".length()));
+                }
+            }
+        }
+        return fingerprints;
+    }
+}
@@ -16,10 +16,22 @@
  */
 package command;
 
+import apc.ArtifactCache;
+import apc.FileManager;
+import apc.GenerationManager;
 import apc.RepositoryManager;
+import java.io.File;
 import java.io.IOException;
-import library.Repositories;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import library.Constants;
 import library.Tools;
+import model.ArgumentPackage;
+import model.LibraryLease;
+import model.Repository;
+import model.Tool;
 
 /**
  * Handles the installation of all tools
@@ -28,30 +40,180 @@ import library.Tools;
  */
 public class Installer {
 
+    /**
+     * The arguments that were provided by the user
+     */
+    private final ArgumentPackage argumentPackage;
+
+    /**
+     * Handles the installation of all tools
+     *
+     * @param argumentPackage the arguments that were provided by the user
+     */
+    public Installer(ArgumentPackage argumentPackage) {
+        this.argumentPackage = argumentPackage;
+    }
+
     /**
      * Clones all the git repositories in a sub folder of
      * <code>Constants.getLibraryFolderName()</code> (named "repos") in the
      * current directory. Then, all projects are built to ensure the latest
      * version is used. The outcome of the builds is either a ZIP or a JAR file.
-     * A ZIP file will first be extracted. The tools are then copied into the
-     * <code>Constants.getLibraryFolderName()</code> folder within their own
-     * subdirectory.
+     * A ZIP file will first be extracted. The tools are then copied into a new
+     * generation of the library, each within their own subdirectory. Once the
+     * generation is verified, it becomes the active generation.
+     *
+     * If decompilers are selected, only those are installed, together with
+     * APKTool, Dex2Jar and the Android Studio project template.
      */
     public void install() throws IOException, Exception {
         System.out.println("[+]Starting the installation");
-        RepositoryManager repositoryManager = new RepositoryManager();
+        RepositoryManager repositoryManager = createRepositoryManager();
+        List<Tool> tools = getTools(Tools.getSelection(argumentPackage.getParameters()));
         System.out.println("[+]Starting cloning the repositories");
-        repositoryManager.cloneRepositories(Repositories.getAll());
+        repositoryManager.cloneRepositories(getRepositories(tools), argumentPackage.getIntOption("depth", Constants.DEFAULT_CLONE_DEPTH));
         System.out.println("[+]Cloning finished");
         System.out.println("[+]Starting to build all repositories");
-        repositoryManager.buildRepositories(Tools.getTools());
+        repositoryManager.buildRepositories(tools);
         System.out.println("[+]All projects have been built");
-        System.out.println("[+]Starting to extract the builds to the library");
-        repositoryManager.extractBuilds(Tools.getTools());
-        System.out.println("[+]Extraction complete");
-        System.out.println("[+]Verifying the toolset");
-        repositoryManager.verifyInstallation();
-        System.out.println("[+]Verification succesful!");
+        //The tools are installed in a new generation, so that running decompilations are not affected
+        GenerationManager generationManager = new GenerationManager();
+        try (LibraryLease generation = generationManager.createGeneration()) {
+            File generationFolder = generation.getGenerationFolder();
+            System.out.println("[+]Starting to extract the builds to the library");
+            repositoryManager.extractBuilds(tools, generationFolder);
+            System.out.println("[+]Extraction complete");
+            repositoryManager.writeManifest(tools, generationFolder);
+            System.out.println("[+]Verifying the toolset");
+            repositoryManager.verifyInstallation(generationFolder, Tools.getNames(tools));
+            System.out.println("[+]Verification succesful!");
+            generationManager.activate(generationFolder);
+            System.out.println("[+]Activated library generation " + generationFolder.getName());
+        }
+        generationManager.collectGarbage();
         System.out.println("[+]Installation complete!");
     }
+
+    /**
+     * Installs the given tools the first time they are requested, if they are
+     * not installed yet. The missing tools are installed in a new generation of
+     * the library, together with a copy of the tools that are already
+     * installed, after which the new generation becomes the active one.
+     * Running decompilations keep using the generation they hold a lease on.
+     * Only one process installs missing tools at a time.
+     *
+     * @param toolNames the names of the tools that are required
+     * @throws IOException if the install lock cannot be acquired, or if the
+     * new generation cannot be created
+     * @throws Exception if one or more tools fail to install
+     */
+    public void installMissing(List<String> toolNames) throws IOException, Exception {
+        if (getMissingTools(toolNames, new File(Constants.getActiveLibraryFolder())).isEmpty()) {
+            return;
+        }
+        new File(Constants.LIBRARY_FOLDER).mkdirs();
+        try (FileChannel lockChannel = FileChannel.open(new File(Constants.INSTALL_LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            //The lock is released when the channel is closed
+            lockChannel.lock();
+            GenerationManager generationManager = new GenerationManager();
+            //The generation that is active now is copied, which might have been replaced while this process waited for the lock
+            try (LibraryLease activeGeneration = generationManager.acquireLease()) {
+                File activeFolder = activeGeneration.getGenerationFolder();
+                List<Tool> missingTools = getTools(Tools.getByName(getMissingTools(toolNames, activeFolder)));
+                if (missingTools.isEmpty()) {
+                    return;
+                }
+                System.out.println("[+]Installing the missing tools: " + String.join(", ", Tools.getNames(missingTools)));
+                RepositoryManager repositoryManager = createRepositoryManager();
+                FileManager fileManager = new FileManager();
+                List<Repository> repositories = getRepositories(missingTools);
+                //Left over clones of a previous installation are replaced, as they might be incomplete
+                for (Repository repository : repositories) {
+                    fileManager.delete(repository.getDirectory());
+                }
+                repositoryManager.cloneRepositories(repositories, argumentPackage.getIntOption("depth", Constants.DEFAULT_CLONE_DEPTH));
+                repositoryManager.buildRepositories(missingTools);
+                try (LibraryLease generation = generationManager.createGeneration()) {
+                    File generationFolder = generation.getGenerationFolder();
+                    List<Tool> installedTools = new ArrayList<>();
+                    for (Tool tool : Tools.getTools()) {
+                        if (new File(activeFolder, tool.getRepository().getName()).isDirectory()) {
+                            installedTools.add(tool);
+                        }
+                    }
+                    repositoryManager.copyLibraryFolders(installedTools, activeFolder, generationFolder);
+                    repositoryManager.copyManifest(activeFolder, generationFolder);
+                    repositoryManager.extractBuilds(missingTools, generationFolder);
+                    repositoryManager.writeManifest(missingTools, generationFolder);
+                    repositoryManager.verifyInstallation(generationFolder, toolNames);
+                    generationManager.activate(generationFolder);
+                    System.out.println("[+]The missing tools have been installed in library generation " + generationFolder.getName());
+                }
+            }
+            generationManager.collectGarbage();
+        }
+    }
+
+    /**
+     * Gets the names of the given tools of which the library folder does not
+     * exist in the given root folder
+     *
+     * @param toolNames the names of the tools
+     * @param libraryRoot the folder in which the library folders of the tools
+     * reside
+     * @return the names of the missing tools
+     */
+    private List<String> getMissingTools(List<String> toolNames, File libraryRoot) {
+        List<String> missingTools = new ArrayList<>();
+        for (String toolName : toolNames) {
+            if (!new File(libraryRoot, toolName).isDirectory()) {
+                missingTools.add(toolName);
+            }
+        }
+        return missingTools;
+    }
+
+    /**
+     * Creates the repository manager, which uses the artifact cache if one is
+     * provided
+     *
+     * @return the repository manager
+     */
+    private RepositoryManager createRepositoryManager() {
+        RepositoryManager repositoryManager = new RepositoryManager();
+        //Reuse the builds of other installations, if an artifact cache is provided
+        if (argumentPackage.hasOption("artifact-cache")) {
+            repositoryManager.setArtifactCache(new ArtifactCache(new File(argumentPackage.getOption("artifact-cache"))));
+        }
+        return repositoryManager;
+    }
+
+    /**
+     * Gets the given tools, of which the repositories are resolved against the
+     * local mirror if one is provided
+     *
+     * @param tools the tools
+     * @return the tools, which use the mirror if one is provided
+     */
+    private List<Tool> getTools(List<Tool> tools) {
+        //Use the local mirror instead of Github, if one is provided
+        if (argumentPackage.hasOption("mirror")) {
+            return Tools.resolveMirror(tools, new File(argumentPackage.getOption("mirror")));
+        }
+        return tools;
+    }
+
+    /**
+     * Gets the repositories of the given tools
+     *
+     * @param tools the tools
+     * @return the repositories of the tools, in the same order
+     */
+    private List<Repository> getRepositories(List<Tool> tools) {
+        List<Repository> repositories = new ArrayList<>();
+        for (Tool tool : tools) {
+            repositories.add(tool.getRepository());
+        }
+        return repositories;
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package command;
+
+import apc.FileManager;
+import apc.SearchIndex;
+import apc.SourceIndexer;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import library.Constants;
+import model.ArgumentPackage;
+
+/**
+ * Searches the search indices that are written when decompiling with
+ * "--search-index". The input is either a single index file, an assembled
+ * project, or a folder that contains multiple indices or projects (i.e. the
+ * folder of the corpus-level index). Each match is printed on a single line,
+ * which contains the kind of the match, the matching term and the path of the
+ * file in which it occurs, separated by tabs.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class Searcher {
+
+    /**
+     * The kinds of terms that are searched if no kind is specified
+     */
+    private static final List<String> KINDS = Arrays.asList(SourceIndexer.CLASS, SourceIndexer.CALL, SourceIndexer.STRING, SourceIndexer.IDENTIFIER);
+
+    /**
+     * The arguments that were provided by the user
+     */
+    private final ArgumentPackage argumentPackage;
+
+    /**
+     * Searches the indices that are given in the parameters
+     *
+     * @param argumentPackage the arguments that were provided by the user,
+     * which contain the index (or a folder with indices) and the query as
+     * parameters
+     */
+    public Searcher(ArgumentPackage argumentPackage) {
+        this.argumentPackage = argumentPackage;
+    }
+
+    /**
+     * Searches the given index, or all indices in the given folder (and its
+     * subfolders), for the query. A query that ends with an asterisk matches
+     * all terms that start with it. The search is case insensitive. Indices
+     * that cannot be read are skipped.
+     *
+     * @throws IOException if the input cannot be read or if no index can be
+     * found
+     */
+    public void search() throws IOException {
+        File input = new File(argumentPackage.getParameters().get(0));
+        String query = argumentPackage.getParameters().get(1).toLowerCase(Locale.ROOT);
+        boolean prefix = query.endsWith("*");
+        if (prefix) {
+            query = query.substring(0, query.length() - 1);
+        }
+        List<String> kinds = KINDS;
+        String kind = argumentPackage.getOption("kind");
+        if (kind != null) {
+            if (!KINDS.contains(kind.toLowerCase(Locale.ROOT))) {
+                throw new IllegalArgumentException("The kind \"" + kind + "\" is not supported, use one of the following: " + String.join(", ", KINDS));
+            }
+            kinds = Arrays.asList(kind.toLowerCase(Locale.ROOT));
+        }
+        int limit = argumentPackage.getIntOption("limit", 1000);
+        if (limit < 1) {
+            throw new IllegalArgumentException("The limit should be at least 1, but is " + limit + "!");
+        }
+        List<File> indexFiles = getIndexFiles(input);
+        if (indexFiles.isEmpty()) {
+            throw new IOException("No search index was found in " + input.getAbsolutePath() + ", decompile with \"--search-index\" to create one!");
+        }
+        long start = System.currentTimeMillis();
+        int matchCount = 0;
+        List<String> errors = new ArrayList<>();
+        for (File indexFile : indexFiles) {
+            SearchIndex index;
+            try {
+                index = new SearchIndex(indexFile);
+            } catch (IOException ex) {
+                errors.add(ex.getMessage());
+                continue;
+            }
+            for (int i = 0; i < kinds.size() && matchCount < limit; i++) {
+                String term = kinds.get(i) + ":" + query;
+                for (Map.Entry<String, List<String>> match : index.search(term, prefix, limit - matchCount).entrySet()) {
+                    //The kind is separated from the term, as it is printed in a column of its own
+                    String matchedTerm = match.getKey().substring(kinds.get(i).length() + 1);
+                    for (String path : match.getValue()) {
+                        System.out.println(kinds.get(i) + "\t" + matchedTerm + "\t" + new File(index.getProject(), path).getPath());
+                        matchCount++;
+                    }
+                }
+            }
+            if (matchCount >= limit) {
+                System.out.println("[+]The limit of " + limit + " matches has been reached, use --limit=amount to show more matches");
+                break;
+            }
+        }
+        for (String error : errors) {
+            System.out.println("[+]Skipped " + error);
+        }
+        long duration = System.currentTimeMillis() - start;
+        System.out.println("[+]Found " + matchCount + " match(es) in " + indexFiles.size() + " index(es) in " + duration + " ms");
+    }
+
+    /**
+     * Gets the index files for the given input. The input is either an index
+     * file, an assembled project that contains an index, or a folder that is
+     * searched recursively for indices.
+     *
+     * @param input the input that is provided by the user
+     * @return the index files
+     * @throws IOException if the input does not exist or cannot be read
+     */
+    private List<File> getIndexFiles(File input) throws IOException {
+        File projectIndex = new File(input, Constants.SEARCH_INDEX_FILE_NAME);
+        if (projectIndex.isFile()) {
+            return Arrays.asList(projectIndex);
+        }
+        return new FileManager().listFiles(input, ".idx");
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package command;
+
+import apc.FileManager;
+import apc.ProgressReporter;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import model.ArgumentPackage;
+import model.DexFile;
+
+/**
+ * Extracts all strings, type names and method signatures from the DEX files
+ * of an APK, by reading the tables of the DEX files directly. The DEX files
+ * of an APK are processed in parallel. The output of each APK is a GZIP
+ * compressed text file, which contains a section per DEX file. Each line
+ * holds one symbol, prefixed by its kind ("S" for strings, "T" for types and
+ * "M" for methods) and a tab. Tabs, line breaks and backslashes in the
+ * strings are escaped.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class SymbolExtractor {
+
+    /**
+     * The pattern of the names of the DEX files in the root of an APK, of
+     * which the group contains the number of the DEX file
+     */
+    private static final Pattern DEX_FILE_NAME = Pattern.compile("classes(\\d{0,9})\\.dex");
+
+    /**
+     * The extension of the output files
+     */
+    private static final String OUTPUT_EXTENSION = ".symbols.gz";
+
+    /**
+     * The arguments that were provided by the user
+     */
+    private final ArgumentPackage argumentPackage;
+
+    /**
+     * Extracts the symbols of the APKs that are given in the parameters
+     *
+     * @param argumentPackage the arguments that were provided by the user,
+     * which contain the APK (or a folder with APKs) and the output folder as
+     * parameters
+     */
+    public SymbolExtractor(ArgumentPackage argumentPackage) {
+        this.argumentPackage = argumentPackage;
+    }
+
+    /**
+     * Extracts the symbols of the given APK, or of all APKs in the given
+     * folder (and its subfolders), into the output folder. APKs that cannot
+     * be read are skipped.
+     *
+     * @throws IOException if the input cannot be read or the output folder
+     * cannot be created
+     */
+    public void extract() throws IOException {
+        File input = new File(argumentPackage.getParameters().get(0));
+        File outputFolder = new File(argumentPackage.getParameters().get(1));
+        List<File> apks = new FileManager().listFiles(input, ".apk");
+        int threads = argumentPackage.getIntOption("threads", Runtime.getRuntime().availableProcessors());
+        if (threads < 1) {
+            throw new IllegalArgumentException("The amount of threads should be at least 1, but is " + threads + "!");
+        }
+        outputFolder.mkdirs();
+        if (!outputFolder.isDirectory()) {
+            throw new IOException("The output folder (" + outputFolder.getAbsolutePath() + ") cannot be created!");
+        }
+        System.out.println("[+]Extracting the symbols of " + apks.size() + " APK(s) with " + threads + " thread(s)");
+        long start = System.currentTimeMillis();
+        List<String> errors = new ArrayList<>();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < apks.size(); i++) {
+                File apk = apks.get(i);
+                try {
+                    extract(apk, new File(outputFolder, getOutputName(input, apk) + OUTPUT_EXTENSION), executorService);
+                } catch (IOException ex) {
+                    errors.add(apk.getAbsolutePath() + ": " + ex.getMessage());
+                }
+                ProgressReporter.reportProgress("extract", input.getAbsolutePath(), "apks", i + 1, apks.size());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        for (String error : errors) {
+            System.out.println("[+]Skipped " + error);
+        }
+        long duration = System.currentTimeMillis() - start;
+        System.out.println("[+]Extracted the symbols of " + (apks.size() - errors.size()) + " APK(s) in " + duration + " ms, the results are written to " + outputFolder.getAbsolutePath());
+    }
+
+    /**
+     * Extracts the symbols of all DEX files in the given APK. Each DEX file is
+     * read and compressed into a separate GZIP member in parallel, after
+     * which the members are written to the output file in the order of the
+     * DEX files. Concatenated GZIP members form a valid GZIP file.
+     *
+     * @param apk the APK to extract the symbols from
+     * @param output the file to write the symbols to
+     * @param executorService the service that processes the DEX files
+     * @throws IOException if the APK cannot be read or the output cannot be
+     * written
+     */
+    private void extract(File apk, File output, ExecutorService executorService) throws IOException {
+        File temporaryFile = new File(output.getAbsolutePath() + ".tmp");
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            List<ZipEntry> dexEntries = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (DEX_FILE_NAME.matcher(entry.getName()).matches()) {
+                    dexEntries.add(entry);
+                }
+            }
+            //The DEX files are sorted by their number, as "classes10.dex" would otherwise precede "classes2.dex"
+            dexEntries.sort(Comparator.comparingInt(entry -> getDexNumber(entry.getName())));
+            List<Future<byte[]>> sections = new ArrayList<>();
+            for (ZipEntry entry : dexEntries) {
+                sections.add(executorService.submit(() -> {
+                    byte[] content;
+                    try (InputStream input = zipFile.getInputStream(entry)) {
+                        content = new FileManager().readFully(input);
+                    }
+                    return extractSection(new DexFile(entry.getName(), content));
+                }));
+            }
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(temporaryFile))) {
+                for (Future<byte[]> section : sections) {
+                    outputStream.write(section.get());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw new IOException("The extraction was interrupted!");
+        } catch (ExecutionException ex) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw new IOException(ex.getCause().getMessage());
+        } catch (IOException ex) {
+            Files.deleteIfExists(temporaryFile.toPath());
+            throw ex;
+        }
+        Files.move(temporaryFile.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the strings, types and methods of the given DEX file as a GZIP
+     * member. Entries that are malformed (i.e. due to an obfuscator) are
+     * skipped, and their amount is written at the end of the section.
+     *
+     * @param dexFile the DEX file
+     * @return the GZIP compressed section
+     * @throws IOException if the section cannot be written
+     */
+    private byte[] extractSection(DexFile dexFile) throws IOException {
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        int skipped = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(section), StandardCharsets.UTF_8))) {
+            writer.write("# " + dexFile.getName() + " strings=" + dexFile.getStringCount() + " types=" + dexFile.getTypeCount() + " methods=" + dexFile.getMethodCount() + "\n");
+            for (int i = 0; i < dexFile.getStringCount(); i++) {
+                try {
+                    writer.write("S\t" + escape(dexFile.getString(i)) + "\n");
+                } catch (IOException | RuntimeException ex) {
+                    skipped++;
+                }
+            }
+            for (int i = 0; i < dexFile.getTypeCount(); i++) {
+                try {
+                    writer.write("T\t" + dexFile.getType(i) + "\n");
+                } catch (IOException | RuntimeException ex) {
+                    skipped++;
+                }
+            }
+            for (int i = 0; i < dexFile.getMethodCount(); i++) {
+                try {
+                    writer.write("M\t" + dexFile.getMethod(i) + "\n");
+                } catch (IOException | RuntimeException ex) {
+                    skipped++;
+                }
+            }
+            if (skipped > 0) {
+                writer.write("# skipped " + skipped + " malformed entries\n");
+            }
+        }
+        return section.toByteArray();
+    }
+
+    /**
+     * Gets the name of the output file of the given APK, without its
+     * extension. APKs in a subfolder of the input get the hash of their
+     * relative folder appended to their name, as APKs with the same name in
+     * different subfolders would otherwise overwrite each other's output.
+     *
+     * @param input the APK or folder that is provided by the user
+     * @param apk the APK to get the output name for
+     * @return the name of the output file, without its extension
+     * @throws IOException if the hash cannot be calculated
+     */
+    private String getOutputName(File input, File apk) throws IOException {
+        String name = apk.getName().replaceAll("(?i)\\.apk$", "");
+        if (!input.isDirectory() || apk.getParentFile() == null) {
+            return name;
+        }
+        String folder = input.toPath().toAbsolutePath().normalize().relativize(apk.getParentFile().toPath().toAbsolutePath().normalize()).toString();
+        if (folder.isEmpty()) {
+            return name;
+        }
+        //The separators are normalized, so that the names are equal on every platform
+        return name + "-" + new FileManager().hash(folder.replace(File.separatorChar, '/')).substring(0, 12);
+    }
+
+    /**
+     * Gets the number of a DEX file, based on its name
+     *
+     * @param name the name of the DEX file (i.e. "classes2.dex")
+     * @return the number of the DEX file, which is 1 for "classes.dex"
+     */
+    private int getDexNumber(String name) {
+        Matcher matcher = DEX_FILE_NAME.matcher(name);
+        if (!matcher.matches() || matcher.group(1).isEmpty()) {
+            return 1;
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    /**
+     * Escapes the backslashes, tabs and line breaks in the given string, so
+     * that each symbol fits on a single line
+     *
+     * @param value the string to escape
+     * @return the escaped string
+     */
+    private String escape(String value) {
+        if (value.indexOf('\\') == -1 && value.indexOf('\t') == -1 && value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+            return value;
+        }
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+}
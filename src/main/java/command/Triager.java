@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package command;
+
+import apc.FileManager;
+import apc.ProgressReporter;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import model.ArgumentPackage;
+import model.BinaryManifest;
+import model.DexFile;
+
+/**
+ * Triages APKs by reading the binary manifest and the headers of the DEX
+ * files directly from the APK, without decoding or decompiling it. The
+ * results are written as one JSON object per APK (per line), in the order in
+ * which the APKs are triaged. The APKs are triaged in parallel.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class Triager {
+
+    /**
+     * The pattern of the names of the DEX files in the root of an APK
+     */
+    private static final Pattern DEX_FILE_NAME = Pattern.compile("classes\\d*\\.dex");
+
+    /**
+     * The arguments that were provided by the user
+     */
+    private final ArgumentPackage argumentPackage;
+
+    /**
+     * The amount of APKs that could not be triaged
+     */
+    private final AtomicInteger errorCount;
+
+    /**
+     * Triages the APKs that are given in the parameters
+     *
+     * @param argumentPackage the arguments that were provided by the user,
+     * which contain the APK (or a folder with APKs) and the output file as
+     * parameters
+     */
+    public Triager(ArgumentPackage argumentPackage) {
+        this.argumentPackage = argumentPackage;
+        this.errorCount = new AtomicInteger();
+    }
+
+    /**
+     * Triages the given APK, or all APKs in the given folder (and its
+     * subfolders), and writes the results to the output file. APKs that
+     * cannot be triaged are written with an error message, after which the
+     * triage continues.
+     *
+     * @throws IOException if the input cannot be read or the output cannot be
+     * written
+     */
+    public void triage() throws IOException {
+        File input = new File(argumentPackage.getParameters().get(0));
+        File output = new File(argumentPackage.getParameters().get(1));
+        List<File> apks = new FileManager().listFiles(input, ".apk");
+        int threads = argumentPackage.getIntOption("threads", Runtime.getRuntime().availableProcessors());
+        if (threads < 1) {
+            throw new IllegalArgumentException("The amount of threads should be at least 1, but is " + threads + "!");
+        }
+        boolean hash = argumentPackage.isOptionEnabled("hash");
+        System.out.println("[+]Triaging " + apks.size() + " APK(s) with " + threads + " thread(s)");
+        long start = System.currentTimeMillis();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        CompletionService<String> completionService = new ExecutorCompletionService<>(executorService);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8))) {
+            //The amount of pending APKs is limited, so that the results of a large corpus are not kept in memory
+            int submitted = 0;
+            int completed = 0;
+            while (completed < apks.size()) {
+                while (submitted < apks.size() && submitted - completed < threads * 4) {
+                    File apk = apks.get(submitted++);
+                    completionService.submit(() -> triage(apk, hash));
+                }
+                writer.println(completionService.take().get());
+                completed++;
+                if (completed % 100 == 0 || completed == apks.size()) {
+                    ProgressReporter.reportProgress("triage", input.getAbsolutePath(), "apks", completed, apks.size());
+                }
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new IOException("The triage was interrupted: " + ex.getMessage());
+        } finally {
+            executorService.shutdownNow();
+        }
+        long duration = System.currentTimeMillis() - start;
+        System.out.println("[+]Triaged " + apks.size() + " APK(s) in " + duration + " ms (" + errorCount.get() + " could not be triaged), the results are written to " + output.getAbsolutePath());
+    }
+
+    /**
+     * Triages a single APK
+     *
+     * @param apk the APK to triage
+     * @param hash true if the SHA-256 hash of the APK is calculated, which
+     * requires the complete APK to be read
+     * @return the result as a JSON object on a single line
+     */
+    private String triage(File apk, boolean hash) {
+        StringBuilder json = new StringBuilder("{\"apk\":").append(ProgressReporter.quote(apk.getAbsolutePath()));
+        json.append(",\"size\":").append(apk.length());
+        try {
+            if (hash) {
+                json.append(",\"sha256\":").append(ProgressReporter.quote(new FileManager().hash(apk)));
+            }
+            BinaryManifest manifest = null;
+            List<DexFile> dexFiles = new ArrayList<>();
+            try (ZipFile zipFile = new ZipFile(apk)) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.getName().equals("AndroidManifest.xml")) {
+                        try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                            manifest = new BinaryManifest(new FileManager().readFully(inputStream));
+                        }
+                    } else if (DEX_FILE_NAME.matcher(entry.getName()).matches()) {
+                        //Only the header of each DEX file is read, which contains the sizes of the tables
+                        byte[] header = new byte[DexFile.HEADER_SIZE];
+                        try (DataInputStream inputStream = new DataInputStream(zipFile.getInputStream(entry))) {
+                            inputStream.readFully(header);
+                        }
+                        dexFiles.add(new DexFile(entry.getName(), header));
+                    }
+                }
+            }
+            if (manifest == null) {
+                throw new IOException("The APK does not contain an AndroidManifest.xml file!");
+            }
+            appendManifest(json, manifest);
+            appendDexFiles(json, dexFiles);
+        } catch (IOException | RuntimeException ex) {
+            errorCount.incrementAndGet();
+            json.append(",\"error\":").append(ProgressReporter.quote(ex.getMessage() == null ? ex.toString() : ex.getMessage()));
+        }
+        return json.append("}").toString();
+    }
+
+    /**
+     * Appends the values of the manifest to the given JSON object
+     *
+     * @param json the JSON object, without the closing brace
+     * @param manifest the manifest of the APK
+     */
+    private void appendManifest(StringBuilder json, BinaryManifest manifest) {
+        json.append(",\"package\":").append(ProgressReporter.quote(manifest.getPackageName()));
+        json.append(",\"versionCode\":").append(ProgressReporter.quote(manifest.getVersionCode()));
+        json.append(",\"versionName\":").append(ProgressReporter.quote(manifest.getVersionName()));
+        json.append(",\"minSdk\":").append(ProgressReporter.quote(manifest.getMinSdkVersion()));
+        json.append(",\"targetSdk\":").append(ProgressReporter.quote(manifest.getTargetSdkVersion()));
+        json.append(",\"application\":").append(ProgressReporter.quote(manifest.getApplicationName()));
+        json.append(",\"permissions\":");
+        appendList(json, manifest.getPermissions());
+        for (Map.Entry<String, List<String>> components : manifest.getComponents().entrySet()) {
+            //The tags are written in the plural form, i.e. "activities" and "services"
+            String tag = components.getKey();
+            String key = tag.endsWith("y") ? tag.substring(0, tag.length() - 1) + "ies" : tag + (tag.endsWith("s") ? "es" : "s");
+            json.append(",").append(ProgressReporter.quote(key)).append(":");
+            appendList(json, components.getValue());
+        }
+    }
+
+    /**
+     * Appends the headers of the DEX files to the given JSON object
+     *
+     * @param json the JSON object, without the closing brace
+     * @param dexFiles the DEX files of the APK
+     */
+    private void appendDexFiles(StringBuilder json, List<DexFile> dexFiles) {
+        long classCount = 0;
+        long methodCount = 0;
+        StringBuilder files = new StringBuilder("[");
+        for (DexFile dexFile : dexFiles) {
+            if (files.length() > 1) {
+                files.append(",");
+            }
+            files.append("{\"name\":").append(ProgressReporter.quote(dexFile.getName()));
+            files.append(",\"version\":").append(ProgressReporter.quote(dexFile.getVersion()));
+            files.append(",\"size\":").append(dexFile.getFileSize());
+            files.append(",\"classes\":").append(dexFile.getClassCount());
+            files.append(",\"methods\":").append(dexFile.getMethodCount());
+            files.append(",\"strings\":").append(dexFile.getStringCount()).append("}");
+            classCount += dexFile.getClassCount();
+            methodCount += dexFile.getMethodCount();
+        }
+        files.append("]");
+        json.append(",\"dexCount\":").append(dexFiles.size());
+        json.append(",\"classCount\":").append(classCount);
+        json.append(",\"methodCount\":").append(methodCount);
+        json.append(",\"dexFiles\":").append(files);
+    }
+
+    /**
+     * Appends the given values as a JSON array
+     *
+     * @param json the JSON to append the array to
+     * @param values the values of the array
+     */
+    private void appendList(StringBuilder json, List<String> values) {
+        json.append("[");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                json.append(",");
+            }
+            json.append(ProgressReporter.quote(values.get(i)));
+        }
+        json.append("]");
+    }
+}
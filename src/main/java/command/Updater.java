@@ -16,10 +16,20 @@
  */
 package command;
 
+import apc.ArtifactCache;
+import apc.GenerationManager;
 import apc.RepositoryManager;
+import java.io.File;
 import java.io.IOException;
-import library.Repositories;
+import java.util.ArrayList;
+import java.util.List;
+import library.Constants;
 import library.Tools;
+import model.ArgumentPackage;
+import model.LibraryLease;
+import model.LibraryManifest;
+import model.Repository;
+import model.Tool;
 
 /**
  * Handles the repositories to update and rebuild them
@@ -28,24 +38,105 @@ import library.Tools;
  */
 public class Updater {
 
+    /**
+     * The arguments that were provided by the user
+     */
+    private final ArgumentPackage argumentPackage;
+
+    /**
+     * Handles the repositories to update and rebuild them
+     *
+     * @param argumentPackage the arguments that were provided by the user
+     */
+    public Updater(ArgumentPackage argumentPackage) {
+        this.argumentPackage = argumentPackage;
+    }
+
+    /**
+     * Updates the tools of which the remote repository contains a newer
+     * commit than the one from which the installed tool was built. Only those
+     * repositories are pulled and rebuilt, the other tools are copied as is.
+     * All tools are updated if the "force" option is provided. The tools are
+     * placed in a new generation of the library, which replaces the active
+     * generation once it has been verified. Decompilations that are running in
+     * the meantime keep using the previous generation, which is removed once
+     * they have finished.
+     */
     public void update() throws IOException, Exception {
         System.out.println("[+]Starting the update");
         RepositoryManager repositoryManager = new RepositoryManager();
+        //Reuse the builds of other installations, if an artifact cache is provided
+        if (argumentPackage.hasOption("artifact-cache")) {
+            repositoryManager.setArtifactCache(new ArtifactCache(new File(argumentPackage.getOption("artifact-cache"))));
+        }
+        System.out.println("[+]Checking which tools have changed");
+        LibraryManifest manifest = LibraryManifest.load(new File(Constants.getLibraryManifestFile()));
+        //Only the tools that are installed are updated, as the installation might have been limited to some of the decompilers
+        List<Tool> tools = Tools.getByName(repositoryManager.getInstalledToolNames(new File(Constants.getActiveLibraryFolder())));
+        //Use the local mirror instead of Github, if one is provided
+        if (argumentPackage.hasOption("mirror")) {
+            tools = Tools.resolveMirror(tools, new File(argumentPackage.getOption("mirror")));
+        }
+        List<Tool> changedTools = repositoryManager.getChangedTools(tools, manifest, argumentPackage.isOptionEnabled("force"));
+        if (changedTools.isEmpty()) {
+            System.out.println("[+]All tools are up to date");
+            System.out.println("[+]Verifying the toolset");
+            repositoryManager.verifyInstallation();
+            System.out.println("[+]Verification succesful!");
+            System.out.println("[+]Update complete!");
+            return;
+        }
+        List<Repository> changedRepositories = new ArrayList<>();
+        List<Repository> missingRepositories = new ArrayList<>();
+        for (Tool tool : changedTools) {
+            //Tools that were taken from the compact installation have no local clone yet
+            if (tool.getRepository().getDirectory().isDirectory()) {
+                changedRepositories.add(tool.getRepository());
+            } else {
+                missingRepositories.add(tool.getRepository());
+            }
+        }
+        int depth = argumentPackage.getIntOption("depth", Constants.DEFAULT_CLONE_DEPTH);
+        if (!missingRepositories.isEmpty()) {
+            System.out.println("[+]Starting cloning the repositories that have not been cloned yet");
+            repositoryManager.cloneRepositories(missingRepositories, depth);
+            System.out.println("[+]Cloning finished");
+        }
         System.out.println("[+]Starting updating the repositories");
-        repositoryManager.updateRepositories(Repositories.getAll());
+        repositoryManager.updateRepositories(changedRepositories, depth);
         System.out.println("[+]Updating finished");
-        System.out.println("[+]Starting to build all repositories");
-        repositoryManager.buildRepositories(Tools.getTools());
-        System.out.println("[+]All projects have been built");
-        System.out.println("[+]Removing tools from the library");
-        repositoryManager.emptyLibraryFolders(Tools.getTools());
-        System.out.println("[+]Succesfully removed tools from the library");
-        System.out.println("[+]Starting to extract the builds to the library");
-        repositoryManager.extractBuilds(Tools.getTools());
-        System.out.println("[+]Extraction complete");
-        System.out.println("[+]Verifying the toolset");
-        repositoryManager.verifyInstallation();
-        System.out.println("[+]Verification succesful!");
+        System.out.println("[+]Starting to build the changed repositories");
+        repositoryManager.buildRepositories(changedTools);
+        System.out.println("[+]All changed projects have been built");
+        //The updated tools are placed in a new generation, while running decompilations keep using the active one
+        GenerationManager generationManager = new GenerationManager();
+        try (LibraryLease generation = generationManager.createGeneration()) {
+            File generationFolder = generation.getGenerationFolder();
+            File activeFolder = new File(Constants.getActiveLibraryFolder());
+            //Every tool in the active generation is carried forward, including those that are not recorded in its manifest
+            List<String> changedToolNames = Tools.getNames(changedTools);
+            List<Tool> unchangedTools = new ArrayList<>();
+            for (Tool tool : Tools.getTools()) {
+                String name = tool.getRepository().getName();
+                if (new File(activeFolder, name).isDirectory() && !changedToolNames.contains(name)) {
+                    unchangedTools.add(tool);
+                }
+            }
+            System.out.println("[+]Copying the unchanged tools to the new library generation");
+            repositoryManager.copyLibraryFolders(unchangedTools, activeFolder, generationFolder);
+            //The records of the unchanged tools are kept, both in the manifest and in the checksums
+            repositoryManager.copyManifest(activeFolder, generationFolder);
+            System.out.println("[+]Starting to extract the builds to the new library generation");
+            repositoryManager.extractBuilds(changedTools, generationFolder);
+            System.out.println("[+]Extraction complete");
+            repositoryManager.writeManifest(changedTools, generationFolder);
+            System.out.println("[+]Verifying the new library generation");
+            repositoryManager.verifyInstallation(generationFolder);
+            System.out.println("[+]Verification succesful!");
+            generationManager.activate(generationFolder);
+            System.out.println("[+]Activated library generation " + generationFolder.getName());
+        }
+        generationManager.collectGarbage();
         System.out.println("[+]Update complete!");
     }
 }
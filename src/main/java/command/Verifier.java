@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package command;
+
+import apc.ChecksumVerifier;
+import apc.RepositoryManager;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import library.Constants;
+import model.ArgumentPackage;
+import model.LibraryManifest;
+
+/**
+ * Verifies the installed tools against the library manifest, which is written
+ * during the installation and update
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class Verifier {
+
+    /**
+     * The arguments that were provided by the user
+     */
+    private final ArgumentPackage argumentPackage;
+
+    /**
+     * Verifies the installed tools against the library manifest
+     *
+     * @param argumentPackage the arguments that were provided by the user
+     */
+    public Verifier(ArgumentPackage argumentPackage) {
+        this.argumentPackage = argumentPackage;
+    }
+
+    /**
+     * Verifies the files of all installed tools. In the fast mode, the presence and size
+     * of each file is checked. In the full mode, the SHA-256 checksum of each
+     * file is compared as well.
+     *
+     * @throws IOException if the manifest cannot be read, or if one or more
+     * files differ from the installation
+     */
+    public void verify() throws IOException {
+        boolean full = "full".equals(argumentPackage.getParameters().get(0));
+        System.out.println("[+]Starting the " + (full ? "full" : "fast") + " verification of the library");
+        LibraryManifest manifest = LibraryManifest.load(new File(Constants.getLibraryManifestFile()));
+        File libraryRoot = new File(Constants.getActiveLibraryFolder());
+        //Only the installed tools are verified, as the installation might have been limited to some of the decompilers
+        List<String> toolNames = new RepositoryManager().getInstalledToolNames(libraryRoot);
+        List<String> mismatches = new ChecksumVerifier().verify(manifest, libraryRoot, toolNames, full);
+        if (mismatches.size() > 0) {
+            StringBuilder message = new StringBuilder();
+            message.append("\tThe library differs from the installation:\n");
+            for (String mismatch : mismatches) {
+                message.append("\t\t" + mismatch + "\n");
+            }
+            message.append("\tReinstall or update the library (using \"-update --force\") to repair it.");
+            throw new IOException(message.toString());
+        }
+        System.out.println("[+]Verification succesful!");
+    }
+}
@@ -26,5 +26,11 @@ public enum Action {
     COMPACT_INSTALL,
     UPDATE,
     DECOMPILE,
+    EXPORT_BUNDLES,
+    VERIFY,
+    BUILD_INDEX,
+    TRIAGE,
+    EXTRACT,
+    SEARCH,
     ERROR
 }
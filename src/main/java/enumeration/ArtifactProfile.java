@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package enumeration;
+
+/**
+ * Enumeration used to list the artifact profiles, which define the parts of
+ * the APK that are placed in the Android Studio project. The stages of the
+ * decompiler and assembler that produce the other parts are skipped.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public enum ArtifactProfile {
+    /**
+     * The manifest, resources, assets, native libraries, SMALI code and Java
+     * sources
+     */
+    FULL(true, true, true, true),
+    /**
+     * The manifest and the Java sources, without decoding the resources
+     */
+    CODE_ONLY(true, false, false, false),
+    /**
+     * The manifest, resources, assets and native libraries, without
+     * decompiling any code
+     */
+    RESOURCES_ONLY(false, true, true, false),
+    /**
+     * All parts, except for the SMALI code
+     */
+    NO_SMALI(true, true, true, false);
+
+    /**
+     * True if the Java sources are included
+     */
+    private final boolean sources;
+
+    /**
+     * True if the resources are decoded and included
+     */
+    private final boolean resources;
+
+    /**
+     * True if the assets and native libraries are included
+     */
+    private final boolean rawFiles;
+
+    /**
+     * True if the SMALI code is included
+     */
+    private final boolean smali;
+
+    /**
+     * Creates a profile with the given parts
+     *
+     * @param sources true if the Java sources are included
+     * @param resources true if the resources are decoded and included
+     * @param rawFiles true if the assets and native libraries are included
+     * @param smali true if the SMALI code is included
+     */
+    private ArtifactProfile(boolean sources, boolean resources, boolean rawFiles, boolean smali) {
+        this.sources = sources;
+        this.resources = resources;
+        this.rawFiles = rawFiles;
+        this.smali = smali;
+    }
+
+    /**
+     * Checks if the Java sources are included, meaning the DEX files are
+     * decompiled
+     *
+     * @return true if the Java sources are included, false if not
+     */
+    public boolean includesSources() {
+        return sources;
+    }
+
+    /**
+     * Checks if the resources are decoded by APKTool and included
+     *
+     * @return true if the resources are included, false if not
+     */
+    public boolean includesResources() {
+        return resources;
+    }
+
+    /**
+     * Checks if the assets and native libraries are extracted from the APK
+     * and included
+     *
+     * @return true if the assets and native libraries are included, false if
+     * not
+     */
+    public boolean includesRawFiles() {
+        return rawFiles;
+    }
+
+    /**
+     * Checks if the SMALI code is decoded by APKTool and included
+     *
+     * @return true if the SMALI code is included, false if not
+     */
+    public boolean includesSmali() {
+        return smali;
+    }
+}
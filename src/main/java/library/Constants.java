@@ -18,8 +18,14 @@ package library;
 
 import apc.AndroidProjectCreator;
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URISyntaxException;
-import java.util.UUID;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Within this class, constant values are declared. To keep an overview and
@@ -76,6 +82,28 @@ public class Constants {
         return false;
     }
 
+    /**
+     * Determines the amount of physical memory of this machine. If the amount
+     * cannot be determined, the maximum amount of memory that this JVM may
+     * use is returned instead.
+     *
+     * @return the amount of physical memory in bytes
+     */
+    public static long getPhysicalMemory() {
+        java.lang.management.OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+        if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean) {
+            //The accessor was renamed in Java 14, after which the old name is deprecated, hence both are looked up by their name
+            for (String accessor : new String[]{"getTotalMemorySize", "getTotalPhysicalMemorySize"}) {
+                try {
+                    return (Long) com.sun.management.OperatingSystemMXBean.class.getMethod(accessor).invoke(operatingSystem);
+                } catch (ReflectiveOperationException | ClassCastException ex) {
+                    //The accessor is not available in this version of Java
+                }
+            }
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
     /**
      * Obtain the base location of this instance of APC
      *
@@ -99,149 +127,344 @@ public class Constants {
      */
     private static final String LIBRARY_FOLDER_NAME = "/library";
 
+    /**
+     * The name of the manifest file within a generation of the library
+     */
+    public static final String LIBRARY_MANIFEST_FILE_NAME = "manifest.properties";
+
+    /**
+     * The name of the file within a generation of the library that contains
+     * the size and hash of each file of the tools
+     */
+    public static final String LIBRARY_CHECKSUMS_FILE_NAME = "checksums.properties";
+
     /**
      * Gets the complete path of the library folder, which resides in the same
      * directory as this JAR resides in.
      */
     public static final String LIBRARY_FOLDER = getProgramBase() + LIBRARY_FOLDER_NAME;
 
+    /**
+     * The folder in which each generation of the tools resides. An update
+     * builds a complete new generation next to the active one, after which the
+     * pointer to the active generation is switched.
+     */
+    public static final String GENERATIONS_FOLDER = LIBRARY_FOLDER + "/generations";
+
+    /**
+     * The file that contains the name of the active generation
+     */
+    public static final String GENERATION_POINTER_FILE = LIBRARY_FOLDER + "/current";
+
+    /**
+     * The file that is locked while a lease on a generation is acquired, or
+     * while unused generations are removed
+     */
+    public static final String GENERATION_LOCK_FILE = LIBRARY_FOLDER + "/generations.lock";
+
+    /**
+     * The file that is locked while missing tools are installed on demand, so
+     * that concurrent decompilations do not install the same tool twice
+     */
+    public static final String INSTALL_LOCK_FILE = LIBRARY_FOLDER + "/install.lock";
+
+    /**
+     * The name of the generation that is used by this program, or null if the
+     * library uses the layout without generations (i.e. before it was
+     * installed). It is read when this program starts, and is updated when a
+     * lease on the active generation is acquired.
+     */
+    private static volatile String activeGeneration = readActiveGeneration();
+
+    /**
+     * The maximum amount of repositories that are cloned at the same time
+     */
+    public static final int MAX_PARALLEL_CLONES = 4;
+
+    /**
+     * The default amount of commits that are cloned for each repository, as
+     * only the latest commit is built. The complete history is cloned if the
+     * depth is set to 0.
+     */
+    public static final int DEFAULT_CLONE_DEPTH = 1;
+
+    /**
+     * The estimated amount of memory (in bytes) that a single build of a tool
+     * requires, which is used to determine how many tools can be built at the
+     * same time
+     */
+    public static final long BUILD_MEMORY_ESTIMATE = 2L * 1024 * 1024 * 1024;
+
+    /**
+     * The time (in milliseconds) after which an idle Gradle daemon that was
+     * started by a build stops. The daemon is reused by the other Gradle
+     * builds during the installation, but is not kept around for hours.
+     */
+    public static final int GRADLE_DAEMON_IDLE_TIMEOUT = 60000;
+
     /**
      * The name of the build output
      */
     public static final String BUILD_OUTPUT = "buildOutput";
 
     /**
-     * The temporary folder, which is used during the decompilation process.
-     * This folder is unique during each execution of the program using the Java
-     * UUID functionality. After the execution is done (during the cleaning),
-     * the folder is removed but the folder named "temp" still exists, since
-     * multiple instances of AndroidProjectCreator can run at the same time.
+     * The default root of the scratch space, which is located within the
+     * library. This location is used when no other scratch root is configured,
+     * or when the configured root does not have enough free space for the job.
+     */
+    public static final String DEFAULT_SCRATCH_ROOT = LIBRARY_FOLDER + "/temp";
+
+    /**
+     * The estimated amount of scratch space that a decompilation requires,
+     * expressed as a multiple of the size of the APK. The decoded resources,
+     * the SMALI code, the converted JAR, the decompiled sources and the copy
+     * of the template project all reside in the scratch space at once.
+     */
+    public static final int SCRATCH_SPACE_FACTOR = 25;
+
+    /**
+     * The fixed amount of scratch space (in bytes) that is required on top of
+     * the APK based estimate, which is mostly used by the template project
+     */
+    public static final long SCRATCH_SPACE_OVERHEAD = 64L * 1024 * 1024;
+
+    /**
+     * The share of the physical memory (in percent) that the decompilers of
+     * all concurrent jobs may use together, leaving the rest for the operating
+     * system and APC itself
      */
-    public static final String TEMP_LIBRARY_FOLDER = LIBRARY_FOLDER + "/temp" + "/" + UUID.randomUUID().toString();
+    public static final int DECOMPILER_MEMORY_SHARE = 75;
 
     /**
-     * The location of JAR, which was created by convertingthe classes.dex with
-     * Dex2Jar and placed within the temporary library folder.
+     * The minimum amount of memory (in megabytes) that is given to a
+     * decompiler
      */
-    public static final String TEMP_CONVERTED_JAR = TEMP_LIBRARY_FOLDER + "/output.jar";
+    public static final int MIN_DECOMPILER_MEMORY = 512;
 
     /**
-     * The location of the template project, which is used until the assembly
-     * process is completed. After that, it is copied to the user-specified
-     * output location and deleted
+     * The maximum amount of memory (in megabytes) that is given to a
+     * decompiler by default. Above this limit, the JVM cannot use compressed
+     * object pointers, meaning more memory would hold fewer objects.
      */
-    public static final String TEMP_TEMPLATE_FOLDER = TEMP_LIBRARY_FOLDER + "/ap";
+    public static final int MAX_DECOMPILER_MEMORY = 31 * 1024;
 
     /**
-     * The main folder within the source part of the template project. This
-     * variable is used multiple times and only used within the Constants class.
+     * The default minimum length of the names that JADX generates during the
+     * deobfuscation
      */
-    private static final String TEMP_TEMPLATE_APP_SOURCE_MAIN_FOLDER = TEMP_TEMPLATE_FOLDER + "/app/src/main";
+    public static final int DEFAULT_DEOBFUSCATION_MIN_LENGTH = 3;
 
     /**
-     * The location of the source code within the template project
+     * The default maximum length of the names that JADX generates during the
+     * deobfuscation
      */
-    public static final String TEMP_TEMPLATE_SOURCE = TEMP_TEMPLATE_APP_SOURCE_MAIN_FOLDER + "/java";
+    public static final int DEFAULT_DEOBFUSCATION_MAX_LENGTH = 64;
 
     /**
-     * The location of the AndroidManifest file within the template project
+     * The amount of seconds between two progress events of a running
+     * decompiler
      */
-    public static final String TEMP_TEMPLATE_MANIFEST_FILE = TEMP_TEMPLATE_APP_SOURCE_MAIN_FOLDER + "/AndroidManifest.xml";
+    public static final int PROGRESS_INTERVAL = 2;
 
     /**
-     * The location of the resources folder within the template project
+     * The packages of well-known third party libraries, which are not
+     * decompiled if the user chooses to skip libraries
      */
-    public static final String TEMP_TEMPLATE_RESOURCES_FOLDER = TEMP_TEMPLATE_APP_SOURCE_MAIN_FOLDER + "/res";
+    public static final List<String> WELL_KNOWN_LIBRARIES = Collections.unmodifiableList(Arrays.asList(
+            "android.support",
+            "androidx",
+            "bolts",
+            "butterknife",
+            "com.bumptech.glide",
+            "com.crashlytics",
+            "com.facebook",
+            "com.fasterxml.jackson",
+            "com.google",
+            "com.squareup",
+            "dagger",
+            "io.fabric",
+            "io.reactivex",
+            "javax",
+            "kotlin",
+            "kotlinx",
+            "okhttp3",
+            "okio",
+            "org.apache",
+            "org.intellij",
+            "org.jetbrains",
+            "retrofit2",
+            "rx"
+    ));
 
     /**
-     * The location of the assets within the resources folder of the template
-     * project
+     * The minimum amount of members and references a class requires to be
+     * fingerprinted, as small classes (i.e. empty interfaces) cannot be
+     * identified reliably
      */
-    public static final String TEMP_TEMPLATE_ASSET_FOLDER = TEMP_TEMPLATE_RESOURCES_FOLDER + "/assets";
+    public static final int FINGERPRINT_MIN_FEATURES = 8;
 
     /**
-     * The location of the SMALI folder within the resources folder of the
-     * template project
+     * The name of the file in the decompiled sources that lists the classes
+     * which were recognized as part of a known library
      */
-    public static final String TEMP_TEMPLATE_SMALI_FOLDER = TEMP_TEMPLATE_SOURCE + "/smali";
+    public static final String KNOWN_CLASSES_FILE_NAME = "APC-KNOWN-CLASSES.txt";
 
     /**
-     * The location of the libraries within the template project
+     * The name of the search index file in the root of an assembled project
      */
-    public static final String TEMP_TEMPLATE_LIBS_FOLDER = TEMP_TEMPLATE_SOURCE + "/libraries";
+    public static final String SEARCH_INDEX_FILE_NAME = "APC-SEARCH-INDEX.idx";
 
     /**
-     * The temporary folder used to store the decompiled source code
+     * The maximum length of a string literal in the search index, as longer
+     * literals (i.e. embedded keys or certificates) are truncated
      */
-    public static final String TEMP_SOURCES_FOLDER = TEMP_LIBRARY_FOLDER + "/sources";
+    public static final int SEARCH_INDEX_MAX_STRING_LENGTH = 256;
 
     /**
-     * The location of the resources folder within the temporary folder
+     * Reads the name of the active generation from the pointer file
+     *
+     * @return the name of the active generation, or null if the pointer file
+     * does not exist or cannot be read
      */
-    public static final String TEMP_RESOURCES_FOLDER = TEMP_LIBRARY_FOLDER + "/apktool/res";
+    private static String readActiveGeneration() {
+        try {
+            File pointer = new File(GENERATION_POINTER_FILE);
+            if (pointer.isFile()) {
+                String generation = new String(Files.readAllBytes(pointer.toPath()), StandardCharsets.UTF_8).trim();
+                if (!generation.isEmpty()) {
+                    return generation;
+                }
+            }
+        } catch (IOException ex) {
+            //The library is treated as having no generations
+        }
+        return null;
+    }
 
     /**
-     * The location of the manifest file in the temporary folder
+     * Gets the name of the generation that is used by this program
+     *
+     * @return the name of the generation, or null if the library has no
+     * generations
      */
-    public static final String TEMP_MANIFEST_FILE = TEMP_LIBRARY_FOLDER + "/apktool/AndroidManifest.xml";
+    public static String getActiveGeneration() {
+        return activeGeneration;
+    }
 
     /**
-     * The location of the libraries in the temporary folder
+     * Sets the generation that is used by this program from now on, which is
+     * done when a lease on the active generation is acquired
+     *
+     * @param generation the name of the generation, or null if the library
+     * has no generations
      */
-    public static final String TEMP_LIB_FOLDER = TEMP_LIBRARY_FOLDER + "/apktool/lib";
+    public static void setActiveGeneration(String generation) {
+        activeGeneration = generation;
+    }
 
     /**
-     * The location of the Smali files in the temporary folder
+     * Gets the folder in which the tools of the generation that is used by
+     * this program reside. If the library has no generations, the tools reside
+     * in the library folder itself.
+     *
+     * @return the folder of the generation
      */
-    public static final String TEMP_SMALI_FOLDER = TEMP_LIBRARY_FOLDER + "/apktool-smali/smali";
+    public static String getActiveLibraryFolder() {
+        String generation = activeGeneration;
+        return generation == null ? LIBRARY_FOLDER : GENERATIONS_FOLDER + "/" + generation;
+    }
 
     /**
-     * The location of the assets in the temporary folder
+     * Gets the manifest of the generation that is used by this program, which
+     * contains information about each of the installed tools
+     *
+     * @return the manifest file
      */
-    public static final String TEMP_ASSET_FOLDER = TEMP_LIBRARY_FOLDER + "/apktool/assets";
+    public static String getLibraryManifestFile() {
+        return getActiveLibraryFolder() + "/" + LIBRARY_MANIFEST_FILE_NAME;
+    }
+
     /**
-     * The location of APKTool within the library
+     * Gets the location of APKTool within the library
+     *
+     * @return the location of APKTool
      */
-    public static final String APKTOOL_LIBRARY_FOLDER = LIBRARY_FOLDER + "/apktool";
+    public static String getApktoolLibraryFolder() {
+        return getActiveLibraryFolder() + "/apktool";
+    }
 
     /**
-     * The location of Dex2Jar within the library
+     * Gets the location of Dex2Jar within the library
+     *
+     * @return the location of Dex2Jar
      */
-    public static final String DEX2JAR_LIBRARY_FOLDER = LIBRARY_FOLDER + "/dex2jar";
+    public static String getDex2JarLibraryFolder() {
+        return getActiveLibraryFolder() + "/dex2jar";
+    }
 
     /**
-     * The location of Fernflower within the library
+     * Gets the location of Fernflower within the library
+     *
+     * @return the location of Fernflower
      */
-    public static final String FERNFLOWER_LIBRARY_FOLDER = LIBRARY_FOLDER + "/fernflower";
+    public static String getFernflowerLibraryFolder() {
+        return getActiveLibraryFolder() + "/fernflower";
+    }
 
     /**
-     * The location of JadX within the library
+     * Gets the location of JadX within the library
+     *
+     * @return the location of JadX
      */
-    public static final String JADX_LIBRARY_FOLDER = LIBRARY_FOLDER + "/jadx/bin";
+    public static String getJadxLibraryFolder() {
+        return getActiveLibraryFolder() + "/jadx/bin";
+    }
 
     /**
-     * The location of JD-CMD within the library
+     * Gets the location of JD-CMD within the library
+     *
+     * @return the location of JD-CMD
      */
-    public static final String JDCMD_LIBRARY_FOLDER = LIBRARY_FOLDER + "/jdcmd";
+    public static String getJdCmdLibraryFolder() {
+        return getActiveLibraryFolder() + "/jdcmd";
+    }
 
     /**
-     * The location of the Android Studio template project within the library
+     * Gets the location of the Android Studio template project within the library
+     *
+     * @return the location of the Android Studio template project
      */
-    public static final String ANDROIDPROJECT_LIBRARY_FOLDER = LIBRARY_FOLDER + "/androidproject";
+    public static String getAndroidProjectLibraryFolder() {
+        return getActiveLibraryFolder() + "/androidproject";
+    }
 
     /**
-     * The location of the JEB3 CLI Android Decompiler script within the library
+     * Gets the location of the JEB3 CLI Android Decompiler script within the library
+     *
+     * @return the location of the JEB3 CLI Android Decompiler script
      */
-    public static final String JEB3_CLI_ANDROID_SCRIPT_LIBRARY_FOLDER = LIBRARY_FOLDER + "/jeb3";
+    public static String getJeb3CliAndroidScriptLibraryFolder() {
+        return getActiveLibraryFolder() + "/jeb3";
+    }
+
     /**
-     * The location of CFR within the library
+     * Gets the location of CFR within the library
+     *
+     * @return the location of CFR
      */
-    public static final String CFR_LIBRARY_FOLDER = LIBRARY_FOLDER + "/cfr";
+    public static String getCfrLibraryFolder() {
+        return getActiveLibraryFolder() + "/cfr";
+    }
 
     /**
-     * The location of Procyon within the library
+     * Gets the location of Procyon within the library
+     *
+     * @return the location of Procyon
      */
-    public static final String PROCYON_LIBRARY_FOLDER = LIBRARY_FOLDER + "/procyon";
+    public static String getProcyonLibraryFolder() {
+        return getActiveLibraryFolder() + "/procyon";
+    }
+
     /**
      * The repository folder contains all cloned repositories during the
      * installation
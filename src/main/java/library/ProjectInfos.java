@@ -16,6 +16,7 @@
  */
 package library;
 
+import enumeration.BuildSystem;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
@@ -62,10 +63,10 @@ public class ProjectInfos {
         }
         File directory = new File(Constants.CFR_REPOSITORY_FOLDER);
         //Set the information required to find the build, extract and copy it to the proper directory
-        Command buildCommand = new Command(compileCommand, directory); //Gradle project
+        Command buildCommand = new Command(compileCommand, directory); //Maven project
         File buildOutputFolder = new File(Constants.CFR_REPOSITORY_FOLDER + "/target");
         String partialOutputName = "-SNAPSHOT.jar";
-        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName);
+        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName, BuildSystem.MAVEN);
     }
 
     /**
@@ -86,7 +87,7 @@ public class ProjectInfos {
         Command buildCommand = new Command(compileCommand, directory); //Gradle project
         File buildOutputFolder = new File(Constants.DEX2JAR_REPOSITORY_FOLDER + "/dex-tools/build/distributions");
         String partialOutputName = "-SNAPSHOT.zip";
-        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName);
+        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName, BuildSystem.GRADLE);
     }
 
     /**
@@ -107,7 +108,7 @@ public class ProjectInfos {
         Command buildCommand = new Command(compileCommand, directory);
         File buildOutputFolder = new File(Constants.JADX_REPOSITORY_FOLDER + "/build");
         String partialOutputName = "jadx-dev.zip";
-        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName);
+        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName, BuildSystem.GRADLE);
     }
 
     /**
@@ -126,7 +127,7 @@ public class ProjectInfos {
         Command buildCommand = new Command(compileCommand, directory);
         File buildOutputFolder = new File(Constants.JDCMD_REPOSITORY_FOLDER);
         String partialOutputName = "-SNAPSHOT-dist.zip";
-        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName);
+        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName, BuildSystem.MAVEN);
     }
 
     /**
@@ -145,7 +146,7 @@ public class ProjectInfos {
         Command buildCommand = new Command(compileCommand, directory);
         File buildOutputFolder = new File(Constants.FERNFLOWER_REPOSITORY_FOLDER + "/build/libs");
         String partialOutputName = "fernflower.jar";
-        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName);
+        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName, BuildSystem.GRADLE);
     }
 
     /**
@@ -164,6 +165,6 @@ public class ProjectInfos {
         Command buildCommand = new Command(compileCommand, directory);
         File buildOutputFolder = new File(Constants.APKTOOL_REPOSITORY_FOLDER + "/brut.apktool/apktool-cli/build/libs");
         String partialOutputName = "apktool-cli-all.jar";
-        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName);
+        return new ProjectInfo(buildCommand, buildOutputFolder, partialOutputName, BuildSystem.GRADLE);
     }
 }
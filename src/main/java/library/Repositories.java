@@ -50,6 +50,36 @@ public class Repositories {
         return repositories;
     }
 
+    /**
+     * Resolves each of the given repositories against a local mirror folder,
+     * as is described in <code>Repository.resolveMirror</code>
+     *
+     * @param repositories the repositories to resolve
+     * @param mirrorRoot the folder that contains the mirrors
+     * @return the resolved repositories, in the same order
+     */
+    public static List<Repository> resolveMirror(List<Repository> repositories, File mirrorRoot) {
+        List<Repository> resolvedRepositories = new ArrayList<>();
+        for (Repository repository : repositories) {
+            resolvedRepositories.add(repository.resolveMirror(mirrorRoot));
+        }
+        return resolvedRepositories;
+    }
+
+    /**
+     * Get the repository that contains precompiled versions of all tools,
+     * which is used for the compact installation
+     *
+     * @return the compact installation repository
+     */
+    public static Repository getCompact() {
+        String name = "CompactInstall version 1.1 (dated 11-05-2021)";
+        String url = "https://github.com/thisislibra/apc-compact.git";
+        File directory = new File(Constants.REPOSITORY_FOLDER + "/compact");
+        String branch = "11-05-2021";
+        return new Repository(name, url, directory, branch);
+    }
+
     /**
      * Get the Dex2Jar repository
      *
@@ -16,6 +16,8 @@
  */
 package library;
 
+import enumeration.DecompilerType;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import model.Tool;
@@ -48,6 +50,78 @@ public class Tools {
         return tools;
     }
 
+    /**
+     * Get the tools that are required to use the given decompilers. APKTool,
+     * Dex2Jar and the Android Studio project template are always included.
+     *
+     * @param toolNames the names of the selected decompilers (in lower case),
+     * or an empty list to select all tools
+     * @return the selected tools, in the same order as
+     * <code>getTools()</code>
+     */
+    public static List<Tool> getSelection(List<String> toolNames) {
+        if (toolNames.isEmpty()) {
+            return getTools();
+        }
+        List<Tool> tools = new ArrayList<>();
+        for (Tool tool : getTools()) {
+            String name = tool.getRepository().getName();
+            if (name.equals("androidproject")
+                    || name.equals(DecompilerType.APKTOOL.toString().toLowerCase())
+                    || name.equals(DecompilerType.DEX2JAR.toString().toLowerCase())
+                    || toolNames.contains(name)) {
+                tools.add(tool);
+            }
+        }
+        return tools;
+    }
+
+    /**
+     * Get the tools with the given names
+     *
+     * @param toolNames the names of the tools (in lower case)
+     * @return the tools, in the same order as <code>getTools()</code>
+     */
+    public static List<Tool> getByName(List<String> toolNames) {
+        List<Tool> tools = new ArrayList<>();
+        for (Tool tool : getTools()) {
+            if (toolNames.contains(tool.getRepository().getName())) {
+                tools.add(tool);
+            }
+        }
+        return tools;
+    }
+
+    /**
+     * Get the names of the given tools
+     *
+     * @param tools the tools
+     * @return the names of the repositories of the tools, in the same order
+     */
+    public static List<String> getNames(List<Tool> tools) {
+        List<String> names = new ArrayList<>();
+        for (Tool tool : tools) {
+            names.add(tool.getRepository().getName());
+        }
+        return names;
+    }
+
+    /**
+     * Resolves the repository of each of the given tools against a local
+     * mirror folder, as is described in <code>Repository.resolveMirror</code>
+     *
+     * @param tools the tools to resolve
+     * @param mirrorRoot the folder that contains the mirrors
+     * @return the tools with the resolved repositories, in the same order
+     */
+    public static List<Tool> resolveMirror(List<Tool> tools, File mirrorRoot) {
+        List<Tool> resolvedTools = new ArrayList<>();
+        for (Tool tool : tools) {
+            resolvedTools.add(new Tool(tool.getRepository().resolveMirror(mirrorRoot), tool.getProjectInfo()));
+        }
+        return resolvedTools;
+    }
+
     /**
      * The Dex2Jar tool
      *
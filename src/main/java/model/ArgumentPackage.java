@@ -17,8 +17,13 @@
 package model;
 
 import enumeration.Action;
+import enumeration.ArtifactProfile;
 import enumeration.DecompilerType;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The ArgumentPackage class is used as a single object to be shared between the
@@ -35,6 +40,8 @@ public class ArgumentPackage {
     private File outputLocation;
     private File jeb3Folder;
     private Action action;
+    private List<String> parameters = new ArrayList<>();
+    private final Map<String, String> options = new HashMap<>();
 
     /**
      * This constructor is used when an action requires no parameters, such as
@@ -46,6 +53,19 @@ public class ArgumentPackage {
         this.action = action;
     }
 
+    /**
+     * This constructor is used when an action requires one or more
+     * parameters, other than those of the DECOMPILE action
+     *
+     * @param action the action to be set
+     * @param parameters the parameters of the action, in the order in which
+     * they were provided
+     */
+    public ArgumentPackage(Action action, List<String> parameters) {
+        this.action = action;
+        this.parameters = parameters;
+    }
+
     /**
      * This constructor is used to save the requested decompiler, the APK file
      * and the output location for the Android Studio Project. Note that the
@@ -124,4 +144,129 @@ public class ArgumentPackage {
         return jeb3Folder;
     }
 
+    /**
+     * The parameters of the action, in the order in which they were provided
+     *
+     * @return the parameters of the action
+     */
+    public List<String> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Sets an optional argument, which is provided as
+     * <code>--name=value</code> or as <code>--name</code> (in which case the
+     * value equals "true")
+     *
+     * @param name the name of the option, without the leading dashes
+     * @param value the value of the option
+     */
+    public void setOption(String name, String value) {
+        options.put(name.toLowerCase(), value);
+    }
+
+    /**
+     * Gets the value of an optional argument. If the option was not provided on
+     * the command line, the environment variable with the name
+     * <code>APC_[NAME]</code> is used instead (i.e. the option "scratch" can be
+     * set with "APC_SCRATCH"). Dashes within the name are replaced by
+     * underscores for the environment variable.
+     *
+     * @param name the name of the option, without the leading dashes
+     * @return the value of the option, or null if it is not set
+     */
+    public String getOption(String name) {
+        String value = options.get(name.toLowerCase());
+        if (value == null) {
+            value = System.getenv("APC_" + name.toUpperCase().replace('-', '_'));
+        }
+        return value;
+    }
+
+    /**
+     * Checks if an optional argument has been provided, either on the command
+     * line or as an environment variable
+     *
+     * @param name the name of the option, without the leading dashes
+     * @return true if the option is set, false if not
+     */
+    public boolean hasOption(String name) {
+        return getOption(name) != null;
+    }
+
+    /**
+     * Checks if an optional flag is enabled, meaning it is set to any value
+     * other than "false"
+     *
+     * @param name the name of the flag, without the leading dashes
+     * @return true if the flag is enabled, false if not
+     */
+    public boolean isOptionEnabled(String name) {
+        String value = getOption(name);
+        return value != null && !value.equalsIgnoreCase("false");
+    }
+
+    /**
+     * Gets the value of an optional argument as a number, in the same way as
+     * <code>getOption</code> does
+     *
+     * @param name the name of the option, without the leading dashes
+     * @param defaultValue the value to return if the option is not set
+     * @return the value of the option, or the default value if it is not set
+     * @throws IllegalArgumentException if the value of the option is not a
+     * number
+     */
+    public int getIntOption(String name, int defaultValue) {
+        String value = getOption(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("The value of the option \"" + name + "\" should be a number, but is \"" + value + "\"!");
+        }
+    }
+
+    /**
+     * Gets the value of an optional argument as a list of comma separated
+     * values (i.e. "--exclude=com.google,okhttp3"), in the same way as
+     * <code>getOption</code> does. Empty values are ignored.
+     *
+     * @param name the name of the option, without the leading dashes
+     * @return the values of the option, or an empty list if it is not set
+     */
+    public List<String> getListOption(String name) {
+        List<String> values = new ArrayList<>();
+        String value = getOption(name);
+        if (value == null) {
+            return values;
+        }
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                values.add(item.trim());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Gets the artifact profile (i.e. "--profile=code-only"), which defines
+     * the parts of the APK that are placed in the Android Studio project
+     *
+     * @return the artifact profile, or the full profile if none is set
+     * @throws IllegalArgumentException if the value of the option is not an
+     * artifact profile
+     */
+    public ArtifactProfile getArtifactProfile() {
+        String value = getOption("profile");
+        if (value == null) {
+            return ArtifactProfile.FULL;
+        }
+        try {
+            return ArtifactProfile.valueOf(value.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("The value of the option \"profile\" should be full, code-only, resources-only or no-smali, but is \"" + value + "\"!");
+        }
+    }
 }
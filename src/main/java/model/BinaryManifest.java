@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the binary AndroidManifest.xml (in the Android binary XML format) as
+ * it is stored in an APK, without decoding the resources with APKTool. Only
+ * the values that are required to triage an APK are kept: the package, the
+ * version, the SDK levels, the requested permissions and the components.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class BinaryManifest {
+
+    /**
+     * The chunk type of the string pool
+     */
+    private static final int STRING_POOL_TYPE = 0x0001;
+
+    /**
+     * The chunk type of the resource identifiers of the attribute names
+     */
+    private static final int RESOURCE_MAP_TYPE = 0x0180;
+
+    /**
+     * The chunk type of the start of an element
+     */
+    private static final int START_ELEMENT_TYPE = 0x0102;
+
+    /**
+     * The flag of the string pool that indicates UTF-8 encoded strings
+     */
+    private static final int UTF8_FLAG = 0x100;
+
+    /**
+     * The names of the attributes of the Android namespace, mapped to their
+     * resource identifiers. Obfuscators can remove the names from the string
+     * pool, in which case the attributes are recognized by their identifier.
+     */
+    private static final Map<Integer, String> ATTRIBUTE_IDS = new LinkedHashMap<>();
+
+    static {
+        ATTRIBUTE_IDS.put(0x01010003, "name");
+        ATTRIBUTE_IDS.put(0x0101020c, "minSdkVersion");
+        ATTRIBUTE_IDS.put(0x01010270, "targetSdkVersion");
+        ATTRIBUTE_IDS.put(0x0101021b, "versionCode");
+        ATTRIBUTE_IDS.put(0x0101021c, "versionName");
+    }
+
+    /**
+     * The package name of the application
+     */
+    private String packageName;
+
+    /**
+     * The version code of the application
+     */
+    private String versionCode;
+
+    /**
+     * The version name of the application
+     */
+    private String versionName;
+
+    /**
+     * The minimum SDK level
+     */
+    private String minSdkVersion;
+
+    /**
+     * The target SDK level
+     */
+    private String targetSdkVersion;
+
+    /**
+     * The class name of the application
+     */
+    private String applicationName;
+
+    /**
+     * The requested permissions
+     */
+    private final List<String> permissions;
+
+    /**
+     * The components, with the tag (i.e. "activity") as key and the class
+     * names as value
+     */
+    private final Map<String, List<String>> components;
+
+    /**
+     * Parses the given binary manifest
+     *
+     * @param content the content of the binary AndroidManifest.xml
+     * @throws IOException if the content is not a binary XML file
+     */
+    public BinaryManifest(byte[] content) throws IOException {
+        permissions = new ArrayList<>();
+        components = new LinkedHashMap<>();
+        for (String tag : new String[]{"activity", "activity-alias", "service", "receiver", "provider"}) {
+            components.put(tag, new ArrayList<>());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (content.length < 8 || buffer.getShort(0) != 0x0003) {
+                throw new IOException("The manifest is not a binary XML file!");
+            }
+            String[] strings = new String[0];
+            int[] resourceIds = new int[0];
+            int position = buffer.getShort(2) & 0xFFFF;
+            while (position + 8 <= content.length) {
+                int type = buffer.getShort(position) & 0xFFFF;
+                int headerSize = buffer.getShort(position + 2) & 0xFFFF;
+                int size = buffer.getInt(position + 4);
+                //The sizes are checked before anything is allocated based on them, as a crafted manifest could otherwise exhaust the memory
+                if (size < 8 || position + size > content.length || headerSize < 8 || headerSize > size) {
+                    throw new IOException("The manifest contains a malformed chunk at offset " + position + "!");
+                }
+                if (type == STRING_POOL_TYPE) {
+                    strings = readStringPool(buffer, position, size);
+                } else if (type == RESOURCE_MAP_TYPE) {
+                    resourceIds = new int[(size - headerSize) / 4];
+                    for (int i = 0; i < resourceIds.length; i++) {
+                        resourceIds[i] = buffer.getInt(position + headerSize + i * 4);
+                    }
+                } else if (type == START_ELEMENT_TYPE) {
+                    readElement(buffer, position, headerSize, strings, resourceIds);
+                }
+                position += size;
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException ex) {
+            throw new IOException("The manifest is truncated!");
+        }
+    }
+
+    /**
+     * Reads the strings of a string pool chunk
+     *
+     * @param buffer the content of the manifest
+     * @param position the offset of the chunk
+     * @param size the size of the chunk
+     * @return the strings in the pool
+     * @throws IOException if the amount of strings or the length of a string
+     * exceeds the chunk
+     */
+    private String[] readStringPool(ByteBuffer buffer, int position, int size) throws IOException {
+        int count = buffer.getInt(position + 8);
+        boolean utf8 = (buffer.getInt(position + 16) & UTF8_FLAG) != 0;
+        int stringsStart = position + buffer.getInt(position + 20);
+        int headerSize = buffer.getShort(position + 2) & 0xFFFF;
+        int offsetsStart = position + headerSize;
+        int chunkEnd = position + size;
+        //Each string has an offset of 4 bytes, all of which reside within the chunk
+        if (count < 0 || count > (size - headerSize) / 4) {
+            throw new IOException("The string pool at offset " + position + " contains an invalid amount of strings!");
+        }
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            int offset = stringsStart + buffer.getInt(offsetsStart + i * 4);
+            strings[i] = utf8 ? readUtf8String(buffer, offset, chunkEnd) : readUtf16String(buffer, offset, chunkEnd);
+        }
+        return strings;
+    }
+
+    /**
+     * Reads a UTF-8 encoded string, which starts with its length in
+     * characters and its length in bytes (each of which takes up one or two
+     * bytes)
+     *
+     * @param buffer the content of the manifest
+     * @param offset the offset of the string
+     * @param chunkEnd the end of the string pool chunk
+     * @return the string
+     * @throws IOException if the string exceeds the chunk
+     */
+    private String readUtf8String(ByteBuffer buffer, int offset, int chunkEnd) throws IOException {
+        //The length in characters is skipped, since the length in bytes is required to decode the string
+        offset += (buffer.get(offset) & 0x80) != 0 ? 2 : 1;
+        int length = buffer.get(offset) & 0xFF;
+        if ((length & 0x80) != 0) {
+            length = ((length & 0x7F) << 8) | (buffer.get(offset + 1) & 0xFF);
+            offset++;
+        }
+        offset++;
+        if (length > chunkEnd - offset) {
+            throw new IOException("The string at offset " + offset + " exceeds the string pool!");
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a UTF-16 encoded string, which starts with its length in
+     * characters (which takes up one or two shorts)
+     *
+     * @param buffer the content of the manifest
+     * @param offset the offset of the string
+     * @param chunkEnd the end of the string pool chunk
+     * @return the string
+     * @throws IOException if the string exceeds the chunk
+     */
+    private String readUtf16String(ByteBuffer buffer, int offset, int chunkEnd) throws IOException {
+        int length = buffer.getShort(offset) & 0xFFFF;
+        if ((length & 0x8000) != 0) {
+            length = ((length & 0x7FFF) << 16) | (buffer.getShort(offset + 2) & 0xFFFF);
+            offset += 2;
+        }
+        offset += 2;
+        if (length > (chunkEnd - offset) / 2) {
+            throw new IOException("The string at offset " + offset + " exceeds the string pool!");
+        }
+        char[] characters = new char[length];
+        for (int i = 0; i < length; i++) {
+            characters[i] = buffer.getChar(offset + i * 2);
+        }
+        return new String(characters);
+    }
+
+    /**
+     * Reads the start of an element, and stores the values of the attributes
+     * that are required to triage the APK
+     *
+     * @param buffer the content of the manifest
+     * @param position the offset of the chunk
+     * @param headerSize the size of the header of the chunk
+     * @param strings the strings of the string pool
+     * @param resourceIds the resource identifiers of the attribute names
+     */
+    private void readElement(ByteBuffer buffer, int position, int headerSize, String[] strings, int[] resourceIds) {
+        int extension = position + headerSize;
+        String tag = getString(strings, buffer.getInt(extension + 4));
+        int attributeStart = buffer.getShort(extension + 8) & 0xFFFF;
+        int attributeSize = buffer.getShort(extension + 10) & 0xFFFF;
+        int attributeCount = buffer.getShort(extension + 12) & 0xFFFF;
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < attributeCount; i++) {
+            int attribute = extension + attributeStart + i * attributeSize;
+            int nameIndex = buffer.getInt(attribute + 4);
+            String name = getString(strings, nameIndex);
+            if (nameIndex >= 0 && nameIndex < resourceIds.length && ATTRIBUTE_IDS.containsKey(resourceIds[nameIndex])) {
+                name = ATTRIBUTE_IDS.get(resourceIds[nameIndex]);
+            }
+            attributes.put(name, readValue(buffer, attribute, strings));
+        }
+        switch (tag) {
+            case "manifest":
+                packageName = attributes.get("package");
+                versionCode = attributes.get("versionCode");
+                versionName = attributes.get("versionName");
+                break;
+            case "uses-sdk":
+                minSdkVersion = attributes.get("minSdkVersion");
+                targetSdkVersion = attributes.get("targetSdkVersion");
+                break;
+            case "uses-permission":
+            case "uses-permission-sdk-23":
+                if (attributes.get("name") != null) {
+                    permissions.add(attributes.get("name"));
+                }
+                break;
+            case "application":
+                applicationName = resolve(attributes.get("name"));
+                break;
+            default:
+                if (components.containsKey(tag) && attributes.get("name") != null) {
+                    components.get(tag).add(resolve(attributes.get("name")));
+                }
+                break;
+        }
+    }
+
+    /**
+     * Reads the value of an attribute as a string
+     *
+     * @param buffer the content of the manifest
+     * @param attribute the offset of the attribute
+     * @param strings the strings of the string pool
+     * @return the value of the attribute
+     */
+    private String readValue(ByteBuffer buffer, int attribute, String[] strings) {
+        int rawValue = buffer.getInt(attribute + 8);
+        if (rawValue != -1) {
+            return getString(strings, rawValue);
+        }
+        int dataType = buffer.get(attribute + 15) & 0xFF;
+        int data = buffer.getInt(attribute + 16);
+        switch (dataType) {
+            case 0x01:
+                return String.format("@0x%08x", data);
+            case 0x03:
+                return getString(strings, data);
+            case 0x11:
+                return String.format("0x%08x", data);
+            case 0x12:
+                return data != 0 ? "true" : "false";
+            default:
+                return Integer.toString(data);
+        }
+    }
+
+    /**
+     * Gets the string with the given index from the string pool
+     *
+     * @param strings the strings of the string pool
+     * @param index the index of the string
+     * @return the string, or an empty string if the index is invalid
+     */
+    private String getString(String[] strings, int index) {
+        return index >= 0 && index < strings.length ? strings[index] : "";
+    }
+
+    /**
+     * Resolves the class name of a component, which may be relative to the
+     * package of the application (i.e. ".MainActivity")
+     *
+     * @param name the name of the component as it is written in the manifest
+     * @return the fully qualified class name, or null if no name is given
+     */
+    private String resolve(String name) {
+        if (name == null || packageName == null) {
+            return name;
+        }
+        if (name.startsWith(".")) {
+            return packageName + name;
+        } else if (!name.contains(".")) {
+            return packageName + "." + name;
+        }
+        return name;
+    }
+
+    /**
+     * Gets the package name of the application
+     *
+     * @return the package name, or null if the manifest does not contain it
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Gets the version code of the application
+     *
+     * @return the version code, or null if it is not set
+     */
+    public String getVersionCode() {
+        return versionCode;
+    }
+
+    /**
+     * Gets the version name of the application
+     *
+     * @return the version name, or null if it is not set
+     */
+    public String getVersionName() {
+        return versionName;
+    }
+
+    /**
+     * Gets the minimum SDK level
+     *
+     * @return the minimum SDK level, or null if it is not set
+     */
+    public String getMinSdkVersion() {
+        return minSdkVersion;
+    }
+
+    /**
+     * Gets the target SDK level
+     *
+     * @return the target SDK level, or null if it is not set
+     */
+    public String getTargetSdkVersion() {
+        return targetSdkVersion;
+    }
+
+    /**
+     * Gets the class name of the application
+     *
+     * @return the class name of the application, or null if it is not set
+     */
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    /**
+     * Gets the requested permissions
+     *
+     * @return the requested permissions
+     */
+    public List<String> getPermissions() {
+        return permissions;
+    }
+
+    /**
+     * Gets the components of the application
+     *
+     * @return the class names of the components, grouped by their tag (i.e.
+     * "activity", "service", "receiver" and "provider")
+     */
+    public Map<String, List<String>> getComponents() {
+        return components;
+    }
+}
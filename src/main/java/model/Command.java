@@ -54,15 +54,35 @@ public class Command {
         this.workingDirectory = workingDirectory;
     }
 
+    /**
+     * Gets the command which is to be executed
+     *
+     * @return the command
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Gets the directory in which the command is executed
+     *
+     * @return the working directory
+     */
+    public File getWorkingDirectory() {
+        return workingDirectory;
+    }
+
     /**
      * Executes the command based on the previously provided information
      *
      * Original code taken from Pepe (edited by tvanfosson) from
      * https://stackoverflow.com/a/5437863 Code altered by Max 'Libra' Kersten
      *
+     * @return the exit code of the shell in which the command was executed,
+     * which equals the exit code of the (last) command
      * @throws IOException if something within the file handling goes wrong
      */
-    public void execute() throws IOException {
+    public int execute() throws IOException {
         try {
             String[] processName = new String[1];
             if (Constants.isWindows()) {
@@ -77,9 +97,10 @@ public class Command {
             //Enter commands for the shell here
             stdin.println(command);
             stdin.close();
-            p.waitFor();
+            int exitCode = p.waitFor();
             //New line to avoid the next line to be printed on the same line as the one which ends the command
             System.out.println("");
+            return exitCode;
         } catch (IOException | InterruptedException ex) {
             throw new IOException("The working directory (" + workingDirectory.getAbsolutePath() + ") can not be found or the command (" + command + ") can not be found!");
         }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import enumeration.DecompilerType;
+
+/**
+ * The performance related options of a single decompiler, such as the amount
+ * of threads and memory it may use, and the deobfuscation settings. Not every
+ * decompiler supports every option, meaning unsupported options are ignored
+ * when the command of the decompiler is created.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class DecompilerOptions {
+
+    /**
+     * The decompiler to which these options apply
+     */
+    private final DecompilerType decompilerType;
+
+    /**
+     * The amount of threads the decompiler may use
+     */
+    private final int threads;
+
+    /**
+     * The maximum heap size of the decompiler in megabytes
+     */
+    private final int memory;
+
+    /**
+     * True if the decompiler should rename obfuscated names, false if not
+     */
+    private final boolean deobfuscate;
+
+    /**
+     * The minimum length of names, shorter names are renamed during the
+     * deobfuscation
+     */
+    private final int deobfuscationMinLength;
+
+    /**
+     * The maximum length of names, longer names are renamed during the
+     * deobfuscation
+     */
+    private final int deobfuscationMaxLength;
+
+    /**
+     * Creates the options for the given decompiler
+     *
+     * @param decompilerType the decompiler to which these options apply
+     * @param threads the amount of threads the decompiler may use
+     * @param memory the maximum heap size of the decompiler in megabytes
+     * @param deobfuscate true if obfuscated names should be renamed
+     * @param deobfuscationMinLength the minimum length of names during the
+     * deobfuscation
+     * @param deobfuscationMaxLength the maximum length of names during the
+     * deobfuscation
+     */
+    public DecompilerOptions(DecompilerType decompilerType, int threads, int memory, boolean deobfuscate, int deobfuscationMinLength, int deobfuscationMaxLength) {
+        this.decompilerType = decompilerType;
+        this.threads = threads;
+        this.memory = memory;
+        this.deobfuscate = deobfuscate;
+        this.deobfuscationMinLength = deobfuscationMinLength;
+        this.deobfuscationMaxLength = deobfuscationMaxLength;
+    }
+
+    /**
+     * Gets the decompiler to which these options apply
+     *
+     * @return the decompiler
+     */
+    public DecompilerType getDecompilerType() {
+        return decompilerType;
+    }
+
+    /**
+     * Gets the amount of threads the decompiler may use
+     *
+     * @return the amount of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Gets the maximum heap size of the decompiler in megabytes
+     *
+     * @return the maximum heap size in megabytes
+     */
+    public int getMemory() {
+        return memory;
+    }
+
+    /**
+     * Checks if the decompiler should rename obfuscated names
+     *
+     * @return true if obfuscated names should be renamed, false if not
+     */
+    public boolean isDeobfuscate() {
+        return deobfuscate;
+    }
+
+    /**
+     * Gets the minimum length of names during the deobfuscation
+     *
+     * @return the minimum length
+     */
+    public int getDeobfuscationMinLength() {
+        return deobfuscationMinLength;
+    }
+
+    /**
+     * Gets the maximum length of names during the deobfuscation
+     *
+     * @return the maximum length
+     */
+    public int getDeobfuscationMaxLength() {
+        return deobfuscationMaxLength;
+    }
+
+    /**
+     * Gets the JVM flag that limits the heap size of the decompiler
+     *
+     * @return the JVM flag (i.e. "-Xmx4096m")
+     */
+    public String getJvmMemoryFlag() {
+        return "-Xmx" + memory + "m";
+    }
+}
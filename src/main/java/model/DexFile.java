@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the tables of a DEX file directly, without decompiling it. The
+ * offsets of the tables are taken from the header, as described in the
+ * Dalvik executable format specification.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class DexFile {
+
+    /**
+     * The size of the header in bytes, which suffices to read the sizes of
+     * the tables
+     */
+    public static final int HEADER_SIZE = 0x70;
+
+    /**
+     * The offset of the size of the file in the header
+     */
+    private static final int FILE_SIZE_OFFSET = 0x20;
+
+    /**
+     * The offset of the size of the string identifier table in the header
+     */
+    private static final int STRING_IDS_SIZE_OFFSET = 0x38;
+
+    /**
+     * The offset of the size of the type identifier table in the header
+     */
+    private static final int TYPE_IDS_SIZE_OFFSET = 0x40;
+
+    /**
+     * The offset of the size of the class definition table in the header
+     */
+    private static final int CLASS_DEFS_SIZE_OFFSET = 0x60;
+
+    /**
+     * The offset of the size of the prototype identifier table in the header
+     */
+    private static final int PROTO_IDS_SIZE_OFFSET = 0x48;
+
+    /**
+     * The offset of the size of the method identifier table in the header
+     */
+    private static final int METHOD_IDS_SIZE_OFFSET = 0x58;
+
+    /**
+     * The size of a single prototype identifier in bytes
+     */
+    private static final int PROTO_ID_SIZE = 0x0C;
+
+    /**
+     * The size of a single method identifier in bytes
+     */
+    private static final int METHOD_ID_SIZE = 0x08;
+
+    /**
+     * The size of a single class definition in bytes
+     */
+    private static final int CLASS_DEF_SIZE = 0x20;
+
+    /**
+     * The name of the DEX file
+     */
+    private final String name;
+
+    /**
+     * The content of the DEX file, in little endian byte order
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Reads the given DEX file into memory
+     *
+     * @param file the DEX file to read
+     * @throws IOException if the file cannot be read or is not a DEX file
+     */
+    public DexFile(File file) throws IOException {
+        this(file.getName(), Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Creates a DEX file from the given content. If only the header is
+     * given, only the sizes of the tables and the version can be read.
+     *
+     * @param name the name of the DEX file
+     * @param content the content of the DEX file, or at least its header
+     * @throws IOException if the content is not a DEX file
+     */
+    public DexFile(String name, byte[] content) throws IOException {
+        this.name = name;
+        this.buffer = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+        if (content.length < HEADER_SIZE || content[0] != 'd' || content[1] != 'e' || content[2] != 'x' || content[3] != '\n') {
+            throw new IOException("The file " + name + " is not a DEX file!");
+        }
+    }
+
+    /**
+     * Gets the name of the DEX file
+     *
+     * @return the name of the DEX file
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the version of the DEX format (i.e. "035")
+     *
+     * @return the version of the DEX format
+     */
+    public String getVersion() {
+        return new String(new char[]{(char) buffer.get(4), (char) buffer.get(5), (char) buffer.get(6)});
+    }
+
+    /**
+     * Gets the size of the DEX file, as it is stored in the header
+     *
+     * @return the size of the DEX file in bytes
+     */
+    public long getFileSize() {
+        return buffer.getInt(FILE_SIZE_OFFSET) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Gets the amount of strings in the string identifier table
+     *
+     * @return the amount of strings
+     */
+    public int getStringCount() {
+        return buffer.getInt(STRING_IDS_SIZE_OFFSET);
+    }
+
+    /**
+     * Gets the amount of methods in the method identifier table, which
+     * includes the methods that are only referenced
+     *
+     * @return the amount of methods
+     */
+    public int getMethodCount() {
+        return buffer.getInt(METHOD_IDS_SIZE_OFFSET);
+    }
+
+    /**
+     * Gets the amount of types in the type identifier table
+     *
+     * @return the amount of types
+     */
+    public int getTypeCount() {
+        return buffer.getInt(TYPE_IDS_SIZE_OFFSET);
+    }
+
+    /**
+     * Gets the amount of classes that are defined in this DEX file, including
+     * inner classes
+     *
+     * @return the amount of classes
+     */
+    public int getClassCount() {
+        return buffer.getInt(CLASS_DEFS_SIZE_OFFSET);
+    }
+
+    /**
+     * Gets the descriptors (i.e. "Lcom/example/MainActivity;") of all classes
+     * that are defined in this DEX file
+     *
+     * @return the descriptors of the defined classes
+     * @throws IOException if the DEX file is malformed
+     */
+    public List<String> getClassDescriptors() throws IOException {
+        int classCount = getClassCount();
+        int classDefsOffset = buffer.getInt(CLASS_DEFS_SIZE_OFFSET + 4);
+        //The table is checked as a whole, as an obfuscated header could otherwise point outside of the file
+        if (classCount < 0 || classDefsOffset < 0 || classDefsOffset + (long) classCount * CLASS_DEF_SIZE > buffer.capacity()) {
+            throw new IOException("The class definition table is malformed in " + name + "!");
+        }
+        List<String> descriptors = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            descriptors.add(getType(buffer.getInt(classDefsOffset + i * CLASS_DEF_SIZE)));
+        }
+        return descriptors;
+    }
+
+    /**
+     * Gets the descriptor of the type with the given index
+     *
+     * @param index the index within the type identifier table
+     * @return the descriptor of the type
+     * @throws IOException if the DEX file is malformed
+     */
+    public String getType(int index) throws IOException {
+        if (index < 0 || index >= getTypeCount()) {
+            throw new IOException("The type index " + index + " is invalid in " + name + "!");
+        }
+        try {
+            return getString(buffer.getInt(buffer.getInt(TYPE_IDS_SIZE_OFFSET + 4) + index * 4));
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("The type at index " + index + " is malformed in " + name + "!");
+        }
+    }
+
+    /**
+     * Gets the signature of the method with the given index, in the notation
+     * of SMALI (i.e. "Lcom/example/MainActivity;->onCreate(Landroid/os/Bundle;)V")
+     *
+     * @param index the index within the method identifier table
+     * @return the signature of the method
+     * @throws IOException if the DEX file is malformed
+     */
+    public String getMethod(int index) throws IOException {
+        if (index < 0 || index >= getMethodCount()) {
+            throw new IOException("The method index " + index + " is invalid in " + name + "!");
+        }
+        try {
+            int method = buffer.getInt(METHOD_IDS_SIZE_OFFSET + 4) + index * METHOD_ID_SIZE;
+            String owner = getType(buffer.getShort(method) & 0xFFFF);
+            int protoIndex = buffer.getShort(method + 2) & 0xFFFF;
+            String methodName = getString(buffer.getInt(method + 4));
+            return owner + "->" + methodName + getPrototype(protoIndex);
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("The method at index " + index + " is malformed in " + name + "!");
+        }
+    }
+
+    /**
+     * Gets the descriptor of the prototype with the given index, which
+     * consists of the parameter types and the return type (i.e.
+     * "(ILjava/lang/String;)V")
+     *
+     * @param index the index within the prototype identifier table
+     * @return the descriptor of the prototype
+     * @throws IOException if the DEX file is malformed
+     */
+    private String getPrototype(int index) throws IOException {
+        if (index < 0 || index >= buffer.getInt(PROTO_IDS_SIZE_OFFSET)) {
+            throw new IOException("The prototype index " + index + " is invalid in " + name + "!");
+        }
+        int prototype = buffer.getInt(PROTO_IDS_SIZE_OFFSET + 4) + index * PROTO_ID_SIZE;
+        StringBuilder descriptor = new StringBuilder("(");
+        //The parameters are stored as a list of type indices, of which the offset is 0 if there are no parameters
+        int parametersOffset = buffer.getInt(prototype + 8);
+        if (parametersOffset != 0) {
+            int size = buffer.getInt(parametersOffset);
+            for (int i = 0; i < size; i++) {
+                descriptor.append(getType(buffer.getShort(parametersOffset + 4 + i * 2) & 0xFFFF));
+            }
+        }
+        return descriptor.append(")").append(getType(buffer.getInt(prototype + 4))).toString();
+    }
+
+    /**
+     * Gets the string with the given index
+     *
+     * @param index the index within the string identifier table
+     * @return the string
+     * @throws IOException if the DEX file is malformed
+     */
+    public String getString(int index) throws IOException {
+        if (index < 0 || index >= getStringCount()) {
+            throw new IOException("The string index " + index + " is invalid in " + name + "!");
+        }
+        try {
+            ByteBuffer data = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            data.position(buffer.getInt(buffer.getInt(STRING_IDS_SIZE_OFFSET + 4) + index * 4));
+            int length = readUleb128(data);
+            //Each UTF-16 code unit takes at least one byte, which bounds the length before the characters are allocated
+            if (length < 0 || length > data.remaining()) {
+                throw new IOException("The length of the string at index " + index + " is invalid in " + name + "!");
+            }
+            return decodeMutf8(data, length);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new IOException("The string at index " + index + " is malformed in " + name + "!");
+        }
+    }
+
+    /**
+     * Reads an unsigned LEB128 encoded value at the position of the given
+     * buffer
+     *
+     * @param data the buffer to read from
+     * @return the decoded value
+     */
+    private int readUleb128(ByteBuffer data) {
+        int result = 0;
+        int shift = 0;
+        int value;
+        do {
+            value = data.get() & 0xFF;
+            result |= (value & 0x7F) << shift;
+            shift += 7;
+        } while ((value & 0x80) != 0 && shift < 35);
+        return result;
+    }
+
+    /**
+     * Decodes a modified UTF-8 string, which is the encoding that is used for
+     * the strings within a DEX file
+     *
+     * @param data the buffer to read from, positioned at the string data
+     * @param length the length of the string in UTF-16 code units
+     * @return the decoded string
+     */
+    private String decodeMutf8(ByteBuffer data, int length) {
+        char[] characters = new char[length];
+        for (int i = 0; i < length; i++) {
+            int first = data.get() & 0xFF;
+            if (first < 0x80) {
+                characters[i] = (char) first;
+            } else if ((first & 0xE0) == 0xC0) {
+                characters[i] = (char) (((first & 0x1F) << 6) | (data.get() & 0x3F));
+            } else {
+                int second = data.get() & 0x3F;
+                characters[i] = (char) (((first & 0x0F) << 12) | (second << 6) | (data.get() & 0x3F));
+            }
+        }
+        return new String(characters);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+/**
+ * A file within the library folder of a tool, as it is recorded in the
+ * library manifest
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class LibraryFile {
+
+    /**
+     * The path of the file, relative to the library folder of the tool, using
+     * forward slashes as separators
+     */
+    private final String path;
+
+    /**
+     * The size of the file in bytes
+     */
+    private final long size;
+
+    /**
+     * The SHA-256 hash of the file
+     */
+    private final String hash;
+
+    /**
+     * Creates a record of a file within the library folder of a tool
+     *
+     * @param path the path of the file, relative to the library folder of the
+     * tool
+     * @param size the size of the file in bytes
+     * @param hash the SHA-256 hash of the file
+     */
+    public LibraryFile(String path, long size, String hash) {
+        this.path = path;
+        this.size = size;
+        this.hash = hash;
+    }
+
+    /**
+     * Gets the path of the file, relative to the library folder of the tool
+     *
+     * @return the relative path of the file
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the size of the file in bytes
+     *
+     * @return the size of the file
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the SHA-256 hash of the file
+     *
+     * @return the hash of the file
+     */
+    public String getHash() {
+        return hash;
+    }
+}
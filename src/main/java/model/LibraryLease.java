@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+
+/**
+ * A lease on a generation of the library, which prevents the generation from
+ * being removed while it is in use. The lease is a locked file within the
+ * generation. Since the operating system releases the lock when the process
+ * exits, the lease of a crashed process is recognised as stale.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class LibraryLease implements Closeable {
+
+    /**
+     * The folder of the generation on which the lease is held
+     */
+    private final File generationFolder;
+
+    /**
+     * The lease file, or null if the library has no generations
+     */
+    private final File leaseFile;
+
+    /**
+     * The channel of the lease file, or null if the library has no generations
+     */
+    private final FileChannel channel;
+
+    /**
+     * The lock on the lease file, or null if the library has no generations
+     */
+    private final FileLock lock;
+
+    /**
+     * Creates a lease on a generation of the library
+     *
+     * @param generationFolder the folder of the generation
+     * @param leaseFile the lease file, or null if the library has no
+     * generations
+     * @param channel the channel of the lease file, or null if the library has
+     * no generations
+     * @param lock the lock on the lease file, or null if the library has no
+     * generations
+     */
+    public LibraryLease(File generationFolder, File leaseFile, FileChannel channel, FileLock lock) {
+        this.generationFolder = generationFolder;
+        this.leaseFile = leaseFile;
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Gets the folder of the generation on which the lease is held
+     *
+     * @return the folder of the generation
+     */
+    public File getGenerationFolder() {
+        return generationFolder;
+    }
+
+    /**
+     * Releases the lease, after which the generation can be removed if it is
+     * no longer active
+     *
+     * @throws IOException if the lock cannot be released
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            lock.release();
+        } finally {
+            channel.close();
+            Files.deleteIfExists(leaseFile.toPath());
+        }
+    }
+}
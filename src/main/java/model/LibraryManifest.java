@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import library.Constants;
+
+/**
+ * The manifest of the library, which contains information about each of the
+ * installed tools, such as the commit from which it was built, its version
+ * and its entry point. The manifest is stored as a small properties file
+ * within the library folder, which is read whenever a decompilation starts.
+ * The size and SHA-256 hash of each file of the tools are stored in a
+ * separate properties file next to it, which is only read when the files are
+ * verified.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class LibraryManifest {
+
+    /**
+     * The file in which the manifest is stored
+     */
+    private final File file;
+
+    /**
+     * The properties that are stored in the manifest
+     */
+    private final Properties properties;
+
+    /**
+     * The file in which the size and hash of the files of the tools are
+     * stored
+     */
+    private final File checksumsFile;
+
+    /**
+     * The size and hash of the files of the tools, or null if these have not
+     * been loaded yet
+     */
+    private Properties checksums;
+
+    /**
+     * Creates an empty manifest, which is stored in the given file when it is
+     * saved
+     *
+     * @param file the file in which the manifest is stored
+     */
+    public LibraryManifest(File file) {
+        this.file = file;
+        this.properties = new Properties();
+        this.checksumsFile = new File(file.getAbsoluteFile().getParentFile(), Constants.LIBRARY_CHECKSUMS_FILE_NAME);
+    }
+
+    /**
+     * Loads the manifest from the given file. If the file does not exist, an
+     * empty manifest is returned.
+     *
+     * @param file the file in which the manifest is stored
+     * @return the manifest
+     * @throws IOException if the manifest exists but cannot be read
+     */
+    public static LibraryManifest load(File file) throws IOException {
+        LibraryManifest manifest = new LibraryManifest(file);
+        if (file.isFile()) {
+            try (InputStream input = new FileInputStream(file)) {
+                manifest.properties.load(input);
+            } catch (IOException ex) {
+                throw new IOException("The library manifest (" + file.getAbsolutePath() + ") cannot be read!");
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Saves the manifest to its file, as well as the recorded files if these
+     * have been loaded or changed. Each file is written to a temporary file
+     * first, which then replaces the existing file.
+     *
+     * @throws IOException if the manifest cannot be written
+     */
+    public void save() throws IOException {
+        store(properties, file, "AndroidProjectCreator library manifest");
+        if (checksums != null) {
+            store(checksums, checksumsFile, "AndroidProjectCreator library checksums");
+        }
+    }
+
+    /**
+     * Writes the given properties to a temporary file, which then replaces
+     * the given file
+     *
+     * @param values the properties to write
+     * @param destination the file to replace
+     * @param comment the comment at the top of the file
+     * @throws IOException if the file cannot be written
+     */
+    private void store(Properties values, File destination, String comment) throws IOException {
+        File temporaryFile = new File(destination.getAbsolutePath() + ".tmp");
+        try (OutputStream output = new FileOutputStream(temporaryFile)) {
+            values.store(output, comment);
+        }
+        try {
+            Files.move(temporaryFile.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new IOException("The library manifest (" + destination.getAbsolutePath() + ") cannot be written!");
+        }
+    }
+
+    /**
+     * Loads the recorded files of the tools from their file, unless these
+     * have been loaded already. If the file does not exist, no files are
+     * recorded.
+     *
+     * @return the recorded files
+     * @throws IOException if the file exists but cannot be read
+     */
+    private Properties getChecksums() throws IOException {
+        if (checksums == null) {
+            Properties loaded = new Properties();
+            if (checksumsFile.isFile()) {
+                try (InputStream input = new FileInputStream(checksumsFile)) {
+                    loaded.load(input);
+                } catch (IOException ex) {
+                    throw new IOException("The library checksums (" + checksumsFile.getAbsolutePath() + ") cannot be read!");
+                }
+            }
+            checksums = loaded;
+        }
+        return checksums;
+    }
+
+    /**
+     * Gets the commit from which the given tool was built
+     *
+     * @param toolName the name of the tool
+     * @return the commit hash, or null if it is unknown
+     */
+    public String getCommit(String toolName) {
+        return properties.getProperty(toolName + ".commit");
+    }
+
+    /**
+     * Sets the commit from which the given tool was built
+     *
+     * @param toolName the name of the tool
+     * @param commit the commit hash
+     */
+    public void setCommit(String toolName, String commit) {
+        properties.setProperty(toolName + ".commit", commit);
+    }
+
+    /**
+     * Gets the version of the given tool
+     *
+     * @param toolName the name of the tool
+     * @return the version, or null if it is unknown
+     */
+    public String getVersion(String toolName) {
+        return properties.getProperty(toolName + ".version");
+    }
+
+    /**
+     * Sets the version of the given tool
+     *
+     * @param toolName the name of the tool
+     * @param version the version
+     */
+    public void setVersion(String toolName, String version) {
+        properties.setProperty(toolName + ".version", version);
+    }
+
+    /**
+     * Gets the entry point of the given tool (i.e. the JAR or script that is
+     * executed), relative to the library folder of the tool
+     *
+     * @param toolName the name of the tool
+     * @return the relative path of the entry point, or null if it is unknown
+     */
+    public String getEntryPoint(String toolName) {
+        return properties.getProperty(toolName + ".entry");
+    }
+
+    /**
+     * Sets the entry point of the given tool, relative to the library folder
+     * of the tool
+     *
+     * @param toolName the name of the tool
+     * @param entryPoint the relative path of the entry point
+     */
+    public void setEntryPoint(String toolName, String entryPoint) {
+        properties.setProperty(toolName + ".entry", entryPoint);
+    }
+
+    /**
+     * Gets the files that are recorded for the given tool. Each file is stored
+     * in the checksums file as "[tool].file.[path]=[size]:[hash]".
+     *
+     * @param toolName the name of the tool
+     * @return the recorded files, which is empty if no files are recorded
+     * @throws IOException if the recorded files cannot be read
+     */
+    public List<LibraryFile> getFiles(String toolName) throws IOException {
+        List<LibraryFile> files = new ArrayList<>();
+        String prefix = toolName + ".file.";
+        Properties records = getChecksums();
+        for (String key : records.stringPropertyNames()) {
+            if (!key.startsWith(prefix)) {
+                continue;
+            }
+            String value = records.getProperty(key);
+            int separator = value.indexOf(':');
+            files.add(new LibraryFile(key.substring(prefix.length()), Long.parseLong(value.substring(0, separator)), value.substring(separator + 1)));
+        }
+        return files;
+    }
+
+    /**
+     * Replaces the recorded files of the given tool
+     *
+     * @param toolName the name of the tool
+     * @param files the files of the tool
+     * @throws IOException if the previously recorded files cannot be read
+     */
+    public void setFiles(String toolName, List<LibraryFile> files) throws IOException {
+        String prefix = toolName + ".file.";
+        Properties records = getChecksums();
+        for (String key : records.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                records.remove(key);
+            }
+        }
+        for (LibraryFile file : files) {
+            records.setProperty(prefix + file.getPath(), file.getSize() + ":" + file.getHash());
+        }
+    }
+}
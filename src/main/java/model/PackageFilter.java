@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which classes are decompiled, based on the packages that are
+ * included and excluded. A package matches all classes within it and within
+ * its subpackages. If a class matches both an included and an excluded
+ * package, the most specific (i.e. longest) package decides. Classes that do
+ * not match any package are decompiled, unless included packages are given.
+ * Kept packages and classes (such as the code of the application itself) are
+ * matched like included ones, but do not limit the decompilation to them. A
+ * kept class also matches its nested classes.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class PackageFilter {
+
+    /**
+     * The packages of which the classes are decompiled
+     */
+    private final List<String> includes;
+
+    /**
+     * The packages of which the classes are not decompiled
+     */
+    private final List<String> excludes;
+
+    /**
+     * The packages and classes that are decompiled unless a more specific
+     * package is excluded
+     */
+    private final List<String> keeps;
+
+    /**
+     * Creates a filter with the given packages, which are written in the Java
+     * notation (i.e. "com.example")
+     *
+     * @param includes the packages of which the classes are decompiled
+     * @param excludes the packages of which the classes are not decompiled
+     */
+    public PackageFilter(List<String> includes, List<String> excludes) {
+        this(includes, excludes, new ArrayList<>());
+    }
+
+    /**
+     * Creates a filter with the given packages, which are written in the Java
+     * notation (i.e. "com.example")
+     *
+     * @param includes the packages of which the classes are decompiled
+     * @param excludes the packages of which the classes are not decompiled
+     * @param keeps the packages and classes that are decompiled unless a more
+     * specific package is excluded, such as the code of the application itself
+     * if the packages of well-known libraries are excluded
+     */
+    public PackageFilter(List<String> includes, List<String> excludes, List<String> keeps) {
+        this.includes = normalize(includes);
+        this.excludes = normalize(excludes);
+        this.keeps = normalize(keeps);
+    }
+
+    /**
+     * Checks if this filter accepts all classes, meaning no filtering is
+     * required
+     *
+     * @return true if no packages are included or excluded, false if not
+     */
+    public boolean isEmpty() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    /**
+     * Checks if the given class should be decompiled
+     *
+     * @param className the fully qualified name of the class, in the Java
+     * notation (i.e. "com.example.MainActivity")
+     * @return true if the class should be decompiled, false if not
+     */
+    public boolean accepts(String className) {
+        int include = getLongestMatch(includes, className);
+        //The kept packages do not add classes that are not included
+        if (include != -1 || includes.isEmpty()) {
+            include = Math.max(include, getLongestMatch(keeps, className));
+        }
+        int exclude = getLongestMatch(excludes, className);
+        if (include == -1 && exclude == -1) {
+            return includes.isEmpty();
+        }
+        return include >= exclude;
+    }
+
+    /**
+     * Checks if the class with the given type descriptor (i.e.
+     * "Lcom/example/MainActivity;") should be decompiled
+     *
+     * @param descriptor the type descriptor of the class
+     * @return true if the class should be decompiled, false if not
+     */
+    public boolean acceptsDescriptor(String descriptor) {
+        String className = descriptor;
+        if (className.startsWith("L") && className.endsWith(";")) {
+            className = className.substring(1, className.length() - 1);
+        }
+        return accepts(className.replace('/', '.'));
+    }
+
+    /**
+     * Gets the length of the longest package in the given list that contains
+     * the given class. A class name in the list matches the class itself and
+     * its nested classes.
+     *
+     * @param packages the packages to match
+     * @param className the fully qualified name of the class
+     * @return the length of the longest matching package, or -1 if none of
+     * the packages matches
+     */
+    private int getLongestMatch(List<String> packages, String className) {
+        int longest = -1;
+        for (String packageName : packages) {
+            if (packageName.length() > longest && (className.startsWith(packageName + ".") || className.equals(packageName) || className.startsWith(packageName + "$"))) {
+                longest = packageName.length();
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Converts the given packages to the Java notation, without trailing
+     * wildcards or dots (i.e. "com/example/*" becomes "com.example")
+     *
+     * @param packages the packages to normalize
+     * @return the normalized packages
+     */
+    private List<String> normalize(List<String> packages) {
+        List<String> normalized = new ArrayList<>();
+        for (String packageName : packages) {
+            String name = packageName.trim().replace('/', '.');
+            while (name.endsWith("*") || name.endsWith(".")) {
+                name = name.substring(0, name.length() - 1);
+            }
+            if (!name.isEmpty()) {
+                normalized.add(name);
+            }
+        }
+        return normalized;
+    }
+}
@@ -16,6 +16,7 @@
  */
 package model;
 
+import enumeration.BuildSystem;
 import java.io.File;
 
 /**
@@ -43,6 +44,12 @@ public class ProjectInfo {
      */
     private final String partialOutputName;
 
+    /**
+     * The build system that the project uses, which determines the options
+     * that can be passed to the build command
+     */
+    private final BuildSystem buildSystem;
+
     /**
      * Create an object with information about a repository
      *
@@ -53,11 +60,13 @@ public class ProjectInfo {
      * @param partialOutputName In some cases, the version number is in the name
      * of the build output, so only the partial name can be used. If the full
      * name is known, it can be used here as well.
+     * @param buildSystem the build system that the project uses
      */
-    public ProjectInfo(Command buildCommand, File buildOutputFolder, String partialOutputName) {
+    public ProjectInfo(Command buildCommand, File buildOutputFolder, String partialOutputName, BuildSystem buildSystem) {
         this.buildOutputFolder = buildOutputFolder;
         this.buildCommand = buildCommand;
         this.partialOutputName = partialOutputName;
+        this.buildSystem = buildSystem;
     }
 
     /**
@@ -88,4 +97,13 @@ public class ProjectInfo {
     public String getPartialOutputName() {
         return partialOutputName;
     }
+
+    /**
+     * Get the build system that the project uses
+     *
+     * @return the build system
+     */
+    public BuildSystem getBuildSystem() {
+        return buildSystem;
+    }
 }
@@ -17,12 +17,20 @@
 package model;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 import static java.util.Collections.singleton;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.lib.TextProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.transport.BundleWriter;
 
 /**
  * The repository from which a tool is cloned
@@ -51,6 +59,12 @@ public class Repository {
      */
     private final String branch;
 
+    /**
+     * Whether the Git command line client is available, which is determined
+     * once when it is first needed
+     */
+    private static Boolean gitAvailable;
+
     /**
      * Create a repository object which can be used to clone the repository with
      * the provided information
@@ -78,20 +92,237 @@ public class Repository {
     }
 
     /**
-     * Function to clone the repository
+     * Gets the URL of the repository
+     *
+     * @return the URL of the repository
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Gets the branch of the repository which is used
+     *
+     * @return the branch
+     */
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * Gets the local directory in which the repository is cloned
+     *
+     * @return the local directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the name under which the repository is stored in a mirror folder,
+     * which equals the last part of its URL without the ".git" extension (i.e.
+     * "jadx" for "https://github.com/skylot/jadx.git")
+     *
+     * @return the name of the repository within a mirror
+     */
+    public String getMirrorName() {
+        String mirrorName = url.replace('\\', '/');
+        while (mirrorName.endsWith("/")) {
+            mirrorName = mirrorName.substring(0, mirrorName.length() - 1);
+        }
+        mirrorName = mirrorName.substring(mirrorName.lastIndexOf('/') + 1);
+        if (mirrorName.endsWith(".git")) {
+            mirrorName = mirrorName.substring(0, mirrorName.length() - 4);
+        } else if (mirrorName.endsWith(".bundle")) {
+            mirrorName = mirrorName.substring(0, mirrorName.length() - 7);
+        }
+        return mirrorName;
+    }
+
+    /**
+     * Resolves this repository against a local mirror folder. The mirror can
+     * contain a Git bundle (named "[mirror name].bundle"), a bare repository
+     * (named "[mirror name].git") or a regular repository (named "[mirror
+     * name]"), which are checked in that order.
+     *
+     * @param mirrorRoot the folder that contains the mirrors
+     * @return a repository with the URL of the mirror, or this repository if
+     * the mirror does not contain it
+     */
+    public Repository resolveMirror(File mirrorRoot) {
+        String mirrorName = getMirrorName();
+        File[] candidates = {
+            new File(mirrorRoot, mirrorName + ".bundle"),
+            new File(mirrorRoot, mirrorName + ".git"),
+            new File(mirrorRoot, mirrorName)
+        };
+        for (File candidate : candidates) {
+            if (candidate.exists()) {
+                return new Repository(name, candidate.getAbsolutePath(), directory, branch);
+            }
+        }
+        System.out.println("[+]No mirror of " + name + " found in " + mirrorRoot.getAbsolutePath() + ", using " + url);
+        return this;
+    }
+
+    /**
+     * Writes the complete history of the branch of this repository to a Git
+     * bundle. The repository is cloned as a bare repository into the local
+     * directory of this object first, which should not exist yet.
      *
+     * @param bundle the bundle file to write
+     * @throws IOException if the repository cannot be cloned, or if the
+     * bundle cannot be written
+     */
+    public void exportBundle(File bundle) throws IOException {
+        File temporaryBundle = new File(bundle.getAbsolutePath() + ".tmp");
+        try (Git git = Git.cloneRepository()
+                .setProgressMonitor(new RepositoryProgressMonitor(name))
+                .setURI(url)
+                .setDirectory(directory)
+                .setBare(true)
+                .setBranchesToClone(singleton(branch))
+                .setBranch(branch)
+                .call()) {
+            Ref ref = git.getRepository().exactRef("refs/heads/" + branch);
+            if (ref == null) {
+                throw new IOException("The branch " + branch + " does not exist in the repository of " + name + "!");
+            }
+            BundleWriter bundleWriter = new BundleWriter(git.getRepository());
+            bundleWriter.include(ref);
+            try (OutputStream output = new FileOutputStream(temporaryBundle)) {
+                bundleWriter.writeBundle(new RepositoryProgressMonitor(name), output);
+            }
+            Files.move(temporaryBundle.toPath(), bundle.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (GitAPIException ex) {
+            //Because the GitAPIException is abstract and cannot be instantiated, another (similar) exception is used
+            throw new IOException("There was an error cloning " + name + " to export it as a bundle!");
+        }
+    }
+
+    /**
+     * Gets the commit that is currently checked out in the local clone
+     *
+     * @return the hash of the checked out commit
+     * @throws IOException if the local clone cannot be opened
+     */
+    public String getHeadCommit() throws IOException {
+        try (Git git = Git.open(directory)) {
+            ObjectId head = git.getRepository().resolve("HEAD");
+            if (head == null) {
+                throw new IOException("The repository of " + name + " has no checked out commit!");
+            }
+            return head.name();
+        } catch (IOException ex) {
+            throw new IOException("The repository of " + name + " cannot be opened (" + directory.getAbsolutePath() + ")!");
+        }
+    }
+
+    /**
+     * Gets the version of the checked out commit, which is the name of the
+     * nearest tag (as is returned by <code>git describe --tags</code>). If no
+     * tag is reachable, which is often the case for shallow clones, the
+     * abbreviated hash of the checked out commit is used instead.
+     *
+     * @return the version of the checked out commit
+     * @throws IOException if the local clone cannot be opened
+     */
+    public String getVersion() throws IOException {
+        try (Git git = Git.open(directory)) {
+            String version = git.describe().setTags(true).call();
+            if (version != null) {
+                return version;
+            }
+        } catch (GitAPIException | IOException ex) {
+            //The abbreviated hash is used instead
+        }
+        return getHeadCommit().substring(0, 8);
+    }
+
+    /**
+     * Gets the latest commit of the branch on the remote repository, without
+     * fetching any of its objects
+     *
+     * @return the hash of the latest commit of the branch
+     * @throws IOException if the remote repository cannot be reached, or if
+     * the branch does not exist
+     */
+    public String getRemoteCommit() throws IOException {
+        try {
+            for (Ref ref : Git.lsRemoteRepository().setRemote(url).setHeads(true).call()) {
+                if (ref.getName().equals("refs/heads/" + branch)) {
+                    return ref.getObjectId().name();
+                }
+            }
+        } catch (GitAPIException ex) {
+            //Because the GitAPIException is abstract and cannot be instantiated, another (similar) exception is used
+            throw new IOException("The remote repository of " + name + " cannot be reached!");
+        }
+        throw new IOException("The branch " + branch + " does not exist in the remote repository of " + name + "!");
+    }
+
+    /**
+     * Function to clone the repository. If a depth is given and the Git
+     * command line client is available, a shallow clone of the branch is made,
+     * which only contains the given amount of commits. Since JGit does not
+     * support shallow clones, a full clone is made with JGit otherwise.
+     *
+     * @param depth the amount of commits to clone, or 0 to clone the complete
+     * history
+     * @throws IOException if something goes wrong, this exception is thrown
+     */
+    public void cloneRepository(int depth) throws IOException {
+        cloneRepository(depth, new ArrayList<>());
+    }
+
+    /**
+     * Clones the repository, as is described in
+     * <code>cloneRepository(int)</code>, but only checks out the given paths.
+     * If the Git command line client is used, the contents of the other paths
+     * are not downloaded either, provided that the remote supports partial
+     * clones.
+     *
+     * @param depth the amount of commits to clone, or 0 to clone the complete
+     * history
+     * @param paths the paths to check out, relative to the root of the
+     * repository, or an empty list to check out the complete repository
      * @throws IOException if something goes wrong, this exception is thrown
      */
-    public void cloneRepository() throws IOException {
+    public void cloneRepository(int depth, List<String> paths) throws IOException {
+        if ((depth > 0 || !paths.isEmpty()) && isGitAvailable()) {
+            directory.getAbsoluteFile().getParentFile().mkdirs();
+            String command = "git clone --single-branch --branch " + branch;
+            if (depth > 0) {
+                command += " --depth " + depth;
+            }
+            if (!paths.isEmpty()) {
+                command += " --filter=blob:none --no-checkout";
+            }
+            command += " " + encapsulate(url) + " " + encapsulate(directory.getAbsolutePath());
+            if (new Command(command, directory.getAbsoluteFile().getParentFile()).execute() == 0) {
+                if (paths.isEmpty() || new Command("git checkout " + branch + " --" + joinPaths(paths), directory).execute() == 0) {
+                    return;
+                }
+                throw new IOException("[+]There was an error checking out the selected tools of " + name + "!");
+            }
+            System.out.println("[+]The shallow clone of " + name + " failed, falling back to a full clone");
+        }
         try {
-            Git.cloneRepository()
-                    .setProgressMonitor(new TextProgressMonitor(new PrintWriter(System.out)))
+            Git git = Git.cloneRepository()
+                    .setProgressMonitor(new RepositoryProgressMonitor(name))
                     .setURI(url)
                     .setDirectory(directory)
                     .setBranchesToClone(singleton(branch))
                     .setBranch(branch)
+                    .setNoCheckout(!paths.isEmpty())
                     .call();
-
+            if (!paths.isEmpty()) {
+                git.checkout()
+                        .setStartPoint("refs/remotes/origin/" + branch)
+                        .addPaths(paths)
+                        .call();
+            }
+            git.close();
         } catch (GitAPIException ex) {
             //Because the GitAPIException is abstract and cannot be instantiated, another (similar) exception is used
             throw new IOException("[+]There was an error cloing " + name + ". Verify your internet connection and the permissions of the folder!");
@@ -99,17 +330,41 @@ public class Repository {
     }
 
     /**
-     * Updates the current repository
+     * Updates the current repository. A shallow clone is updated with the Git
+     * command line client, as JGit cannot pull into a shallow clone. In that
+     * case, the given depth is used to fetch the latest commits, meaning a
+     * larger depth fetches more history.
      *
+     * @param depth the amount of commits to fetch for a shallow clone, or 0
+     * to fetch the complete history
      * @throws IOException if the Git pull goes wrong of if the directory cannot
      * be found
      */
-    public void updateRepository() throws IOException {
+    public void updateRepository(int depth) throws IOException {
+        //The repository might have been cloned from a different location (i.e. a mirror) than the one that is used now
+        setOriginUrl();
+        if (isShallow()) {
+            if (!isGitAvailable()) {
+                throw new IOException("The repository of " + name + " is a shallow clone, which can only be updated if Git is installed. Install Git, or reinstall AndroidProjectCreator with \"--depth=0\".");
+            }
+            String fetch;
+            if (depth > 0) {
+                fetch = "git fetch --depth " + depth + " origin " + branch;
+            } else {
+                fetch = "git fetch --unshallow origin " + branch;
+            }
+            if (new Command(fetch + " && git reset --hard FETCH_HEAD", directory).execute() != 0) {
+                throw new IOException("Git fetch failed for " + name + ", AndroidProjectCreator will now exit");
+            }
+            System.out.println("[+]Git fetch succesful for " + name);
+            return;
+        }
         try {
             Git git = Git.open(directory);
             if (git.pull().setRemoteBranchName(branch).call().isSuccessful()) {
                 System.out.println("[+]Git pull succesful for " + name);
             }
+            git.close();
         } catch (GitAPIException ex) {
             //Because the GitAPIException is abstract and cannot be instantiated, another (similar) exception is used
             throw new IOException("Git pull failed, AndroidProjectCreator will now exit");
@@ -117,4 +372,77 @@ public class Repository {
             throw new IOException("Repository directory not found, reinstall AndroidProjectCreator and check your permissions in this folder. AndroidProjectCreator will now exit.");
         }
     }
+
+    /**
+     * Sets the URL of the "origin" remote of the local clone to the URL of this
+     * repository, if it differs
+     *
+     * @throws IOException if the local clone cannot be opened or if its
+     * configuration cannot be saved
+     */
+    private void setOriginUrl() throws IOException {
+        try (Git git = Git.open(directory)) {
+            StoredConfig config = git.getRepository().getConfig();
+            if (!url.equals(config.getString("remote", "origin", "url"))) {
+                config.setString("remote", "origin", "url", url);
+                config.save();
+            }
+        } catch (IOException ex) {
+            throw new IOException("Repository directory not found, reinstall AndroidProjectCreator and check your permissions in this folder. AndroidProjectCreator will now exit.");
+        }
+    }
+
+    /**
+     * Checks if the local clone of this repository is a shallow clone
+     *
+     * @return true if the clone is shallow, false if not
+     */
+    public boolean isShallow() {
+        return new File(directory, ".git/shallow").exists();
+    }
+
+    /**
+     * Checks if the Git command line client is installed on this machine
+     *
+     * @return true if Git can be executed, false if not
+     */
+    private static synchronized boolean isGitAvailable() {
+        if (gitAvailable == null) {
+            try {
+                Process process = new ProcessBuilder("git", "--version").redirectErrorStream(true).start();
+                //Discard the output, which only contains the version
+                while (process.getInputStream().read() != -1) {
+                }
+                gitAvailable = process.waitFor() == 0;
+            } catch (IOException | InterruptedException ex) {
+                gitAvailable = false;
+            }
+        }
+        return gitAvailable;
+    }
+
+    /**
+     * Joins the given paths into a single string, in which each path is
+     * encapsulated and preceded by a space
+     *
+     * @param paths the paths to join
+     * @return the joined paths
+     */
+    private String joinPaths(List<String> paths) {
+        StringBuilder joinedPaths = new StringBuilder();
+        for (String path : paths) {
+            joinedPaths.append(" ").append(encapsulate(path));
+        }
+        return joinedPaths.toString();
+    }
+
+    /**
+     * Encapsulates the given string between quotes
+     *
+     * @param value the string to encapsulate
+     * @return the encapsulated string
+     */
+    private String encapsulate(String value) {
+        return "\"" + value + "\"";
+    }
 }
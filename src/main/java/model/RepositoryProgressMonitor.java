@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import apc.ProgressReporter;
+import org.eclipse.jgit.lib.ProgressMonitor;
+
+/**
+ * Reports the progress of a Git operation on a single line per step, prefixed
+ * with the name of the repository. This keeps the output readable when
+ * multiple repositories are cloned at the same time, as opposed to the
+ * <code>TextProgressMonitor</code> which rewrites the same line.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class RepositoryProgressMonitor implements ProgressMonitor {
+
+    /**
+     * The amount of percent between two printed updates of the same task
+     */
+    private static final int PERCENTAGE_STEP = 25;
+
+    /**
+     * The name of the repository, which is used as a prefix
+     */
+    private final String name;
+
+    /**
+     * The title of the current task
+     */
+    private String task;
+
+    /**
+     * The total amount of work of the current task, or
+     * <code>ProgressMonitor.UNKNOWN</code>
+     */
+    private int totalWork;
+
+    /**
+     * The amount of work that has been completed for the current task
+     */
+    private int completedWork;
+
+    /**
+     * The last percentage that was printed for the current task
+     */
+    private int lastPercentage;
+
+    /**
+     * Creates a progress monitor for the given repository
+     *
+     * @param name the name of the repository
+     */
+    public RepositoryProgressMonitor(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void start(int totalTasks) {
+        //The amount of tasks is not shown
+    }
+
+    @Override
+    public void beginTask(String title, int totalWork) {
+        this.task = title;
+        this.totalWork = totalWork;
+        this.completedWork = 0;
+        this.lastPercentage = 0;
+    }
+
+    @Override
+    public void update(int completed) {
+        completedWork += completed;
+        if (totalWork == UNKNOWN || totalWork == 0) {
+            return;
+        }
+        int percentage = (int) (completedWork * 100L / totalWork);
+        if (percentage >= lastPercentage + PERCENTAGE_STEP && percentage < 100) {
+            lastPercentage = percentage - percentage % PERCENTAGE_STEP;
+            System.out.println("[+][" + name + "] " + task + ": " + lastPercentage + "%");
+            ProgressReporter.reportProgress("clone", name, task, completedWork, totalWork);
+        }
+    }
+
+    @Override
+    public void endTask() {
+        if (totalWork == UNKNOWN) {
+            System.out.println("[+][" + name + "] " + task + ": " + completedWork + " done");
+        } else {
+            System.out.println("[+][" + name + "] " + task + ": 100% (" + completedWork + "/" + totalWork + ")");
+            ProgressReporter.reportProgress("clone", name, task, completedWork, totalWork);
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2018 Max 'Libra' Kersten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package model;
+
+import java.io.File;
+import java.util.UUID;
+
+/**
+ * The workspace of a single decompilation job, which contains all temporary
+ * paths that are used during the decompilation and assembly. Each workspace
+ * resides in its own uniquely named folder within the scratch root, meaning
+ * multiple jobs can run at the same time, also within the same process.
+ * After the job is done (during the cleaning), the folder is removed but the
+ * scratch root itself still exists.
+ *
+ * @author Max 'Libra' Kersten
+ */
+public class Workspace {
+
+    /**
+     * The folder of this workspace
+     */
+    private final String folder;
+
+    /**
+     * Creates a workspace in a uniquely named folder within the given scratch
+     * root. The folder itself is created when the first file is written.
+     *
+     * @param scratchRoot the root of the scratch space
+     */
+    public Workspace(File scratchRoot) {
+        this.folder = scratchRoot.getAbsolutePath() + "/" + UUID.randomUUID().toString();
+    }
+
+    /**
+     * The folder of this workspace, which is used during the decompilation
+     * process
+     *
+     * @return the folder of this workspace
+     */
+    public String getFolder() {
+        return folder;
+    }
+
+    /**
+     * The location of JAR, which was created by converting the classes.dex with
+     * Dex2Jar and placed within the workspace.
+     *
+     * @return the location of the converted JAR
+     */
+    public String getConvertedJar() {
+        return getFolder() + "/output.jar";
+    }
+
+    /**
+     * The location of the JAR with the classes of the application itself,
+     * which are copied from the converted JAR to decompile them first
+     *
+     * @return the location of the priority JAR
+     */
+    public String getPriorityJar() {
+        return getFolder() + "/priority.jar";
+    }
+
+    /**
+     * The location of the JAR with the classes that are removed from the
+     * converted JAR, which decompilers that support it use to resolve the
+     * types that the remaining classes refer to
+     *
+     * @return the location of the library JAR
+     */
+    public String getLibraryJar() {
+        return getFolder() + "/libraries.jar";
+    }
+
+    /**
+     * The location of the template project, which is used until the assembly
+     * process is completed. After that, it is copied to the user-specified
+     * output location and deleted
+     *
+     * @return the location of the template project
+     */
+    public String getTemplateFolder() {
+        return getFolder() + "/ap";
+    }
+
+    /**
+     * The main folder within the source part of the template project. This
+     * function is used multiple times and only used within this class.
+     *
+     * @return the main folder within the template project
+     */
+    private String getTemplateAppSourceMainFolder() {
+        return getTemplateFolder() + "/app/src/main";
+    }
+
+    /**
+     * The location of the source code within the template project
+     *
+     * @return the location of the source code within the template project
+     */
+    public String getTemplateSource() {
+        return getTemplateAppSourceMainFolder() + "/java";
+    }
+
+    /**
+     * The location of the AndroidManifest file within the template project
+     *
+     * @return the location of the AndroidManifest file within the template
+     * project
+     */
+    public String getTemplateManifestFile() {
+        return getTemplateAppSourceMainFolder() + "/AndroidManifest.xml";
+    }
+
+    /**
+     * The location of the resources folder within the template project
+     *
+     * @return the location of the resources folder within the template project
+     */
+    public String getTemplateResourcesFolder() {
+        return getTemplateAppSourceMainFolder() + "/res";
+    }
+
+    /**
+     * The location of the assets within the resources folder of the template
+     * project
+     *
+     * @return the location of the assets within the template project
+     */
+    public String getTemplateAssetFolder() {
+        return getTemplateResourcesFolder() + "/assets";
+    }
+
+    /**
+     * The location of the SMALI folder within the resources folder of the
+     * template project
+     *
+     * @return the location of the SMALI folder within the template project
+     */
+    public String getTemplateSmaliFolder() {
+        return getTemplateSource() + "/smali";
+    }
+
+    /**
+     * The location of the libraries within the template project
+     *
+     * @return the location of the libraries within the template project
+     */
+    public String getTemplateLibsFolder() {
+        return getTemplateSource() + "/libraries";
+    }
+
+    /**
+     * The temporary folder used to store the decompiled source code
+     *
+     * @return the temporary folder for the decompiled source code
+     */
+    public String getSourcesFolder() {
+        return getFolder() + "/sources";
+    }
+
+    /**
+     * The temporary folder used to store the decompiled source code of the
+     * classes that are decompiled first
+     *
+     * @return the temporary folder for the decompiled priority source code
+     */
+    public String getPrioritySourcesFolder() {
+        return getFolder() + "/sources-priority";
+    }
+
+    /**
+     * The location of the resources folder within the temporary folder
+     *
+     * @return the location of the resources in the temporary folder
+     */
+    public String getResourcesFolder() {
+        return getFolder() + "/apktool/res";
+    }
+
+    /**
+     * The location of the manifest file in the temporary folder
+     *
+     * @return the location of the manifest file in the temporary folder
+     */
+    public String getManifestFile() {
+        return getFolder() + "/apktool/AndroidManifest.xml";
+    }
+
+    /**
+     * The location of the files that are extracted from the APK as-is (such as
+     * the native libraries, the assets and the DEX files), without being
+     * decoded by APKTool
+     *
+     * @return the location of the raw files in the temporary folder
+     */
+    public String getRawFolder() {
+        return getFolder() + "/raw";
+    }
+
+    /**
+     * The location of the libraries in the temporary folder
+     *
+     * @return the location of the libraries in the temporary folder
+     */
+    public String getLibFolder() {
+        return getRawFolder() + "/lib";
+    }
+
+    /**
+     * The location of the Smali files in the temporary folder
+     *
+     * @return the location of the Smali files in the temporary folder
+     */
+    public String getSmaliFolder() {
+        return getFolder() + "/apktool-smali/smali";
+    }
+
+    /**
+     * The location of the assets in the temporary folder
+     *
+     * @return the location of the assets in the temporary folder
+     */
+    public String getAssetFolder() {
+        return getRawFolder() + "/assets";
+    }
+}